@@ -0,0 +1,34 @@
+package com.skemu.rdf.carml;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.rdf4j.model.Namespace;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ContextLoaderBenchmark {
+
+  @Benchmark
+  public Set<Namespace> getAllNamespaces() {
+    return ContextLoader.getNamespaces();
+  }
+
+  @Benchmark
+  public Set<Namespace> getSelectedNamespaces() {
+    return ContextLoader.getNamespaces("rdf", "rdfs", "owl", "xsd", "skos", "schema");
+  }
+
+}
@@ -0,0 +1,73 @@
+package com.skemu.rdf.carml;
+
+import com.google.common.collect.ImmutableSet;
+import com.taxonic.carml.engine.RmlMapper;
+import com.taxonic.carml.model.TriplesMap;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MapperBenchmark {
+
+  @Param({"CSV", "JSON", "XML"})
+  public String source;
+
+  @Param({"10000"})
+  public int records;
+
+  private byte[] data;
+
+  private Set<TriplesMap> mapping;
+
+  private MapperFactory mapperFactory;
+
+  private Path directory;
+
+  @Setup
+  public void setup() throws IOException {
+    directory = Files.createTempDirectory("carml-mapper-benchmark");
+    SyntheticData.SourceType sourceType = SyntheticData.SourceType.valueOf(source);
+    Path mappingFile =
+        SyntheticData.write(directory.resolve("mapping.rml.ttl"), SyntheticData.streamMapping(sourceType));
+
+    data = SyntheticData.source(sourceType, records);
+    mapping = MappingLoader.load(RDFFormat.TURTLE, null, 1, mappingFile);
+    mapperFactory = new MapperFactory(ImmutableSet.of(), null);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    SyntheticData.delete(directory);
+  }
+
+  @Benchmark
+  public Model map() {
+    RmlMapper mapper = mapperFactory.create();
+    mapper.bindInputStream(new ByteArrayInputStream(data));
+    return mapper.map(mapping);
+  }
+
+}
@@ -0,0 +1,57 @@
+package com.skemu.rdf.carml;
+
+import com.taxonic.carml.model.TriplesMap;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MappingLoaderBenchmark {
+
+  @Param({"1", "50"})
+  public int files;
+
+  @Param({"20"})
+  public int triplesMapsPerFile;
+
+  private Path directory;
+
+  @Setup
+  public void setup() throws IOException {
+    directory = Files.createTempDirectory("carml-mapping-benchmark");
+    for (int i = 0; i < files; i++) {
+      SyntheticData.write(directory.resolve(String.format("mapping-%d.rml.ttl", i)),
+          SyntheticData.mappingFile(i, triplesMapsPerFile));
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    SyntheticData.delete(directory);
+  }
+
+  @Benchmark
+  public Set<TriplesMap> loadMapping() {
+    return MappingLoader.load(null, null, Runtime.getRuntime().availableProcessors(), directory);
+  }
+
+}
@@ -0,0 +1,401 @@
+package com.skemu.rdf.carml;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * Measures how complete mapping runs scale with source size, mapping complexity and worker threads. Every combination
+ * of source type, mapping complexity, number of records and number of threads maps a {@link SyntheticData#workload}
+ * in batch mode, in a new JVM running {@link ScalingRun}, so that startup, peak memory use and garbage collection are
+ * measured per run.
+ *
+ * <p>The median of every measurement over the repetitions of a run is written to a JSON report. When a baseline
+ * report is given, runs whose throughput dropped, or whose time to first byte, peak memory or garbage collection time
+ * grew by more than the tolerance are listed as regressions, and the harness exits with status 1.
+ */
+public final class ScalingHarness {
+
+  private static final String SOURCES_OPTION = "s";
+
+  private static final String COMPLEXITY_OPTION = "c";
+
+  private static final String RECORDS_OPTION = "n";
+
+  private static final String THREADS_OPTION = "t";
+
+  private static final String ATTRIBUTES_OPTION = "a";
+
+  private static final String FILES_OPTION = "f";
+
+  private static final String REPETITIONS_OPTION = "rp";
+
+  private static final String HEAP_OPTION = "x";
+
+  private static final String DIRECTORY_OPTION = "d";
+
+  private static final String GENERATE_OPTION = "g";
+
+  private static final String REPORT_OPTION = "r";
+
+  private static final String BASELINE_OPTION = "bl";
+
+  private static final String TOLERANCE_OPTION = "tol";
+
+  private static final List<String> RUN_KEYS = List.of("source", "complexity", "records", "attributes", "threads");
+
+  // measurements compared with the baseline, and whether a higher value is a regression
+  private static final Map<String, Boolean> COMPARED_MEASUREMENTS = Map.of(
+      "statementsPerSecond", false,
+      "timeToFirstByteMillis", true,
+      "peakRssBytes", true,
+      "peakHeapBytes", true,
+      "gcTimeMillis", true);
+
+  // changes of a few milliseconds are noise, however large they are relative to a short baseline
+  private static final long MINIMUM_MILLIS_CHANGE = 50;
+
+  private ScalingHarness() {
+  }
+
+  public static void main(String... args) throws Exception {
+    Options options = options();
+    CommandLine cmd;
+    try {
+      cmd = new DefaultParser().parse(options, args);
+    } catch (ParseException exception) {
+      System.err.println(exception.getMessage());
+      new HelpFormatter().printHelp("scaling", options, true);
+      System.exit(1);
+      return;
+    }
+    if (cmd.hasOption(GENERATE_OPTION) && !cmd.hasOption(DIRECTORY_OPTION)) {
+      System.err.printf("Option -%s requires a directory to be provided with -%s%n", GENERATE_OPTION,
+          DIRECTORY_OPTION);
+      System.exit(1);
+      return;
+    }
+
+    List<SyntheticData.SourceType> sources = values(cmd, SOURCES_OPTION, "CSV,JSON,XML").stream()
+        .map(source -> SyntheticData.SourceType.valueOf(source.toUpperCase(Locale.ROOT)))
+        .collect(Collectors.toList());
+    List<SyntheticData.Complexity> complexities = values(cmd, COMPLEXITY_OPTION, "FUNCTIONS").stream()
+        .map(complexity -> SyntheticData.Complexity.valueOf(complexity.toUpperCase(Locale.ROOT)))
+        .collect(Collectors.toList());
+    List<Integer> recordCounts = integers(cmd, RECORDS_OPTION, "10000,100000");
+    List<Integer> threadCounts = integers(cmd, THREADS_OPTION, "1," + Runtime.getRuntime().availableProcessors());
+    int attributes = Integer.parseInt(cmd.getOptionValue(ATTRIBUTES_OPTION, "0"));
+    int files = Integer.parseInt(cmd.getOptionValue(FILES_OPTION, "16"));
+    int repetitions = Integer.parseInt(cmd.getOptionValue(REPETITIONS_OPTION, "3"));
+
+    Path directory = cmd.hasOption(DIRECTORY_OPTION)
+        ? Files.createDirectories(Paths.get(cmd.getOptionValue(DIRECTORY_OPTION)))
+        : Files.createTempDirectory("carml-scaling");
+    Path functionJar = writeFunctionJar(directory.resolve("functions.jar"));
+
+    List<Map<String, Object>> runs = new ArrayList<>();
+    try {
+      for (SyntheticData.SourceType source : sources) {
+        for (SyntheticData.Complexity complexity : complexities) {
+          for (int records : recordCounts) {
+            Path workload = directory.resolve(String.format("%s-%s-%d", source, complexity, records)
+                .toLowerCase(Locale.ROOT));
+            if (Files.isDirectory(workload)) {
+              SyntheticData.delete(workload);
+            }
+            Path mappingFile = SyntheticData.workload(workload, source, records, files, attributes, complexity);
+            if (cmd.hasOption(GENERATE_OPTION)) {
+              System.out.printf("Generated %s%n", workload);
+              continue;
+            }
+
+            for (int threads : threadCounts) {
+              Map<String, Object> run = new LinkedHashMap<>();
+              run.put("source", source.name());
+              run.put("complexity", complexity.name());
+              run.put("records", records);
+              run.put("attributes", attributes);
+              run.put("threads", threads);
+
+              List<Map<String, Object>> measurements = new ArrayList<>();
+              for (int repetition = 0; repetition < repetitions; repetition++) {
+                List<String> runnerArgs = runnerArgs(workload, mappingFile, source, complexity, threads,
+                    functionJar);
+                measurements.add(measure(workload, runnerArgs, cmd.getOptionValue(HEAP_OPTION)));
+              }
+              run.putAll(median(measurements));
+              runs.add(run);
+              print(run);
+            }
+          }
+        }
+      }
+    } finally {
+      if (!cmd.hasOption(DIRECTORY_OPTION)) {
+        SyntheticData.delete(directory);
+      }
+    }
+    if (cmd.hasOption(GENERATE_OPTION)) {
+      return;
+    }
+
+    Map<String, Object> report = new LinkedHashMap<>();
+    report.put("javaVersion", System.getProperty("java.version"));
+    report.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+    report.put("heap", cmd.getOptionValue(HEAP_OPTION));
+    report.put("repetitions", repetitions);
+    report.put("runs", runs);
+
+    List<Map<String, Object>> regressions = Collections.emptyList();
+    if (cmd.hasOption(BASELINE_OPTION)) {
+      double tolerance = Double.parseDouble(cmd.getOptionValue(TOLERANCE_OPTION, "10")) / 100;
+      regressions = compare(runs, readRuns(Paths.get(cmd.getOptionValue(BASELINE_OPTION))), tolerance);
+      report.put("baseline", cmd.getOptionValue(BASELINE_OPTION));
+      report.put("regressions", regressions);
+    }
+
+    Path reportFile = Paths.get(cmd.getOptionValue(REPORT_OPTION, "scaling-report.json"));
+    new ObjectMapper()
+        .enable(SerializationFeature.INDENT_OUTPUT)
+        .writeValue(reportFile.toFile(), report);
+    System.out.printf("Wrote scaling report to %s%n", reportFile);
+
+    if (!regressions.isEmpty()) {
+      regressions.forEach(regression -> System.out.printf("REGRESSION %s %s: %s -> %s (%+.1f%%)%n",
+          regression.get("run"), regression.get("measurement"), regression.get("baseline"), regression.get("value"),
+          regression.get("changePercent")));
+      System.exit(1);
+    }
+  }
+
+  private static List<String> runnerArgs(Path workload, Path mappingFile, SyntheticData.SourceType source,
+      SyntheticData.Complexity complexity, int threads, Path functionJar) {
+    List<String> args = new ArrayList<>(List.of(
+        "-m", mappingFile.toString(),
+        "-rsl", workload.toString(),
+        "-b", workload.resolve("people").resolve("*." + source.getExtension()).toString(),
+        "-of", "nq",
+        "-o", workload.resolve("output.nq").toString(),
+        "-t", Integer.toString(threads)));
+    if (complexity.compareTo(SyntheticData.Complexity.FUNCTIONS) >= 0) {
+      args.addAll(List.of("-j", functionJar.toString(), "-fn", SyntheticFunctions.class.getName()));
+    }
+    return args;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> measure(Path workload, List<String> runnerArgs, String heap)
+      throws IOException, InterruptedException {
+    Path output = workload.resolve("output.nq");
+    Path resultFile = workload.resolve("result.json");
+    Path logFile = workload.resolve("run.log");
+    Files.deleteIfExists(output);
+    Files.deleteIfExists(resultFile);
+
+    List<String> command = new ArrayList<>();
+    command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+    if (heap != null) {
+      command.add("-Xmx" + heap);
+    }
+    command.addAll(List.of("-cp", System.getProperty("java.class.path"), ScalingRun.class.getName(),
+        resultFile.toString()));
+    command.addAll(runnerArgs);
+
+    Process process = new ProcessBuilder(command)
+        .redirectErrorStream(true)
+        .redirectOutput(logFile.toFile())
+        .start();
+    if (process.waitFor() != 0 || !Files.isRegularFile(resultFile)) {
+      throw new CarmlJarException(String.format("Scaling run failed, see %s", logFile));
+    }
+
+    Map<String, Object> measurements = new LinkedHashMap<>();
+    // N-Quads output has a statement per line
+    long statements = countLines(output);
+    Map<String, Object> result = new ObjectMapper().readValue(resultFile.toFile(), Map.class);
+    long wallTimeMillis = ((Number) result.get("wallTimeMillis")).longValue();
+    measurements.put("statements", statements);
+    measurements.put("statementsPerSecond", statements * 1000 / Math.max(wallTimeMillis, 1));
+    measurements.putAll(result);
+    measurements.put("outputBytes", Files.size(output));
+    Files.delete(output);
+    return measurements;
+  }
+
+  private static long countLines(Path file) throws IOException {
+    long lines = 0;
+    byte[] buffer = new byte[OutputStreams.DEFAULT_BUFFER_SIZE];
+    try (InputStream in = Files.newInputStream(file)) {
+      for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+        for (int i = 0; i < read; i++) {
+          if (buffer[i] == '\n') {
+            lines++;
+          }
+        }
+      }
+    }
+    return lines;
+  }
+
+  private static Map<String, Object> median(List<Map<String, Object>> measurements) {
+    Map<String, Object> median = new LinkedHashMap<>();
+    for (String key : measurements.get(0).keySet()) {
+      List<Long> values = measurements.stream()
+          .map(measurement -> ((Number) measurement.get(key)).longValue())
+          .sorted()
+          .collect(Collectors.toList());
+      median.put(key, values.get(values.size() / 2));
+    }
+    return median;
+  }
+
+  private static List<Map<String, Object>> compare(List<Map<String, Object>> runs,
+      List<Map<String, Object>> baselineRuns, double tolerance) {
+    Map<String, Map<String, Object>> baselineByKey = baselineRuns.stream()
+        .collect(Collectors.toMap(ScalingHarness::key, run -> run, (first, second) -> first));
+
+    List<Map<String, Object>> regressions = new ArrayList<>();
+    for (Map<String, Object> run : runs) {
+      Map<String, Object> baselineRun = baselineByKey.get(key(run));
+      if (baselineRun == null) {
+        continue;
+      }
+
+      COMPARED_MEASUREMENTS.forEach((measurement, higherIsWorse) -> {
+        Number baselineValue = (Number) baselineRun.get(measurement);
+        Number value = (Number) run.get(measurement);
+        // measurements that are not available on this platform are negative
+        if (baselineValue == null || value == null || baselineValue.longValue() <= 0 || value.longValue() < 0) {
+          return;
+        }
+        long difference = value.longValue() - baselineValue.longValue();
+        if (measurement.endsWith("Millis") && Math.abs(difference) < MINIMUM_MILLIS_CHANGE) {
+          return;
+        }
+
+        double change = (double) difference / baselineValue.longValue();
+        if (higherIsWorse ? change > tolerance : change < -tolerance) {
+          Map<String, Object> regression = new LinkedHashMap<>();
+          regression.put("run", key(run));
+          regression.put("measurement", measurement);
+          regression.put("baseline", baselineValue.longValue());
+          regression.put("value", value.longValue());
+          regression.put("changePercent", change * 100);
+          regressions.add(regression);
+        }
+      });
+    }
+    return regressions;
+  }
+
+  private static String key(Map<String, Object> run) {
+    return RUN_KEYS.stream()
+        .map(key -> Objects.toString(run.get(key)))
+        .collect(Collectors.joining("/"));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<Map<String, Object>> readRuns(Path reportFile) throws IOException {
+    Map<String, Object> report = new ObjectMapper().readValue(reportFile.toFile(), Map.class);
+    return (List<Map<String, Object>>) report.getOrDefault("runs", Collections.emptyList());
+  }
+
+  private static void print(Map<String, Object> run) {
+    System.out.printf(Locale.ROOT, "%-4s %-9s %,11d records %3d threads: %,11d statements/s, first byte %,7d ms, " +
+            "peak RSS %,6d MB, peak heap %,6d MB, GC %,6d ms%n",
+        run.get("source"), run.get("complexity"), run.get("records"), run.get("threads"),
+        run.get("statementsPerSecond"), run.get("timeToFirstByteMillis"), megabytes(run.get("peakRssBytes")),
+        megabytes(run.get("peakHeapBytes")), run.get("gcTimeMillis"));
+  }
+
+  private static long megabytes(Object bytes) {
+    long value = ((Number) bytes).longValue();
+    return value < 0 ? value : value / (1024 * 1024);
+  }
+
+  /**
+   * Packs the {@link SyntheticFunctions} class in a jar, so that it is loaded like the functions of a real mapping.
+   */
+  private static Path writeFunctionJar(Path jar) throws IOException {
+    String entryName = SyntheticFunctions.class.getName().replace('.', '/') + ".class";
+    try (InputStream in = SyntheticFunctions.class.getClassLoader().getResourceAsStream(entryName);
+        JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+      if (in == null) {
+        throw new CarmlJarException(String.format("Could not find %s on the class path", entryName));
+      }
+      out.putNextEntry(new JarEntry(entryName));
+      in.transferTo(out);
+      out.closeEntry();
+    }
+    return jar;
+  }
+
+  private static List<String> values(CommandLine cmd, String option, String defaultValue) {
+    return Arrays.stream(cmd.getOptionValue(option, defaultValue).split(","))
+        .map(String::trim)
+        .filter(value -> !value.isEmpty())
+        .collect(Collectors.toList());
+  }
+
+  private static List<Integer> integers(CommandLine cmd, String option, String defaultValue) {
+    return values(cmd, option, defaultValue).stream()
+        .map(Integer::valueOf)
+        .distinct()
+        .collect(Collectors.toList());
+  }
+
+  private static Options options() {
+    Options options = new Options();
+    options.addOption(Option.builder(SOURCES_OPTION).longOpt("sources").argName("types").hasArg()
+        .desc("Comma separated source types, of CSV, JSON and XML. Defaults to all").build());
+    options.addOption(Option.builder(COMPLEXITY_OPTION).longOpt("complexity").argName("levels").hasArg()
+        .desc("Comma separated mapping complexities, of TEMPLATES, JOINS and FUNCTIONS. Defaults to FUNCTIONS")
+        .build());
+    options.addOption(Option.builder(RECORDS_OPTION).longOpt("records").argName("counts").hasArg()
+        .desc("Comma separated numbers of source records. Defaults to 10000,100000").build());
+    options.addOption(Option.builder(THREADS_OPTION).longOpt("threads").argName("counts").hasArg()
+        .desc("Comma separated numbers of worker threads. Defaults to 1 and the number of available processors")
+        .build());
+    options.addOption(Option.builder(ATTRIBUTES_OPTION).longOpt("attributes").argName("count").hasArg()
+        .desc("Number of additional attributes per record, each mapped to a statement. Defaults to 0").build());
+    options.addOption(Option.builder(FILES_OPTION).longOpt("files").argName("count").hasArg()
+        .desc("Number of source files the records are split over, mapped in batch mode. Defaults to 16").build());
+    options.addOption(Option.builder(REPETITIONS_OPTION).longOpt("repetitions").argName("count").hasArg()
+        .desc("Number of times every run is repeated, reporting the median. Defaults to 3").build());
+    options.addOption(Option.builder(HEAP_OPTION).longOpt("heap").argName("size").hasArg()
+        .desc("Maximum heap size of the mapping JVM, as given to -Xmx").build());
+    options.addOption(Option.builder(DIRECTORY_OPTION).longOpt("directory").argName("dir").hasArg()
+        .desc("Directory to generate workloads in and keep them. Defaults to a temporary directory").build());
+    options.addOption(Option.builder(GENERATE_OPTION).longOpt("generate")
+        .desc("Only generate the workloads in -d, without running them").build());
+    options.addOption(Option.builder(REPORT_OPTION).longOpt("report").argName("file").hasArg()
+        .desc("File to write the JSON report to. Defaults to scaling-report.json").build());
+    options.addOption(Option.builder(BASELINE_OPTION).longOpt("baseline").argName("file").hasArg()
+        .desc("Report of a previous run to compare with").build());
+    options.addOption(Option.builder(TOLERANCE_OPTION).longOpt("tolerance").argName("percent").hasArg()
+        .desc("Change from the baseline that is reported as a regression. Defaults to 10").build());
+    return options;
+  }
+
+}
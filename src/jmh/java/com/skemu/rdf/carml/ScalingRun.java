@@ -0,0 +1,149 @@
+package com.skemu.rdf.carml;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs {@link CarmlRunner} in the JVM started for a single run of the {@link ScalingHarness}, and writes what the run
+ * used to a JSON file: wall time and time to the first output byte since the JVM started, peak resident set size,
+ * peak heap use and garbage collection time. Heap use is sampled every few milliseconds, so short peaks between
+ * samples are missed.
+ *
+ * <p>Arguments are the result file followed by the arguments of {@link CarmlRunner}, which have to include
+ * {@code -o}.
+ */
+public final class ScalingRun {
+
+  private static final String LOGBACK_CONFIGURATION_PROPERTY = "logback.configurationFile";
+
+  private static final long HEAP_SAMPLE_INTERVAL_MILLIS = 5;
+
+  private ScalingRun() {
+  }
+
+  public static void main(String... args) {
+    if (System.getProperty(LOGBACK_CONFIGURATION_PROPERTY) == null) {
+      System.setProperty(LOGBACK_CONFIGURATION_PROPERTY, "logback-cli.xml");
+    }
+
+    // exits explicitly, so that threads left behind by the run cannot keep the harness waiting
+    try {
+      run(args);
+      System.exit(0);
+    } catch (Exception exception) {
+      LoggerFactory.getLogger(ScalingRun.class).error("Scaling run failed", exception);
+      System.exit(1);
+    }
+  }
+
+  private static void run(String... args) throws Exception {
+    Path resultFile = Paths.get(args[0]);
+    String[] runnerArgs = Arrays.copyOfRange(args, 1, args.length);
+    int outputIndex = Arrays.asList(runnerArgs).indexOf("-o");
+    if (outputIndex < 0 || outputIndex == runnerArgs.length - 1) {
+      throw new IllegalArgumentException("Scaling runs have to write their output to a file with -o");
+    }
+    Path output = Paths.get(runnerArgs[outputIndex + 1]);
+
+    long startMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+    AtomicLong firstByteMillis = new AtomicLong(-1);
+    Thread firstByteWatcher = new Thread(() -> watchFirstByte(output, firstByteMillis), "first-byte-watcher");
+    firstByteWatcher.setDaemon(true);
+    firstByteWatcher.start();
+    AtomicLong peakHeapBytes = new AtomicLong();
+    Thread heapSampler = new Thread(() -> sampleHeapUsage(peakHeapBytes), "heap-sampler");
+    heapSampler.setDaemon(true);
+    heapSampler.start();
+
+    CarmlRunner runner = new CarmlRunner();
+    runner.afterPropertiesSet();
+    runner.run(runnerArgs);
+
+    long endMillis = System.currentTimeMillis();
+    firstByteWatcher.interrupt();
+    firstByteWatcher.join();
+    heapSampler.interrupt();
+    heapSampler.join();
+    // output smaller than the output buffer only appears when it is closed
+    firstByteMillis.compareAndSet(-1, endMillis);
+
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("wallTimeMillis", endMillis - startMillis);
+    result.put("timeToFirstByteMillis", firstByteMillis.get() - startMillis);
+    result.put("peakRssBytes", peakResidentSetSize());
+    result.put("peakHeapBytes", peakHeapBytes.get());
+    List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    result.put("gcTimeMillis", collectors.stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum());
+    result.put("gcCount", collectors.stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum());
+    new ObjectMapper().writeValue(resultFile.toFile(), result);
+  }
+
+  private static void watchFirstByte(Path output, AtomicLong firstByteMillis) {
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        if (Files.isRegularFile(output) && Files.size(output) > 0) {
+          firstByteMillis.set(System.currentTimeMillis());
+          return;
+        }
+        Thread.sleep(1);
+      }
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+    } catch (IOException exception) {
+      // the output is being replaced, which is checked again after the run
+    }
+  }
+
+  /**
+   * Returns the peak resident set size of this process from {@code /proc/self/status}, or -1 where it is not
+   * available.
+   */
+  private static long peakResidentSetSize() {
+    Path status = Paths.get("/proc/self/status");
+    if (!Files.isReadable(status)) {
+      return -1;
+    }
+    try {
+      return Files.readAllLines(status, StandardCharsets.UTF_8).stream()
+          .filter(line -> line.startsWith("VmHWM:"))
+          .map(line -> line.replaceAll("[^0-9]", ""))
+          .mapToLong(kilobytes -> Long.parseLong(kilobytes) * 1024)
+          .findFirst()
+          .orElse(-1);
+    } catch (IOException exception) {
+      return -1;
+    }
+  }
+
+  /**
+   * Samples the used heap as a whole until interrupted. The peak usages of the heap pools cannot be summed instead, as
+   * the pools peak at different times, for example the young generation right before a collection moves its objects
+   * to the old generation.
+   */
+  private static void sampleHeapUsage(AtomicLong peakHeapBytes) {
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        peakHeapBytes.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+        Thread.sleep(HEAP_SAMPLE_INTERVAL_MILLIS);
+      }
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+    }
+    peakHeapBytes.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+  }
+
+}
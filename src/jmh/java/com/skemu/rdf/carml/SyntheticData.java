@@ -0,0 +1,334 @@
+package com.skemu.rdf.carml;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+
+/**
+ * Deterministic synthetic sources, mappings and models for benchmarks and the {@link ScalingHarness}.
+ */
+final class SyntheticData {
+
+  enum SourceType {
+    CSV("ql:CSV", null, "csv"),
+    JSON("ql:JSONPath", "$.%s[*]", "json"),
+    XML("ql:XPath", "/%s/%s", "xml");
+
+    private final String referenceFormulation;
+
+    private final String iteratorFormat;
+
+    private final String extension;
+
+    SourceType(String referenceFormulation, String iteratorFormat, String extension) {
+      this.referenceFormulation = referenceFormulation;
+      this.iteratorFormat = iteratorFormat;
+      this.extension = extension;
+    }
+
+    String getExtension() {
+      return extension;
+    }
+
+    private String iterator(String collection, String item) {
+      return iteratorFormat == null ? null : String.format(iteratorFormat, collection, item);
+    }
+  }
+
+  /**
+   * What the mapping of a workload exercises besides references and templates. Every level includes the previous
+   * ones.
+   */
+  enum Complexity {
+    TEMPLATES,
+    /**
+     * Links every person to a city of another triples map, with a join condition.
+     */
+    JOINS,
+    /**
+     * Also derives a slug from every name with a {@link SyntheticFunctions} function.
+     */
+    FUNCTIONS
+  }
+
+  private static final String NAMESPACE = "http://example.com/";
+
+  private static final String[] CITIES = {"Amsterdam", "Rotterdam", "Utrecht", "Den Haag", "Eindhoven"};
+
+  private static final String PREFIXES = String.join("\n",
+      "@prefix rr: <http://www.w3.org/ns/r2rml#> .",
+      "@prefix rml: <http://semweb.mmlab.be/ns/rml#> .",
+      "@prefix ql: <http://semweb.mmlab.be/ns/ql#> .",
+      "@prefix fnml: <http://semweb.mmlab.be/ns/fnml#> .",
+      "@prefix fno: <https://w3id.org/function/ontology#> .",
+      "@prefix carml: <http://carml.taxonic.com/carml/> .",
+      "@prefix ex: <" + NAMESPACE + "> .",
+      "@prefix fn: <" + SyntheticFunctions.NAMESPACE + "> .",
+      "", "");
+
+  private SyntheticData() {
+  }
+
+  static byte[] source(SourceType type, int records) {
+    return source(type, 0, records, 0, new Random(42));
+  }
+
+  /**
+   * Source of people with ids starting at {@code firstId}, with the given number of additional attributes per person.
+   */
+  private static byte[] source(SourceType type, int firstId, int records, int attributes, Random random) {
+    StringBuilder source = new StringBuilder();
+
+    switch (type) {
+      case CSV:
+        source.append("id,name,email,age,city");
+        for (int attribute = 0; attribute < attributes; attribute++) {
+          source.append(",attr").append(attribute);
+        }
+        source.append('\n');
+        for (int i = firstId; i < firstId + records; i++) {
+          source.append(i).append(",Person ").append(i).append(",person").append(i).append("@example.com,")
+              .append(18 + random.nextInt(70)).append(',').append(CITIES[random.nextInt(CITIES.length)]);
+          for (int attribute = 0; attribute < attributes; attribute++) {
+            source.append(',').append(attributeValue(random));
+          }
+          source.append('\n');
+        }
+        break;
+      case JSON:
+        source.append("{\"people\":[");
+        for (int i = firstId; i < firstId + records; i++) {
+          source.append(i == firstId ? "" : ",")
+              .append("{\"id\":").append(i)
+              .append(",\"name\":\"Person ").append(i)
+              .append("\",\"email\":\"person").append(i).append("@example.com\"")
+              .append(",\"age\":").append(18 + random.nextInt(70))
+              .append(",\"city\":\"").append(CITIES[random.nextInt(CITIES.length)]).append('"');
+          for (int attribute = 0; attribute < attributes; attribute++) {
+            source.append(",\"attr").append(attribute).append("\":\"").append(attributeValue(random)).append('"');
+          }
+          source.append('}');
+        }
+        source.append("]}");
+        break;
+      case XML:
+        source.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<people>\n");
+        for (int i = firstId; i < firstId + records; i++) {
+          source.append("<person><id>").append(i)
+              .append("</id><name>Person ").append(i)
+              .append("</name><email>person").append(i).append("@example.com</email><age>")
+              .append(18 + random.nextInt(70)).append("</age><city>")
+              .append(CITIES[random.nextInt(CITIES.length)]).append("</city>");
+          for (int attribute = 0; attribute < attributes; attribute++) {
+            source.append("<attr").append(attribute).append('>').append(attributeValue(random))
+                .append("</attr").append(attribute).append('>');
+          }
+          source.append("</person>\n");
+        }
+        source.append("</people>\n");
+        break;
+      default:
+        throw new IllegalArgumentException(type.name());
+    }
+
+    return source.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String attributeValue(Random random) {
+    return "value " + Integer.toString(random.nextInt(1_000_000), Character.MAX_RADIX);
+  }
+
+  /**
+   * Source of the cities that people live in, with their population.
+   */
+  private static byte[] citySource(SourceType type) {
+    StringBuilder source = new StringBuilder();
+
+    switch (type) {
+      case CSV:
+        source.append("name,population\n");
+        for (int i = 0; i < CITIES.length; i++) {
+          source.append(CITIES[i]).append(',').append(population(i)).append('\n');
+        }
+        break;
+      case JSON:
+        source.append("{\"cities\":[");
+        for (int i = 0; i < CITIES.length; i++) {
+          source.append(i == 0 ? "" : ",")
+              .append("{\"name\":\"").append(CITIES[i])
+              .append("\",\"population\":").append(population(i)).append('}');
+        }
+        source.append("]}");
+        break;
+      case XML:
+        source.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<cities>\n");
+        for (int i = 0; i < CITIES.length; i++) {
+          source.append("<city><name>").append(CITIES[i])
+              .append("</name><population>").append(population(i)).append("</population></city>\n");
+        }
+        source.append("</cities>\n");
+        break;
+      default:
+        throw new IllegalArgumentException(type.name());
+    }
+
+    return source.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static int population(int city) {
+    return 100_000 * (CITIES.length - city);
+  }
+
+  /**
+   * Mapping for sources generated by {@link #source(SourceType, int)}, bound as {@code carml:Stream}.
+   */
+  static String streamMapping(SourceType type) {
+    return PREFIXES + triplesMap("Person", "[ a carml:Stream ]", type, new ArrayList<>());
+  }
+
+  /**
+   * Writes a workload to a directory: the people as {@code files} source files in its {@code people} directory, to be
+   * mapped in batch mode, and a mapping of the given complexity as {@code mapping.rml.ttl}. The mapping binds people
+   * as {@code carml:Stream}, and reads the cities they are joined with from a file relative to the directory.
+   *
+   * @return the mapping file
+   */
+  static Path workload(Path directory, SourceType type, int records, int files, int attributes,
+      Complexity complexity) throws IOException {
+    Path peopleDirectory = Files.createDirectories(directory.resolve("people"));
+    Random random = new Random(42);
+    for (int file = 0; file < files; file++) {
+      int firstId = (int) ((long) records * file / files);
+      int lastId = (int) ((long) records * (file + 1) / files);
+      Files.write(peopleDirectory.resolve(String.format("people-%05d.%s", file, type.extension)),
+          source(type, firstId, lastId - firstId, attributes, random));
+    }
+
+    String citiesFile = "cities." + type.extension;
+    Files.write(directory.resolve(citiesFile), citySource(type));
+    return write(directory.resolve("mapping.rml.ttl"), workloadMapping(type, citiesFile, attributes, complexity));
+  }
+
+  private static String workloadMapping(SourceType type, String citiesFile, int attributes, Complexity complexity) {
+    List<String> predicateObjectMaps = new ArrayList<>();
+    for (int attribute = 0; attribute < attributes; attribute++) {
+      predicateObjectMaps.add(String.format(
+          "  rr:predicateObjectMap [ rr:predicate ex:attr%d ; rr:objectMap [ rml:reference \"attr%<d\" ] ]",
+          attribute));
+    }
+    if (complexity.compareTo(Complexity.JOINS) >= 0) {
+      predicateObjectMaps.add(String.join("\n",
+          "  rr:predicateObjectMap [ rr:predicate ex:livesIn ; rr:objectMap [",
+          "    rr:parentTriplesMap <#CityMapping> ;",
+          "    rr:joinCondition [ rr:child \"city\" ; rr:parent \"name\" ]",
+          "  ] ]"));
+    }
+    if (complexity.compareTo(Complexity.FUNCTIONS) >= 0) {
+      predicateObjectMaps.add(String.join("\n",
+          "  rr:predicateObjectMap [ rr:predicate ex:slug ; rr:objectMap [ fnml:functionValue [",
+          "    rr:predicateObjectMap [ rr:predicate fno:executes ; rr:objectMap [ rr:constant fn:slug ] ] ;",
+          "    rr:predicateObjectMap [ rr:predicate fn:value ; rr:objectMap [ rml:reference \"name\" ] ]",
+          "  ] ] ]"));
+    }
+
+    StringBuilder mapping = new StringBuilder(PREFIXES)
+        .append(triplesMap("Person", "[ a carml:Stream ]", type, predicateObjectMaps));
+    if (complexity.compareTo(Complexity.JOINS) >= 0) {
+      mapping.append(String.join("\n",
+          "<#CityMapping> a rr:TriplesMap ;",
+          "  rml:logicalSource [",
+          String.format("    rml:source \"%s\" ;", citiesFile),
+          iteratorLine(type.iterator("cities", "city")),
+          String.format("    rml:referenceFormulation %s", type.referenceFormulation),
+          "  ] ;",
+          String.format("  rr:subjectMap [ rr:template \"%scity/{name}\" ; rr:class ex:City ] ;", NAMESPACE),
+          "  rr:predicateObjectMap [ rr:predicate ex:population ; rr:objectMap [ rml:reference \"population\" ] ] .",
+          "", ""));
+    }
+    return mapping.toString();
+  }
+
+  /**
+   * Mapping file with the given number of independent triples maps, each reading its own CSV file.
+   */
+  static String mappingFile(int fileIndex, int triplesMaps) {
+    StringBuilder mapping = new StringBuilder(PREFIXES);
+    for (int i = 0; i < triplesMaps; i++) {
+      String name = String.format("Person%d_%d", fileIndex, i);
+      mapping.append(triplesMap(name, String.format("\"%s.csv\"", name), SourceType.CSV, new ArrayList<>()));
+    }
+    return mapping.toString();
+  }
+
+  private static String triplesMap(String name, String source, SourceType type, List<String> predicateObjectMaps) {
+    predicateObjectMaps.addAll(0, List.of(
+        "  rr:predicateObjectMap [ rr:predicate ex:name ; rr:objectMap [ rml:reference \"name\" ] ]",
+        "  rr:predicateObjectMap [ rr:predicate ex:email ; rr:objectMap [ rml:reference \"email\" ] ]",
+        "  rr:predicateObjectMap [ rr:predicate ex:age ; rr:objectMap [ rml:reference \"age\" ] ]",
+        String.format("  rr:predicateObjectMap [ rr:predicate ex:city ; rr:objectMap [ rr:template \"%scity/{city}\" ] ]",
+            NAMESPACE)));
+    return String.join("\n",
+        String.format("<#%sMapping> a rr:TriplesMap ;", name),
+        "  rml:logicalSource [",
+        String.format("    rml:source %s ;", source),
+        iteratorLine(type.iterator("people", "person")),
+        String.format("    rml:referenceFormulation %s", type.referenceFormulation),
+        "  ] ;",
+        String.format("  rr:subjectMap [ rr:template \"%sperson/{id}\" ; rr:class ex:%s ] ;", NAMESPACE, name),
+        String.join(" ;\n", predicateObjectMaps) + " .",
+        "", "");
+  }
+
+  private static String iteratorLine(String iterator) {
+    return iterator == null ? "" : String.format("    rml:iterator \"%s\" ;", iterator);
+  }
+
+  static Model model(int statements) {
+    ValueFactory valueFactory = SimpleValueFactory.getInstance();
+    Random random = new Random(42);
+    IRI personClass = valueFactory.createIRI(NAMESPACE, "Person");
+    IRI name = valueFactory.createIRI(NAMESPACE, "name");
+    IRI age = valueFactory.createIRI(NAMESPACE, "age");
+    IRI city = valueFactory.createIRI(NAMESPACE, "city");
+    IRI graph = valueFactory.createIRI(NAMESPACE, "graph");
+
+    Model model = new LinkedHashModel(statements);
+    for (int i = 0; model.size() < statements; i++) {
+      IRI person = valueFactory.createIRI(NAMESPACE, "person/" + i);
+      model.add(person, RDF.TYPE, personClass, graph);
+      model.add(person, name, valueFactory.createLiteral("Person " + i), graph);
+      model.add(person, age, valueFactory.createLiteral(18 + random.nextInt(70)), graph);
+      model.add(person, city, valueFactory.createIRI(NAMESPACE, "city/" + CITIES[random.nextInt(CITIES.length)]),
+          graph);
+    }
+    model.setNamespace("ex", NAMESPACE);
+    return model;
+  }
+
+  static Path write(Path file, String content) throws IOException {
+    return Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  static void delete(Path directory) throws IOException {
+    if (directory == null) {
+      return;
+    }
+    try (Stream<Path> walk = Files.walk(directory)) {
+      walk.sorted(Comparator.reverseOrder())
+          .forEach(path -> path.toFile().delete());
+    }
+  }
+
+}
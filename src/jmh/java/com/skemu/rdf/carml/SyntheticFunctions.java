@@ -0,0 +1,20 @@
+package com.skemu.rdf.carml;
+
+import com.taxonic.carml.engine.function.FnoFunction;
+import com.taxonic.carml.engine.function.FnoParam;
+import java.util.Locale;
+
+/**
+ * Transformation functions used by the mappings of {@link SyntheticData#workload}. The {@link ScalingHarness} adds
+ * them to the mapper from a function jar, like functions of a real mapping.
+ */
+public class SyntheticFunctions {
+
+  static final String NAMESPACE = "http://example.com/fn#";
+
+  @FnoFunction(NAMESPACE + "slug")
+  public String slug(@FnoParam(NAMESPACE + "value") String value) {
+    return value == null ? null : value.trim().toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]+", "-");
+  }
+
+}
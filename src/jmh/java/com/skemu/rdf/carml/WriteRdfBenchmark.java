@@ -0,0 +1,52 @@
+package com.skemu.rdf.carml;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WriteRdfBenchmark {
+
+  @Param({"ttl", "nt", "nq", "rdf", "jsonld", "trig", "n3", "trix", "brf", "rj"})
+  public String format;
+
+  @Param({"100000"})
+  public int statements;
+
+  private Model model;
+
+  private RDFFormat rdfFormat;
+
+  @Setup
+  public void setup() {
+    model = SyntheticData.model(statements);
+    rdfFormat = CarmlRunner.determineRdfFormat(format)
+        .orElseThrow(() -> new IllegalArgumentException(String.format("Unknown format %s", format)));
+  }
+
+  @Benchmark
+  public long writeRdf() {
+    CountingOutputStream out = new CountingOutputStream(ByteStreams.nullOutputStream());
+    CarmlRunner.writeRdf(model, rdfFormat, out);
+    return out.getCount();
+  }
+
+}
@@ -0,0 +1,238 @@
+package com.skemu.rdf.carml;
+
+import com.taxonic.carml.engine.RmlMapper;
+import com.taxonic.carml.model.TriplesMap;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Namespace;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandler;
+
+/**
+ * Applies one loaded mapping to many input files on a bounded pool of worker threads. Every input file is bound as
+ * the input stream of its own mapper, as is done for a single file with the {@code -i} option.
+ */
+@Slf4j
+class BatchMapper {
+
+  private static final String GLOB_CHARACTERS = "*?[{";
+
+  private final MapperFactory mapperFactory;
+
+  private final Set<TriplesMap> mapping;
+
+  private final int threads;
+
+  private MappingMetrics metrics;
+
+  private Compression compression;
+
+  BatchMapper(MapperFactory mapperFactory, Set<TriplesMap> mapping, int threads) {
+    this.mapperFactory = Objects.requireNonNull(mapperFactory);
+    this.mapping = Objects.requireNonNull(mapping);
+    this.threads = threads;
+  }
+
+  /**
+   * Records the execution of every input file and the bytes read from it in the given metrics.
+   */
+  BatchMapper metrics(MappingMetrics metrics) {
+    this.metrics = metrics;
+    return this;
+  }
+
+  /**
+   * Compresses the output files written by {@link #mapToDirectory}, and adds the extension of the compression to their
+   * names.
+   */
+  BatchMapper compress(Compression compression) {
+    this.compression = compression;
+    return this;
+  }
+
+  /**
+   * Resolves a directory, file or glob pattern to the regular files it denotes.
+   */
+  static List<Path> resolveInputs(String location) {
+    Path root = globRoot(location);
+    boolean isGlob = !root.toString().equals(location);
+    PathMatcher matcher = isGlob
+        ? FileSystems.getDefault().getPathMatcher("glob:" + location)
+        : path -> true;
+
+    try (Stream<Path> walk = Files.walk(root)) {
+      return walk.filter(Files::isRegularFile)
+          .filter(matcher::matches)
+          .sorted()
+          .collect(Collectors.toList());
+    } catch (IOException exception) {
+      throw new CarmlJarException(String.format("Could not read input files from %s", location), exception);
+    }
+  }
+
+  private static Path globRoot(String location) {
+    int firstGlobCharacter = location.chars()
+        .filter(c -> GLOB_CHARACTERS.indexOf(c) >= 0)
+        .map(location::indexOf)
+        .min()
+        .orElse(-1);
+    if (firstGlobCharacter < 0) {
+      return Paths.get(location);
+    }
+
+    Path prefix = Paths.get(location.substring(0, firstGlobCharacter + 1)).getParent();
+    return prefix == null ? Paths.get("") : prefix;
+  }
+
+  void mapToDirectory(List<Path> inputs, Path outputDirectory, RDFFormat format, Set<Namespace> namespaces) {
+    try {
+      Files.createDirectories(outputDirectory);
+    } catch (IOException exception) {
+      throw new CarmlJarException(String.format("Could not create output directory %s", outputDirectory), exception);
+    }
+
+    long distinctOutputs = inputs.stream()
+        .map(input -> outputFileName(input, format))
+        .distinct()
+        .count();
+    if (distinctOutputs < inputs.size()) {
+      throw new CarmlJarException(String.format("Input files in %s do not have unique file names", inputs));
+    }
+
+    execute(inputs, input -> {
+      Path outputPath = outputDirectory.resolve(outputFileName(input, format));
+      mapToFile(input, outputPath, format, namespaces);
+      log.info("Mapped {} to {}", input, outputPath);
+    });
+  }
+
+  /**
+   * Maps an input file to an output file. The output is written to a temporary file next to the output file first,
+   * and then moved in place, so readers of the output directory never see a partially written file.
+   */
+  void mapToFile(Path input, Path outputPath, RDFFormat format, Set<Namespace> namespaces) throws IOException {
+    Model model = map(input);
+    namespaces.forEach(model::setNamespace);
+
+    Path parent = outputPath.toAbsolutePath().getParent();
+    Path tempFile = Files.createTempFile(parent, "." + outputPath.getFileName(), ".tmp");
+    try {
+      try (OutputStream out = OutputStreams.compressed(Files.newOutputStream(tempFile),
+          outputPath.getFileName().toString(), OutputStreams.DEFAULT_BUFFER_SIZE, 1)) {
+        CarmlRunner.writeRdf(model, format, out);
+      }
+      Files.move(tempFile, outputPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tempFile);
+    }
+  }
+
+  void mapMerged(List<Path> inputs, Set<Namespace> namespaces, RDFHandler handler) {
+    handler.startRDF();
+    namespaces.forEach(namespace -> handler.handleNamespace(namespace.getPrefix(), namespace.getName()));
+
+    execute(inputs, input -> {
+      Model model = map(input);
+      synchronized (handler) {
+        model.forEach(handler::handleStatement);
+      }
+      log.info("Mapped {}", input);
+    });
+
+    handler.endRDF();
+  }
+
+  private Model map(Path input) throws IOException {
+    MappingMetrics.Execution execution = metrics == null ? null : metrics.startExecution(input.toString());
+
+    RmlMapper mapper = mapperFactory.create();
+    Model model;
+    try (InputStream is = InputStreams.file(input)) {
+      mapper.bindInputStream(metrics == null ? is : metrics.countRead(is));
+      model = mapper.map(mapping);
+    }
+
+    if (execution != null) {
+      execution.finish(model.size());
+    }
+    return model;
+  }
+
+  private void execute(List<Path> inputs, InputTask task) {
+    log.info("Mapping {} input files using {} threads ...", inputs.size(), threads);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (Path input : inputs) {
+        futures.add(executor.submit(() -> {
+          task.run(input);
+          return null;
+        }));
+      }
+
+      int failures = 0;
+      for (int i = 0; i < futures.size(); i++) {
+        try {
+          futures.get(i).get();
+        } catch (ExecutionException exception) {
+          failures++;
+          log.error(String.format("Failed to map input file %s", inputs.get(i)), exception.getCause());
+        }
+      }
+
+      if (failures > 0) {
+        throw new CarmlJarException(String.format("Failed to map %d of %d input files", failures, inputs.size()));
+      }
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new CarmlJarException("Interrupted while mapping input files", exception);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  String outputFileName(Path input, RDFFormat format) {
+    String fileName = Compression.stripExtension(input.getFileName().toString());
+    int extensionIndex = fileName.lastIndexOf('.');
+    return withOutputExtension(extensionIndex > 0 ? fileName.substring(0, extensionIndex) : fileName, format);
+  }
+
+  /**
+   * Returns an output file name that keeps the complete input file name, so input files that only differ in their
+   * extension do not get the same output file.
+   */
+  String fullOutputFileName(Path input, RDFFormat format) {
+    return withOutputExtension(input.getFileName().toString(), format);
+  }
+
+  private String withOutputExtension(String baseName, RDFFormat format) {
+    return String.format("%s.%s%s", baseName, format.getDefaultFileExtension(),
+        compression != null ? compression.getExtension() : "");
+  }
+
+  @FunctionalInterface
+  private interface InputTask {
+
+    void run(Path input) throws IOException;
+  }
+
+}
@@ -0,0 +1,36 @@
+package com.skemu.rdf.carml;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs {@link CarmlRunner} without starting a Spring application context, which takes most of the startup time of
+ * short jobs. Logging is configured by {@code logback-cli.xml}, at the level given by the {@code carml.log.level}
+ * system property.
+ *
+ * <p>The {@code appcds} profile builds a jar with this class as main class, together with a class data sharing
+ * archive of the classes it loads.
+ */
+public class CarmlCli {
+
+  private static final String LOGBACK_CONFIGURATION_PROPERTY = "logback.configurationFile";
+
+  private CarmlCli() {
+  }
+
+  public static void main(String... args) {
+    // has to be set before the first logger is created
+    if (System.getProperty(LOGBACK_CONFIGURATION_PROPERTY) == null) {
+      System.setProperty(LOGBACK_CONFIGURATION_PROPERTY, "logback-cli.xml");
+    }
+
+    try {
+      CarmlRunner runner = new CarmlRunner();
+      runner.afterPropertiesSet();
+      runner.run(args);
+    } catch (Exception exception) {
+      LoggerFactory.getLogger(CarmlCli.class).error("Mapping failed", exception);
+      System.exit(1);
+    }
+  }
+
+}
@@ -1,22 +1,21 @@
 package com.skemu.rdf.carml;
 
 import com.taxonic.carml.model.Resource;
-import com.taxonic.carml.util.IoUtils;
 import com.taxonic.carml.util.ModelSerializer;
 import com.taxonic.carml.util.RmlNamespaces;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringWriter;
-import java.io.Writer;
-import java.nio.file.Files;
+import java.io.OutputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
@@ -34,11 +33,14 @@ import org.apache.commons.cli.ParseException;
 import org.eclipse.rdf4j.model.Model;
 import org.eclipse.rdf4j.model.Namespace;
 import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
 import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandler;
 import org.eclipse.rdf4j.rio.RDFWriterRegistry;
 import org.eclipse.rdf4j.rio.Rio;
 import org.eclipse.rdf4j.rio.WriterConfig;
 import org.eclipse.rdf4j.rio.helpers.BasicWriterSettings;
+import org.eclipse.rdf4j.rio.helpers.StatementCollector;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.core.Ordered;
@@ -47,13 +49,8 @@ import org.springframework.stereotype.Component;
 
 import com.google.common.collect.ImmutableSet;
 import com.taxonic.carml.engine.RmlMapper;
-import com.taxonic.carml.logical_source_resolver.CsvResolver;
-import com.taxonic.carml.logical_source_resolver.JsonPathResolver;
-import com.taxonic.carml.logical_source_resolver.XPathResolver;
 import com.taxonic.carml.model.TriplesMap;
 import com.taxonic.carml.rdf_mapper.util.ImmutableCollectors;
-import com.taxonic.carml.util.RmlMappingLoader;
-import com.taxonic.carml.vocab.Rdf;
 
 @Slf4j
 @Component
@@ -100,6 +97,162 @@ public class CarmlRunner implements CommandLineRunner, InitializingBean {
 
   private static final String OUTPUT_CONTEXT_OPTION_LONG = "context";
 
+  private static final String STREAM_OPTION = "s";
+
+  private static final String STREAM_OPTION_LONG = "stream";
+
+  private static final String OUTPUT_BUFFER_OPTION = "ob";
+
+  private static final String OUTPUT_BUFFER_OPTION_LONG = "outbuffer";
+
+  private static final String BATCH_OPTION = "b";
+
+  private static final String BATCH_OPTION_LONG = "batch";
+
+  private static final String BATCH_OUTPUT_OPTION = "bo";
+
+  private static final String BATCH_OUTPUT_OPTION_LONG = "batch-output";
+
+  private static final String BATCH_COMPRESSION_OPTION = "bz";
+
+  private static final String BATCH_COMPRESSION_OPTION_LONG = "batch-compression";
+
+  private static final String THREADS_OPTION = "t";
+
+  private static final String THREADS_OPTION_LONG = "threads";
+
+  private static final String CHUNK_SIZE_OPTION = "cs";
+
+  private static final String CHUNK_SIZE_OPTION_LONG = "chunk-size";
+
+  private static final String CHUNK_ORDERED_OPTION = "co";
+
+  private static final String CHUNK_ORDERED_OPTION_LONG = "chunk-ordered";
+
+  private static final String SERVER_OPTION = "srv";
+
+  private static final String SERVER_OPTION_LONG = "server";
+
+  private static final String SERVER_MAX_CONCURRENT_OPTION = "smc";
+
+  private static final String SERVER_MAX_CONCURRENT_OPTION_LONG = "server-max-concurrent";
+
+  private static final long SERVER_QUEUE_TIMEOUT_MILLIS = 5000;
+
+  private static final String MAPPING_CACHE_OPTION = "mc";
+
+  private static final String MAPPING_CACHE_OPTION_LONG = "mapping-cache";
+
+  private static final String METRICS_OPTION = "mt";
+
+  private static final String METRICS_OPTION_LONG = "metrics";
+
+  private static final String PROGRESS_OPTION = "pg";
+
+  private static final String PROGRESS_OPTION_LONG = "progress";
+
+  private static final String SHARD_DIRECTORY_OPTION = "sd";
+
+  private static final String SHARD_DIRECTORY_OPTION_LONG = "shard-dir";
+
+  private static final String SHARD_BY_OPTION = "sb";
+
+  private static final String SHARD_BY_OPTION_LONG = "shard-by";
+
+  private static final String SHARD_COUNT_OPTION = "sn";
+
+  private static final String SHARD_COUNT_OPTION_LONG = "shard-count";
+
+  private static final String SHARD_MAX_STATEMENTS_OPTION = "sms";
+
+  private static final String SHARD_MAX_STATEMENTS_OPTION_LONG = "shard-max-statements";
+
+  private static final String SHARD_MAX_BYTES_OPTION = "smb";
+
+  private static final String SHARD_MAX_BYTES_OPTION_LONG = "shard-max-bytes";
+
+  private static final String SHARD_COMPRESSION_OPTION = "sz";
+
+  private static final String SHARD_COMPRESSION_OPTION_LONG = "shard-compression";
+
+  private static final String DEDUPLICATE_OPTION = "dd";
+
+  private static final String DEDUPLICATE_OPTION_LONG = "dedup";
+
+  private static final String DEDUPLICATE_MEMORY_OPTION = "ddm";
+
+  private static final String DEDUPLICATE_MEMORY_OPTION_LONG = "dedup-memory";
+
+  private static final long DEFAULT_DEDUPLICATE_MEMORY_MB = 256;
+
+  private static final String SORT_OUTPUT_OPTION = "so";
+
+  private static final String SORT_OUTPUT_OPTION_LONG = "sort-output";
+
+  private static final String REPOSITORY_OPTION = "r";
+
+  private static final String REPOSITORY_OPTION_LONG = "repository";
+
+  private static final String REPOSITORY_TYPE_OPTION = "rt";
+
+  private static final String REPOSITORY_TYPE_OPTION_LONG = "repository-type";
+
+  private static final String REPOSITORY_INDEXES_OPTION = "ri";
+
+  private static final String REPOSITORY_INDEXES_OPTION_LONG = "repository-indexes";
+
+  private static final String REPOSITORY_BATCH_OPTION = "rb";
+
+  private static final String REPOSITORY_BATCH_OPTION_LONG = "repository-batch";
+
+  private static final String REPOSITORY_CONTEXT_OPTION = "rc";
+
+  private static final String REPOSITORY_CONTEXT_OPTION_LONG = "repository-context";
+
+  private static final int DEFAULT_REPOSITORY_BATCH_SIZE = 100_000;
+
+  private static final String PIPELINE_OPTION = "pl";
+
+  private static final String PIPELINE_OPTION_LONG = "pipeline";
+
+  private static final String PIPELINE_BATCH_OPTION = "pb";
+
+  private static final String PIPELINE_BATCH_OPTION_LONG = "pipeline-batch";
+
+  private static final String PIPELINE_QUEUE_OPTION = "pq";
+
+  private static final String PIPELINE_QUEUE_OPTION_LONG = "pipeline-queue";
+
+  private static final int DEFAULT_PIPELINE_BATCH_SIZE = 10_000;
+
+  private static final int DEFAULT_PIPELINE_QUEUE_CAPACITY = 16;
+
+  private static final String MEMOIZE_OPTION = "fm";
+
+  private static final String MEMOIZE_OPTION_LONG = "memoize";
+
+  private static final String MEMOIZE_SIZE_OPTION = "fms";
+
+  private static final String MEMOIZE_SIZE_OPTION_LONG = "memoize-size";
+
+  private static final long DEFAULT_MEMOIZE_SIZE = 10_000;
+
+  private static final String INTERN_OPTION = "it";
+
+  private static final String INTERN_OPTION_LONG = "intern";
+
+  private static final String WATCH_OPTION = "w";
+
+  private static final String WATCH_OPTION_LONG = "watch";
+
+  private static final String INCREMENTAL_OPTION = "inc";
+
+  private static final String INCREMENTAL_OPTION_LONG = "incremental";
+
+  private static final String INCREMENTAL_DELTA_OPTION = "ind";
+
+  private static final String INCREMENTAL_DELTA_OPTION_LONG = "incremental-delta";
+
   private Options options;
 
   private CommandLineParser cmdParser;
@@ -108,6 +261,14 @@ public class CarmlRunner implements CommandLineRunner, InitializingBean {
 
   private HelpFormatter helpFormatter;
 
+  private Set<Namespace> outputNamespaces;
+
+  private MappingMetrics metrics;
+
+  private FunctionMemoizer functionMemoizer;
+
+  private InterningValueFactory interningValueFactory;
+
   @Override
   public void run(String... args) throws Exception {
     try {
@@ -117,7 +278,25 @@ public class CarmlRunner implements CommandLineRunner, InitializingBean {
       System.exit(1);
     }
 
-    RmlMapper mapper = prepareMapper(cmd);
+    outputNamespaces = null;
+    functionMemoizer = null;
+    interningValueFactory = null;
+    MapperFactory mapperFactory = createMapperFactory(cmd);
+
+    if (cmd.hasOption(SERVER_OPTION)) {
+      runServer(mapperFactory);
+      return;
+    }
+
+    metrics = createMetrics(cmd);
+    try {
+      runMapping(mapperFactory);
+    } finally {
+      finishMetrics(cmd);
+    }
+  }
+
+  private void runMapping(MapperFactory mapperFactory) throws IOException {
     Set<TriplesMap> mapping = loadMapping(cmd);
 
     if (log.isDebugEnabled()) {
@@ -135,64 +314,485 @@ public class CarmlRunner implements CommandLineRunner, InitializingBean {
 
     }
 
+    if (cmd.hasOption(WATCH_OPTION)) {
+      runWatch(mapperFactory, mapping);
+      return;
+    }
+
+    if (cmd.hasOption(BATCH_OPTION)) {
+      runBatch(mapperFactory, mapping);
+      return;
+    }
+
+    if (cmd.hasOption(CHUNK_SIZE_OPTION)) {
+      runChunked(mapperFactory, mapping);
+      return;
+    }
+
+    mapInput(mapperFactory.create(), createInputSource(cmd), mapping);
+  }
+
+  private void mapInput(RmlMapper mapper, InputSource input, Set<TriplesMap> mapping) throws IOException {
+    if (cmd.hasOption(INCREMENTAL_OPTION)) {
+      runIncremental(mapper, input, mapping);
+      return;
+    }
+
+    // sorting on disk is only of use if the output is not collected in memory first, so it implies streaming
+    if (cmd.hasOption(STREAM_OPTION) || cmd.hasOption(PIPELINE_OPTION) || cmd.hasOption(SORT_OUTPUT_OPTION)) {
+      runStreaming(mapper, input, mapping);
+      return;
+    }
+
     log.info("Executing mapping ...");
-    Model model = mapper.map(mapping);
+    Model model = map(mapper, input, mapping);
 
     getOutputNamespaceDeclarations(cmd).forEach(model::setNamespace);
 
+    if (cmd.hasOption(SHARD_DIRECTORY_OPTION) || cmd.hasOption(REPOSITORY_OPTION)) {
+      writeOutput(loadOutputRdfFormat(cmd), handler -> Rio.write(model, handler));
+      return;
+    }
+
+    try (OutputStream out = openOutput(cmd)) {
+      writeRdf(model, loadOutputRdfFormat(cmd), out);
+    }
+  }
+
+  private Model map(RmlMapper mapper, InputSource input, Set<TriplesMap> mapping) {
+    if (metrics == null) {
+      return InputSource.map(mapper, input, mapping);
+    }
+
+    // execute triples maps one by one to measure each of them
+    Model model = new LinkedHashModel();
+    StreamingMapper.map(mapper, input, mapping, ImmutableSet.of(), new StatementCollector(model), metrics);
+    return model;
+  }
+
+  private MappingMetrics createMetrics(CommandLine cmd) {
+    Objects.requireNonNull(cmd);
+    if (!cmd.hasOption(METRICS_OPTION) && !cmd.hasOption(PROGRESS_OPTION)) {
+      return null;
+    }
+
+    // inputs that are mapped concurrently are measured as a whole, triples maps one at a time otherwise
+    MappingMetrics.Unit unit = MappingMetrics.Unit.TRIPLES_MAP;
+    if (cmd.hasOption(BATCH_OPTION) || cmd.hasOption(WATCH_OPTION)) {
+      unit = MappingMetrics.Unit.INPUT_FILE;
+    } else if (cmd.hasOption(CHUNK_SIZE_OPTION)) {
+      unit = MappingMetrics.Unit.CHUNK;
+    }
+
+    MappingMetrics mappingMetrics = new MappingMetrics(unit);
+    if (cmd.hasOption(PROGRESS_OPTION)) {
+      mappingMetrics.startProgressLogging(Duration.ofSeconds(Long.parseLong(cmd.getOptionValue(PROGRESS_OPTION))));
+    }
+    return mappingMetrics;
+  }
+
+  private void finishMetrics(CommandLine cmd) {
+    if (functionMemoizer != null) {
+      functionMemoizer.logStatistics();
+    }
+    if (interningValueFactory != null) {
+      interningValueFactory.logStatistics();
+    }
+    if (metrics == null) {
+      return;
+    }
+
+    if (functionMemoizer != null) {
+      metrics.recordFunctionCaches(functionMemoizer.statistics());
+    }
+    if (interningValueFactory != null) {
+      metrics.recordTermInterning(interningValueFactory.statistics());
+    }
+    metrics.stop();
+    if (cmd.hasOption(METRICS_OPTION)) {
+      metrics.writeReport(Paths.get(cmd.getOptionValue(METRICS_OPTION)));
+    }
+  }
+
+  private void runIncremental(RmlMapper mapper, InputSource input, Set<TriplesMap> mapping) throws IOException {
+    List<Path> definitionFiles = Stream.concat(
+        Arrays.stream(cmd.getOptionValues(MAPPING_FILE_OPTION)),
+        cmd.hasOption(FUNCTION_JAR_OPTION) ? Arrays.stream(cmd.getOptionValues(FUNCTION_JAR_OPTION)) : Stream.empty())
+        .map(Paths::get)
+        .collect(Collectors.toList());
+    Path relativeSourceLocation = cmd.hasOption(RELATIVE_SOURCE_LOCATION_OPTION)
+        ? Paths.get(cmd.getOptionValue(RELATIVE_SOURCE_LOCATION_OPTION))
+        : null;
+    Path inputPath = cmd.hasOption(INPUT_FILE_OPTION)
+        ? Paths.get(cmd.getOptionValue(INPUT_FILE_OPTION))
+        : null;
+
+    IncrementalMapper incrementalMapper = new IncrementalMapper(Paths.get(cmd.getOptionValue(INCREMENTAL_OPTION)),
+        definitionFiles, relativeSourceLocation, inputPath);
+    if (cmd.hasOption(INCREMENTAL_DELTA_OPTION)) {
+      incrementalMapper.writeDelta(Paths.get(cmd.getOptionValue(INCREMENTAL_DELTA_OPTION)));
+    }
+
+    log.info("Executing mapping incrementally ...");
+    writeOutput(loadOutputRdfFormat(cmd),
+        handler -> incrementalMapper.map(mapper, input, mapping, getOutputNamespaceDeclarations(cmd), handler));
+  }
+
+  private void runStreaming(RmlMapper mapper, InputSource input, Set<TriplesMap> mapping) throws IOException {
+    RDFFormat outputFormat = loadOutputRdfFormat(cmd);
+    // -pl streams the mapping as well, while -so groups the streamed statements for any format
+    if (!StreamingMapper.supportsFormat(outputFormat) && !cmd.hasOption(SORT_OUTPUT_OPTION)) {
+      throw new CarmlJarException(String.format("Output format %s is not supported in streaming mode, which -%s " +
+          "and -%s use. Use one of nt, nq or brf, or sort the output with -%s.", outputFormat.getName(),
+          STREAM_OPTION, PIPELINE_OPTION, SORT_OUTPUT_OPTION));
+    }
+
+    log.info("Executing mapping in streaming mode ...");
+    writeOutput(outputFormat,
+        handler -> StreamingMapper.map(mapper, input, mapping, getOutputNamespaceDeclarations(cmd), handler,
+            metrics));
+  }
+
+  /**
+   * Hands the task a handler writing to the output in the given format, which is either the output file or console,
+   * a directory of shard files or a local store.
+   */
+  private void writeOutput(RDFFormat outputFormat, OutputTask task) throws IOException {
+    if (cmd.hasOption(SORT_OUTPUT_OPTION)
+        && (cmd.hasOption(REPOSITORY_OPTION) || cmd.hasOption(SHARD_DIRECTORY_OPTION))) {
+      throw new CarmlJarException(String.format("Option -%s sorts the output written to a file or the console, " +
+          "and cannot be combined with -%s or -%s", SORT_OUTPUT_OPTION, REPOSITORY_OPTION, SHARD_DIRECTORY_OPTION));
+    }
+
+    if (cmd.hasOption(REPOSITORY_OPTION)) {
+      // closed when mapping fails too, so the store is shut down and its lock released
+      try (RepositoryRdfHandler handler = createRepositoryHandler()) {
+        task.write(wrapOutputHandler(pipeline(handler)));
+      }
+      return;
+    }
+
+    if (cmd.hasOption(SHARD_DIRECTORY_OPTION)) {
+      // closed when mapping fails too, so no writer threads or open shard files are left behind
+      try (ShardedRdfHandler handler = createShardedHandler(outputFormat)) {
+        task.write(wrapOutputHandler(pipeline(handler)));
+      }
+      return;
+    }
+
+    try (OutputStream out = openOutput(cmd)) {
+      task.write(wrapOutputHandler(groupOutput(outputFormat, createWriter(outputFormat, out))));
+    }
+  }
+
+  private RDFHandler groupOutput(RDFFormat outputFormat, RDFHandler handler) {
+    if (!cmd.hasOption(SORT_OUTPUT_OPTION)) {
+      return handler;
+    }
+
+    long memoryMb = Long.parseLong(cmd.getOptionValue(SORT_OUTPUT_OPTION));
+    if (outputFormat.equals(RDFFormat.JSONLD) || outputFormat.equals(RDFFormat.RDFJSON)) {
+      log.warn("The {} writer keeps all statements in memory, sorting only groups its input",
+          outputFormat.getName());
+    }
+    log.info("Sorting output on disk within {} MB ...", memoryMb);
+    // the writers of formats without graphs write triples, so their statements are grouped by subject only
+    return new GroupingRdfHandler(handler, memoryMb * 1024 * 1024, outputFormat.supportsContexts());
+  }
+
+  private RDFHandler createWriter(RDFFormat outputFormat, OutputStream out) {
+    if (cmd.hasOption(PIPELINE_OPTION) && PipelinedRdfHandler.supportsSerializing(outputFormat)) {
+      int serializerThreads = Integer.parseInt(cmd.getOptionValue(PIPELINE_OPTION));
+      log.info("Serializing output on {} threads ...", serializerThreads);
+      return PipelinedRdfHandler.serializing(out, outputFormat, serializerThreads, getPipelineBatchSize(),
+          getPipelineQueueCapacity());
+    }
+    return pipeline(Rio.createWriter(outputFormat, out));
+  }
+
+  private RDFHandler pipeline(RDFHandler handler) {
+    return cmd.hasOption(PIPELINE_OPTION)
+        ? PipelinedRdfHandler.forwarding(handler, getPipelineBatchSize(), getPipelineQueueCapacity())
+        : handler;
+  }
+
+  private int getPipelineBatchSize() {
+    return cmd.hasOption(PIPELINE_BATCH_OPTION)
+        ? Integer.parseInt(cmd.getOptionValue(PIPELINE_BATCH_OPTION))
+        : DEFAULT_PIPELINE_BATCH_SIZE;
+  }
+
+  private int getPipelineQueueCapacity() {
+    return cmd.hasOption(PIPELINE_QUEUE_OPTION)
+        ? Integer.parseInt(cmd.getOptionValue(PIPELINE_QUEUE_OPTION))
+        : DEFAULT_PIPELINE_QUEUE_CAPACITY;
+  }
+
+  private RDFHandler wrapOutputHandler(RDFHandler handler) {
+    if (!cmd.hasOption(DEDUPLICATE_OPTION)) {
+      return handler;
+    }
+
+    String strategyName = cmd.getOptionValue(DEDUPLICATE_OPTION);
+    DeduplicatingRdfHandler.Strategy strategy = Arrays.stream(DeduplicatingRdfHandler.Strategy.values())
+        .filter(value -> value.name().equalsIgnoreCase(strategyName))
+        .findFirst()
+        .orElseThrow(() -> new CarmlJarException(String.format("Unsupported deduplication strategy %s. " +
+            "Use one of exact, bloom or sort.", strategyName)));
+    long memoryMb = cmd.hasOption(DEDUPLICATE_MEMORY_OPTION)
+        ? Long.parseLong(cmd.getOptionValue(DEDUPLICATE_MEMORY_OPTION))
+        : DEFAULT_DEDUPLICATE_MEMORY_MB;
+
+    log.info("Removing duplicate statements using the {} strategy within {} MB ...",
+        strategy.name().toLowerCase(Locale.ROOT), memoryMb);
+    return new DeduplicatingRdfHandler(handler, strategy, memoryMb * 1024 * 1024);
+  }
+
+  private RepositoryRdfHandler createRepositoryHandler() {
+    Path dataDirectory = Paths.get(cmd.getOptionValue(REPOSITORY_OPTION));
+    String typeName = cmd.getOptionValue(REPOSITORY_TYPE_OPTION, RepositoryRdfHandler.StoreType.NATIVE.name());
+    RepositoryRdfHandler.StoreType storeType = Arrays.stream(RepositoryRdfHandler.StoreType.values())
+        .filter(value -> value.name().equalsIgnoreCase(typeName))
+        .findFirst()
+        .orElseThrow(() -> new CarmlJarException(String.format("Unsupported repository type %s. " +
+            "Use one of native or memory.", typeName)));
+    int batchSize = cmd.hasOption(REPOSITORY_BATCH_OPTION)
+        ? Integer.parseInt(cmd.getOptionValue(REPOSITORY_BATCH_OPTION))
+        : DEFAULT_REPOSITORY_BATCH_SIZE;
+
+    RepositoryRdfHandler handler = new RepositoryRdfHandler(dataDirectory, storeType, batchSize);
+    if (cmd.hasOption(REPOSITORY_INDEXES_OPTION)) {
+      handler.indexAfterLoad(cmd.getOptionValue(REPOSITORY_INDEXES_OPTION));
+    }
+    if (cmd.hasOption(REPOSITORY_CONTEXT_OPTION)) {
+      handler.loadInto(SimpleValueFactory.getInstance().createIRI(cmd.getOptionValue(REPOSITORY_CONTEXT_OPTION)));
+    }
+    return handler;
+  }
+
+  private ShardedRdfHandler createShardedHandler(RDFFormat outputFormat) {
+    Path shardDirectory = Paths.get(cmd.getOptionValue(SHARD_DIRECTORY_OPTION));
+    log.info("Writing output shards to {} ...", shardDirectory);
+    ShardedRdfHandler handler = new ShardedRdfHandler(shardDirectory, outputFormat, getThreads(cmd));
+
+    if (cmd.hasOption(SHARD_BY_OPTION)) {
+      String shardBy = cmd.getOptionValue(SHARD_BY_OPTION);
+      ShardedRdfHandler.Partitioning partitioning = Arrays.stream(ShardedRdfHandler.Partitioning.values())
+          .filter(value -> value.name().equalsIgnoreCase(shardBy))
+          .findFirst()
+          .orElseThrow(() -> new CarmlJarException(String.format("Unsupported shard partitioning %s. " +
+              "Use one of graph or subject.", shardBy)));
+      int shardCount = cmd.hasOption(SHARD_COUNT_OPTION)
+          ? Integer.parseInt(cmd.getOptionValue(SHARD_COUNT_OPTION))
+          : getThreads(cmd);
+      handler.partitionBy(partitioning, shardCount);
+    }
+
+    long maxStatements = cmd.hasOption(SHARD_MAX_STATEMENTS_OPTION)
+        ? Long.parseLong(cmd.getOptionValue(SHARD_MAX_STATEMENTS_OPTION))
+        : Long.MAX_VALUE;
+    long maxBytes = cmd.hasOption(SHARD_MAX_BYTES_OPTION)
+        ? Long.parseLong(cmd.getOptionValue(SHARD_MAX_BYTES_OPTION))
+        : Long.MAX_VALUE;
+    handler.rotateAfter(maxStatements, maxBytes);
+
+    if (cmd.hasOption(SHARD_COMPRESSION_OPTION)) {
+      handler.compress(getCompression(SHARD_COMPRESSION_OPTION));
+    }
+
+    return handler;
+  }
+
+  private Compression getCompression(String option) {
+    String extension = cmd.getOptionValue(option);
+    return Compression.forFileName("." + extension)
+        .orElseThrow(() -> new CarmlJarException(String.format("Unsupported compression %s for -%s. " +
+            "Use one of gz, zst or lz4.", extension, option)));
+  }
+
+  private BatchMapper createBatchMapper(MapperFactory mapperFactory, Set<TriplesMap> mapping) {
+    BatchMapper batchMapper = new BatchMapper(mapperFactory, mapping, getThreads(cmd)).metrics(metrics);
+    if (cmd.hasOption(BATCH_COMPRESSION_OPTION)) {
+      batchMapper.compress(getCompression(BATCH_COMPRESSION_OPTION));
+    }
+    return batchMapper;
+  }
+
+  private void runBatch(MapperFactory mapperFactory, Set<TriplesMap> mapping) throws IOException {
+    List<Path> inputs = Arrays.stream(cmd.getOptionValues(BATCH_OPTION))
+        .flatMap(location -> BatchMapper.resolveInputs(location).stream())
+        .distinct()
+        .collect(Collectors.toList());
+
+    if (cmd.hasOption(BATCH_COMPRESSION_OPTION) && !cmd.hasOption(BATCH_OUTPUT_OPTION)) {
+      throw new CarmlJarException(String.format("Option -%s requires an output directory to be provided with -%s. " +
+          "Merged output is compressed when the -%s file name ends with .gz, .zst or .lz4", BATCH_COMPRESSION_OPTION,
+          BATCH_OUTPUT_OPTION, OUTPUT_FILE_OPTION));
+    }
+
+    BatchMapper batchMapper = createBatchMapper(mapperFactory, mapping);
+    RDFFormat outputFormat = loadOutputRdfFormat(cmd);
+
+    if (cmd.hasOption(BATCH_OUTPUT_OPTION)) {
+      Path outputDirectory = Paths.get(cmd.getOptionValue(BATCH_OUTPUT_OPTION));
+      log.info("Writing output for each input file to {} ...", outputDirectory);
+      batchMapper.mapToDirectory(inputs, outputDirectory, outputFormat, getOutputNamespaceDeclarations(cmd));
+    } else {
+      writeOutput(outputFormat, handler -> batchMapper.mapMerged(inputs, getOutputNamespaceDeclarations(cmd), handler));
+    }
+  }
+
+  private void runWatch(MapperFactory mapperFactory, Set<TriplesMap> mapping) {
+    if (!cmd.hasOption(BATCH_OUTPUT_OPTION)) {
+      throw new CarmlJarException(String.format("Option -%s requires an output directory to be provided with -%s",
+          WATCH_OPTION, BATCH_OUTPUT_OPTION));
+    }
+
+    Path directory = Paths.get(cmd.getOptionValue(WATCH_OPTION)).toAbsolutePath().normalize();
+    Path outputDirectory = Paths.get(cmd.getOptionValue(BATCH_OUTPUT_OPTION)).toAbsolutePath().normalize();
+    if (directory.equals(outputDirectory)) {
+      throw new CarmlJarException(String.format("Options -%s and -%s require different directories", WATCH_OPTION,
+          BATCH_OUTPUT_OPTION));
+    }
+
+    BatchMapper batchMapper = createBatchMapper(mapperFactory, mapping);
+    DirectoryWatcher watcher = new DirectoryWatcher(batchMapper, directory, outputDirectory,
+        loadOutputRdfFormat(cmd), getOutputNamespaceDeclarations(cmd), getThreads(cmd));
+    Runtime.getRuntime().addShutdownHook(new Thread(watcher::close, "watch-shutdown"));
+    watcher.watch();
+  }
+
+  private void runChunked(MapperFactory mapperFactory, Set<TriplesMap> mapping) throws IOException {
+    if (!cmd.hasOption(INPUT_FILE_OPTION)) {
+      throw new CarmlJarException(String.format("Option -%s requires an input file to be provided with -%s",
+          CHUNK_SIZE_OPTION, INPUT_FILE_OPTION));
+    }
+
+    Path inputPath = Paths.get(cmd.getOptionValue(INPUT_FILE_OPTION));
+    int chunkSize = Integer.parseInt(cmd.getOptionValue(CHUNK_SIZE_OPTION));
+    ChunkedMapper chunkedMapper =
+        new ChunkedMapper(mapperFactory, mapping, getThreads(cmd), cmd.hasOption(CHUNK_ORDERED_OPTION))
+            .metrics(metrics);
+
+    writeOutput(loadOutputRdfFormat(cmd),
+        handler -> chunkedMapper.map(inputPath, chunkSize, getOutputNamespaceDeclarations(cmd), handler));
+  }
+
+  private void runServer(MapperFactory mapperFactory) throws IOException {
+    Map<String, Set<TriplesMap>> mappings = new LinkedHashMap<>();
+    for (String mappingPath : cmd.getOptionValues(MAPPING_FILE_OPTION)) {
+      Path path = Paths.get(mappingPath);
+      String name = MappingServer.mappingName(path);
+      if (mappings.put(name, loadMapping(cmd, path)) != null) {
+        throw new CarmlJarException(String.format("Multiple mappings with name '%s' provided", name));
+      }
+    }
+
+    int maxConcurrent = cmd.hasOption(SERVER_MAX_CONCURRENT_OPTION)
+        ? Integer.parseInt(cmd.getOptionValue(SERVER_MAX_CONCURRENT_OPTION))
+        : getThreads(cmd);
+
+    MappingServer server = new MappingServer(mapperFactory, mappings, getOutputNamespaceDeclarations(cmd),
+        loadOutputRdfFormat(cmd), maxConcurrent, SERVER_QUEUE_TIMEOUT_MILLIS);
+    server.start(Integer.parseInt(cmd.getOptionValue(SERVER_OPTION)));
+  }
+
+  private int getThreads(CommandLine cmd) {
+    Objects.requireNonNull(cmd);
+    if (cmd.hasOption(THREADS_OPTION)) {
+      return Integer.parseInt(cmd.getOptionValue(THREADS_OPTION));
+    }
+    return Runtime.getRuntime().availableProcessors();
+  }
+
+  private OutputStream openOutput(CommandLine cmd) {
+    Objects.requireNonNull(cmd);
+    int bufferSize = cmd.hasOption(OUTPUT_BUFFER_OPTION)
+        ? Integer.parseInt(cmd.getOptionValue(OUTPUT_BUFFER_OPTION))
+        : OutputStreams.DEFAULT_BUFFER_SIZE;
+
+    OutputStream out;
     String outputPath = cmd.getOptionValue(OUTPUT_FILE_OPTION);
     if (outputPath == null) {
       log.info("No output file specified. Outputting to console...");
-      StringWriter writer = new StringWriter();
-      writeRdf(model, loadOutputRdfFormat(cmd), writer);
-
-      System.out.println(String.format("%n%s", writer.toString()));
+      out = OutputStreams.console(bufferSize);
     } else {
       log.info("Writing output to {} ...", outputPath);
-      writeToFile(model, outputPath, loadOutputRdfFormat(cmd));
+      try {
+        out = OutputStreams.file(Paths.get(outputPath), bufferSize, getThreads(cmd));
+      } catch (IOException exception) {
+        throw new CarmlJarException(String.format("Could not open output file %s", outputPath), exception);
+      }
     }
+
+    return metrics == null ? out : metrics.countWritten(out);
   }
 
   private void help() {
     helpFormatter.printHelp("carml", options, true);
   }
 
-  private RmlMapper prepareMapper(CommandLine cmd) {
+  private MapperFactory createMapperFactory(CommandLine cmd) {
     Objects.requireNonNull(cmd);
 
-    RmlMapper.Builder mapperBuilder = RmlMapper.newBuilder()
-        .setLogicalSourceResolver(Rdf.Ql.JsonPath, new JsonPathResolver())
-        .setLogicalSourceResolver(Rdf.Ql.XPath, new XPathResolver())
-        .setLogicalSourceResolver(Rdf.Ql.Csv, new CsvResolver());
-
-    if (cmd.hasOption(FUNCTION_JAR_OPTION) && cmd.hasOption(FUNCTION_OPTION)) {
-      Set<String> fnClasses = ImmutableSet.copyOf(cmd.getOptionValues(FUNCTION_OPTION));
+    Set<Object> functions = ImmutableSet.of();
+    if (cmd.hasOption(FUNCTION_JAR_OPTION)) {
+      Set<String> fnClasses = cmd.hasOption(FUNCTION_OPTION)
+          ? ImmutableSet.copyOf(cmd.getOptionValues(FUNCTION_OPTION))
+          : ImmutableSet.of();
 
       Set<File> fnJars = Arrays.stream(cmd.getOptionValues(FUNCTION_JAR_OPTION))
           .map(File::new)
           .collect(ImmutableCollectors.toImmutableSet());
 
       log.debug("Loading transformation functions ...");
-      Set<Object> functions = JarFunctionLoader.load(fnClasses, fnJars);
-      functions.forEach(mapperBuilder::addFunctions);
+      Path functionIndexDirectory = cmd.hasOption(MAPPING_CACHE_OPTION)
+          ? Paths.get(cmd.getOptionValue(MAPPING_CACHE_OPTION))
+          : null;
+      functions = JarFunctionLoader.load(fnClasses, fnJars, functionIndexDirectory);
+
+      Set<String> memoizedFunctions = cmd.hasOption(MEMOIZE_OPTION)
+          ? ImmutableSet.copyOf(cmd.getOptionValues(MEMOIZE_OPTION))
+          : ImmutableSet.of();
+      long memoizeSize = cmd.hasOption(MEMOIZE_SIZE_OPTION)
+          ? Long.parseLong(cmd.getOptionValue(MEMOIZE_SIZE_OPTION))
+          : DEFAULT_MEMOIZE_SIZE;
+      functionMemoizer = new FunctionMemoizer(memoizedFunctions, memoizeSize);
+      functions = functionMemoizer.memoize(functions);
     }
 
-    if (cmd.hasOption(RELATIVE_SOURCE_LOCATION_OPTION)) {
-      mapperBuilder.fileResolver(Paths.get(cmd.getOptionValue(RELATIVE_SOURCE_LOCATION_OPTION)));
+    Path relativeSourceLocation = cmd.hasOption(RELATIVE_SOURCE_LOCATION_OPTION)
+        ? Paths.get(cmd.getOptionValue(RELATIVE_SOURCE_LOCATION_OPTION))
+        : null;
+
+    MapperFactory mapperFactory = new MapperFactory(functions, relativeSourceLocation);
+    if (cmd.hasOption(INTERN_OPTION)) {
+      long memoryBudget = Long.parseLong(cmd.getOptionValue(INTERN_OPTION)) * 1024 * 1024;
+      interningValueFactory = new InterningValueFactory(memoryBudget, getThreads(cmd));
+      mapperFactory.valueFactory(interningValueFactory);
     }
+    return mapperFactory;
+  }
 
-    RmlMapper mapper = mapperBuilder.build();
+  /**
+   * Returns the source of the input file to bind to the mapper, which is opened again for every part of the mapping
+   * that is executed on its own, or {@code null} if there is no input file.
+   */
+  private InputSource createInputSource(CommandLine cmd) {
+    Objects.requireNonNull(cmd);
+    if (!cmd.hasOption(INPUT_FILE_OPTION)) {
+      return null;
+    }
 
-    if (cmd.hasOption(INPUT_FILE_OPTION)) {
-      Path inputPath = Paths.get(cmd.getOptionValue(INPUT_FILE_OPTION));
-      try(InputStream is = Files.newInputStream(inputPath)) {
-        mapper.bindInputStream(is);
+    Path inputPath = Paths.get(cmd.getOptionValue(INPUT_FILE_OPTION));
+    return () -> {
+      try {
+        InputStream is = InputStreams.file(inputPath);
+        return metrics == null ? is : metrics.countRead(is);
       } catch (IOException exception) {
         throw new CarmlJarException(String.format("Could not read input file %s", inputPath), exception);
       }
-    }
-
-    return mapper;
+    };
   }
 
   private Set<TriplesMap> loadMapping(CommandLine cmd) {
@@ -203,52 +803,26 @@ public class CarmlRunner implements CommandLineRunner, InitializingBean {
         .map(Paths::get)
         .toArray(Path[]::new);
 
+    return loadMapping(cmd, paths);
+  }
+
+  private Set<TriplesMap> loadMapping(CommandLine cmd, Path... paths) {
+    Objects.requireNonNull(cmd);
+
     log.info("Loading mapping from {} ...", paths);
 
+    RDFFormat rdfFormat = null;
     if (cmd.hasOption(MAPPING_FORMAT_OPTION)) {
       String format = cmd.getOptionValue(MAPPING_FORMAT_OPTION);
-      RDFFormat rdfFormat = determineRdfFormat(format).orElseThrow(
+      rdfFormat = determineRdfFormat(format).orElseThrow(
           () -> new MappingFormatException(String.format("Unrecognized mapping format '%s' specified.", format)));
-
-      return RmlMappingLoader.build().load(rdfFormat, paths);
-    } else {
-      Model mappingModel = Arrays.stream(paths)
-          .flatMap(path -> resolvePaths(path).stream())
-          .flatMap(path -> {
-            try (InputStream is = Files.newInputStream(path)) {
-              String fileName = path.getFileName().toString();
-              Optional<RDFFormat> rdfFormat = Rio.getParserFormatForFileName(path.getFileName().toString());
-
-              Model model = rdfFormat.map(pathFormat -> IoUtils.parse(is, pathFormat)).orElseGet(null);
-              if (model == null) {
-                log.warn("Could not determine mapping format for filename '{}', ignoring this file...", fileName);
-                return Stream.empty();
-              } else {
-                return model.stream();
-              }
-            } catch (IOException exception) {
-              throw new CarmlJarException(String.format("Could not read file %s", path), exception);
-            }
-          })
-          .collect(Collectors.toCollection(LinkedHashModel::new));
-
-      return RmlMappingLoader.build().load(mappingModel);
     }
-  }
 
-  private List<Path> resolvePaths(Path... paths) {
-    return Arrays.stream(paths)
-        .flatMap(path -> {
-          System.out.println(path);
-          try (Stream<Path> walk = Files.walk(path)) {
-            return walk.filter(Files::isRegularFile)
-                .collect(Collectors.toList())
-                .stream();
-          } catch (IOException exception) {
-            throw new CarmlJarException(String.format("Exception occurred while reading file %s", path), exception);
-          }
-        })
-        .collect(Collectors.toList());
+    MappingCache cache = cmd.hasOption(MAPPING_CACHE_OPTION)
+        ? new MappingCache(Paths.get(cmd.getOptionValue(MAPPING_CACHE_OPTION)))
+        : null;
+
+    return MappingLoader.load(rdfFormat, cache, getThreads(cmd), paths);
   }
 
   private RDFFormat loadOutputRdfFormat(CommandLine cmd) {
@@ -261,7 +835,7 @@ public class CarmlRunner implements CommandLineRunner, InitializingBean {
     return RDFFormat.NQUADS;
   }
 
-  private Optional<RDFFormat> determineRdfFormat(String format) {
+  static Optional<RDFFormat> determineRdfFormat(String format) {
     Objects.requireNonNull(format);
 
     return RDFWriterRegistry.getInstance().getKeys().stream()
@@ -271,6 +845,10 @@ public class CarmlRunner implements CommandLineRunner, InitializingBean {
 
   private Set<Namespace> getOutputNamespaceDeclarations(CommandLine cmd) {
     Objects.requireNonNull(cmd);
+    if (outputNamespaces != null) {
+      return outputNamespaces;
+    }
+
     Set<Namespace> namespaces = new HashSet<>();
     if (cmd.hasOption(OUTPUT_NAMESPACE_OPTION)) {
       String[] prefixes = cmd.getOptionValues(OUTPUT_NAMESPACE_OPTION);
@@ -282,7 +860,8 @@ public class CarmlRunner implements CommandLineRunner, InitializingBean {
       namespaces.addAll(ContextLoader.getNamespaces(contextFile));
     }
 
-    return ImmutableSet.copyOf(namespaces);
+    outputNamespaces = ImmutableSet.copyOf(namespaces);
+    return outputNamespaces;
   }
 
   @Override
@@ -354,7 +933,8 @@ public class CarmlRunner implements CommandLineRunner, InitializingBean {
             .longOpt(FUNCTION_OPTION_LONG)
             .argName(FUNCTION_OPTION_LONG)
             .hasArgs()
-            .desc(String.format("Transformation function classes from -%s to add to mapper", FUNCTION_JAR_OPTION))
+            .desc(String.format("Transformation function classes from -%s to add to mapper. Defaults to all classes " +
+                "in -%s declaring functions", FUNCTION_JAR_OPTION, FUNCTION_JAR_OPTION))
             .build();
     options.addOption(functionsOption);
 
@@ -395,25 +975,382 @@ public class CarmlRunner implements CommandLineRunner, InitializingBean {
             .desc("JSON-LD Context file containing namespace prefix declarations")
             .build();
     options.addOption(outputContextOption);
-  }
 
-  private static void writeToFile(Model model, String outputFilePath, RDFFormat format) {
-    FileWriter fw;
+    Option streamOption =
+        Option.builder(STREAM_OPTION)
+            .longOpt(STREAM_OPTION_LONG)
+            .desc("Write output statements as soon as each triples map has been executed, instead of building " +
+                "the complete result model first. Only supported for the nt, nq and brf output formats, unless the " +
+                "output is sorted with -so")
+            .build();
+    options.addOption(streamOption);
 
-    try {
-      fw = new FileWriter(outputFilePath);
-    } catch (IOException e) {
-      throw new RuntimeException(e);
-    }
+    Option outputBufferOption =
+        Option.builder(OUTPUT_BUFFER_OPTION)
+            .longOpt(OUTPUT_BUFFER_OPTION_LONG)
+            .argName(OUTPUT_BUFFER_OPTION_LONG)
+            .hasArg()
+            .desc(String.format("Output buffer size in bytes, defaults to %d", OutputStreams.DEFAULT_BUFFER_SIZE))
+            .build();
+    options.addOption(outputBufferOption);
+
+    Option batchOption =
+        Option.builder(BATCH_OPTION)
+            .longOpt(BATCH_OPTION_LONG)
+            .argName(BATCH_OPTION_LONG)
+            .hasArgs()
+            .desc(String.format("Input directory path(s) and/or glob pattern(s). Maps each input file as if it was " +
+                "provided with -%s, loading the mapping and functions only once", INPUT_FILE_OPTION))
+            .build();
+    options.addOption(batchOption);
+
+    Option batchOutputOption =
+        Option.builder(BATCH_OUTPUT_OPTION)
+            .longOpt(BATCH_OUTPUT_OPTION_LONG)
+            .argName(BATCH_OUTPUT_OPTION_LONG)
+            .hasArg()
+            .desc(String.format("Output directory for batch and watch mode, to write a separate output file per " +
+                "input file. If left empty in batch mode, all output is merged and written to -%s", OUTPUT_FILE_OPTION))
+            .build();
+    options.addOption(batchOutputOption);
+
+    Option batchCompressionOption =
+        Option.builder(BATCH_COMPRESSION_OPTION)
+            .longOpt(BATCH_COMPRESSION_OPTION_LONG)
+            .argName(BATCH_COMPRESSION_OPTION_LONG)
+            .hasArg()
+            .desc(String.format("Compress the output files of batch and watch mode in -%s with gz, zst or lz4",
+                BATCH_OUTPUT_OPTION))
+            .build();
+    options.addOption(batchCompressionOption);
+
+    Option threadsOption =
+        Option.builder(THREADS_OPTION)
+            .longOpt(THREADS_OPTION_LONG)
+            .argName(THREADS_OPTION_LONG)
+            .hasArg()
+            .desc("Number of worker threads, also used for parsing mapping files. " +
+                "Defaults to the number of available processors")
+            .build();
+    options.addOption(threadsOption);
+
+    Option chunkSizeOption =
+        Option.builder(CHUNK_SIZE_OPTION)
+            .longOpt(CHUNK_SIZE_OPTION_LONG)
+            .argName(CHUNK_SIZE_OPTION_LONG)
+            .hasArg()
+            .desc(String.format("Split the CSV or JSON lines input file provided with -%s into chunks of the given " +
+                "number of records and map the chunks concurrently. Joins only match records within a chunk",
+                INPUT_FILE_OPTION))
+            .build();
+    options.addOption(chunkSizeOption);
+
+    Option chunkOrderedOption =
+        Option.builder(CHUNK_ORDERED_OPTION)
+            .longOpt(CHUNK_ORDERED_OPTION_LONG)
+            .desc(String.format("Write the output of chunks in input order when using -%s. " +
+                "By default output is written as soon as a chunk is mapped", CHUNK_SIZE_OPTION))
+            .build();
+    options.addOption(chunkOrderedOption);
+
+    Option serverOption =
+        Option.builder(SERVER_OPTION)
+            .longOpt(SERVER_OPTION_LONG)
+            .argName("port")
+            .hasArg()
+            .desc(String.format("Start an HTTP mapping service on the given localhost port. Each -%s path is loaded " +
+                "as a mapping named after its file or directory name. Source data posted to /mappings/<name> is " +
+                "bound as input stream, like -%s, and the output is returned in the format given by the 'format' " +
+                "query parameter or Accept header, defaulting to -%s. Request bodies over %d MB are spooled to a " +
+                "temporary file while they are mapped", MAPPING_FILE_OPTION, INPUT_FILE_OPTION, OUTPUT_FORMAT_OPTION,
+                MappingServer.DEFAULT_BODY_MEMORY_LIMIT >> 20))
+            .build();
+    options.addOption(serverOption);
+
+    Option serverMaxConcurrentOption =
+        Option.builder(SERVER_MAX_CONCURRENT_OPTION)
+            .longOpt(SERVER_MAX_CONCURRENT_OPTION_LONG)
+            .argName(SERVER_MAX_CONCURRENT_OPTION_LONG)
+            .hasArg()
+            .desc(String.format("Maximum number of requests mapped concurrently by the mapping service, defaults to " +
+                "-%s", THREADS_OPTION))
+            .build();
+    options.addOption(serverMaxConcurrentOption);
+
+    Option mappingCacheOption =
+        Option.builder(MAPPING_CACHE_OPTION)
+            .longOpt(MAPPING_CACHE_OPTION_LONG)
+            .argName(MAPPING_CACHE_OPTION_LONG)
+            .hasArg()
+            .desc("Directory to cache parsed mappings in. When the mapping files are unchanged since a previous " +
+                "run, the mapping is read from a binary RDF snapshot instead of parsing the mapping files. Also " +
+                "remembers the function classes found in unchanged function jars")
+            .build();
+    options.addOption(mappingCacheOption);
+
+    Option metricsOption =
+        Option.builder(METRICS_OPTION)
+            .longOpt(METRICS_OPTION_LONG)
+            .argName(METRICS_OPTION_LONG)
+            .hasArg()
+            .desc(String.format("File to write an execution report to, with statements and wall and CPU time per " +
+                "triples map, or per input file with -%s and per chunk with -%s, and bytes read and written. Written " +
+                "as CSV if the file name ends with .csv, with one row per triples map, input file or chunk only, " +
+                "and as JSON otherwise. When mapping a single input without -%s, this executes triples maps one " +
+                "at a time instead of in a single mapping run, so that each of them can be measured", BATCH_OPTION,
+                CHUNK_SIZE_OPTION, STREAM_OPTION))
+            .build();
+    options.addOption(metricsOption);
+
+    Option progressOption =
+        Option.builder(PROGRESS_OPTION)
+            .longOpt(PROGRESS_OPTION_LONG)
+            .argName("seconds")
+            .hasArg()
+            .desc(String.format("Log mapping progress at the given interval in seconds. When mapping a single input " +
+                "without -%s, this executes triples maps one at a time instead of in a single mapping run",
+                STREAM_OPTION))
+            .build();
+    options.addOption(progressOption);
+
+    Option shardDirectoryOption =
+        Option.builder(SHARD_DIRECTORY_OPTION)
+            .longOpt(SHARD_DIRECTORY_OPTION_LONG)
+            .argName(SHARD_DIRECTORY_OPTION_LONG)
+            .hasArg()
+            .desc("Output directory to write the output to as shard files, with a manifest.json listing the " +
+                "statements, size and SHA-256 checksum of each shard. Replaces -o")
+            .build();
+    options.addOption(shardDirectoryOption);
+
+    Option shardByOption =
+        Option.builder(SHARD_BY_OPTION)
+            .longOpt(SHARD_BY_OPTION_LONG)
+            .argName(SHARD_BY_OPTION_LONG)
+            .hasArg()
+            .desc("Partition shards by named graph (graph) or by subject hash (subject), writing partitions " +
+                "concurrently")
+            .build();
+    options.addOption(shardByOption);
+
+    Option shardCountOption =
+        Option.builder(SHARD_COUNT_OPTION)
+            .longOpt(SHARD_COUNT_OPTION_LONG)
+            .argName(SHARD_COUNT_OPTION_LONG)
+            .hasArg()
+            .desc("Number of subject hash partitions, defaults to -t")
+            .build();
+    options.addOption(shardCountOption);
+
+    Option shardMaxStatementsOption =
+        Option.builder(SHARD_MAX_STATEMENTS_OPTION)
+            .longOpt(SHARD_MAX_STATEMENTS_OPTION_LONG)
+            .argName(SHARD_MAX_STATEMENTS_OPTION_LONG)
+            .hasArg()
+            .desc("Rotate to a new shard file after the given number of statements")
+            .build();
+    options.addOption(shardMaxStatementsOption);
+
+    Option shardMaxBytesOption =
+        Option.builder(SHARD_MAX_BYTES_OPTION)
+            .longOpt(SHARD_MAX_BYTES_OPTION_LONG)
+            .argName(SHARD_MAX_BYTES_OPTION_LONG)
+            .hasArg()
+            .desc("Rotate to a new shard file after about the given number of uncompressed bytes")
+            .build();
+    options.addOption(shardMaxBytesOption);
+
+    Option shardCompressionOption =
+        Option.builder(SHARD_COMPRESSION_OPTION)
+            .longOpt(SHARD_COMPRESSION_OPTION_LONG)
+            .argName(SHARD_COMPRESSION_OPTION_LONG)
+            .hasArg()
+            .desc("Compress shard files with gz, zst or lz4")
+            .build();
+    options.addOption(shardCompressionOption);
+
+    Option deduplicateOption =
+        Option.builder(DEDUPLICATE_OPTION)
+            .longOpt(DEDUPLICATE_OPTION_LONG)
+            .argName("strategy")
+            .hasArg()
+            .desc("Remove duplicate statements from streamed output (-s, -b, -cs) within the -ddm memory budget. " +
+                "Strategies are exact (off-heap statement fingerprints), bloom (Bloom filter, may drop a few distinct " +
+                "statements) or sort (external sort on disk, output is sorted)")
+            .build();
+    options.addOption(deduplicateOption);
+
+    Option deduplicateMemoryOption =
+        Option.builder(DEDUPLICATE_MEMORY_OPTION)
+            .longOpt(DEDUPLICATE_MEMORY_OPTION_LONG)
+            .argName("MB")
+            .hasArg()
+            .desc(String.format("Memory budget for -dd in megabytes, defaults to %d", DEFAULT_DEDUPLICATE_MEMORY_MB))
+            .build();
+    options.addOption(deduplicateMemoryOption);
+
+    Option sortOutputOption =
+        Option.builder(SORT_OUTPUT_OPTION)
+            .longOpt(SORT_OUTPUT_OPTION_LONG)
+            .argName("MB")
+            .hasArg()
+            .desc("Sort the output on disk within the given memory budget in megabytes, and write it grouped by " +
+                "graph and subject, so grouped formats such as ttl and trig are compact without keeping the output " +
+                "in memory. Implies -s, and cannot be combined with -sd or -r")
+            .build();
+    options.addOption(sortOutputOption);
+
+    Option repositoryOption =
+        Option.builder(REPOSITORY_OPTION)
+            .longOpt(REPOSITORY_OPTION_LONG)
+            .argName("dir")
+            .hasArg()
+            .desc("Data directory of a local RDF4J store to load the output into, instead of writing it to -o")
+            .build();
+    options.addOption(repositoryOption);
+
+    Option repositoryTypeOption =
+        Option.builder(REPOSITORY_TYPE_OPTION)
+            .longOpt(REPOSITORY_TYPE_OPTION_LONG)
+            .argName("type")
+            .hasArg()
+            .desc("Type of the -r store, native or memory, defaults to native")
+            .build();
+    options.addOption(repositoryTypeOption);
+
+    Option repositoryIndexesOption =
+        Option.builder(REPOSITORY_INDEXES_OPTION)
+            .longOpt(REPOSITORY_INDEXES_OPTION_LONG)
+            .argName("indexes")
+            .hasArg()
+            .desc("Triple indexes to build after loading a native store, e.g. spoc,posc,cosp. The store is loaded " +
+                "with only the spoc index")
+            .build();
+    options.addOption(repositoryIndexesOption);
+
+    Option repositoryBatchOption =
+        Option.builder(REPOSITORY_BATCH_OPTION)
+            .longOpt(REPOSITORY_BATCH_OPTION_LONG)
+            .argName("statements")
+            .hasArg()
+            .desc(String.format("Number of statements per -r transaction, defaults to %d",
+                DEFAULT_REPOSITORY_BATCH_SIZE))
+            .build();
+    options.addOption(repositoryBatchOption);
+
+    Option repositoryContextOption =
+        Option.builder(REPOSITORY_CONTEXT_OPTION)
+            .longOpt(REPOSITORY_CONTEXT_OPTION_LONG)
+            .argName("iri")
+            .hasArg()
+            .desc("Named graph to load all statements into with -r")
+            .build();
+    options.addOption(repositoryContextOption);
+
+    Option pipelineOption =
+        Option.builder(PIPELINE_OPTION)
+            .longOpt(PIPELINE_OPTION_LONG)
+            .argName("threads")
+            .hasArg()
+            .desc("Write output on a separate thread while mapping, executing triples maps one at a time as with -s, " +
+                "so it supports the same output formats. For nt and nq output, batches are serialized on the given " +
+                "number of threads")
+            .build();
+    options.addOption(pipelineOption);
+
+    Option pipelineBatchOption =
+        Option.builder(PIPELINE_BATCH_OPTION)
+            .longOpt(PIPELINE_BATCH_OPTION_LONG)
+            .argName("statements")
+            .hasArg()
+            .desc(String.format("Number of statements per -pl batch, defaults to %d", DEFAULT_PIPELINE_BATCH_SIZE))
+            .build();
+    options.addOption(pipelineBatchOption);
+
+    Option pipelineQueueOption =
+        Option.builder(PIPELINE_QUEUE_OPTION)
+            .longOpt(PIPELINE_QUEUE_OPTION_LONG)
+            .argName("batches")
+            .hasArg()
+            .desc(String.format("Number of -pl batches that can wait to be written before mapping blocks, " +
+                "defaults to %d", DEFAULT_PIPELINE_QUEUE_CAPACITY))
+            .build();
+    options.addOption(pipelineQueueOption);
+
+    Option memoizeOption =
+        Option.builder(MEMOIZE_OPTION)
+            .longOpt(MEMOIZE_OPTION_LONG)
+            .argName("functions")
+            .hasArgs()
+            .desc("Transformation functions to cache the results of, by function IRI, class name or Class#method. " +
+                "Functions annotated with an annotation named @Memoized are always cached")
+            .build();
+    options.addOption(memoizeOption);
+
+    Option memoizeSizeOption =
+        Option.builder(MEMOIZE_SIZE_OPTION)
+            .longOpt(MEMOIZE_SIZE_OPTION_LONG)
+            .argName("results")
+            .hasArg()
+            .desc(String.format("Maximum number of cached results per memoized function, defaults to %d",
+                DEFAULT_MEMOIZE_SIZE))
+            .build();
+    options.addOption(memoizeSizeOption);
+
+    Option internOption =
+        Option.builder(INTERN_OPTION)
+            .longOpt(INTERN_OPTION_LONG)
+            .argName("MB")
+            .hasArg()
+            .desc("Share one instance of repeated IRIs and literals in the output, keeping terms that are not " +
+                "predicates, graphs or datatypes in a dictionary of the given size in megabytes. Reduces heap use " +
+                "of in-memory mapping")
+            .build();
+    options.addOption(internOption);
+
+    Option watchOption =
+        Option.builder(WATCH_OPTION)
+            .longOpt(WATCH_OPTION_LONG)
+            .argName("dir")
+            .hasArg()
+            .desc(String.format("Landing directory to watch. Every new or modified file in it is mapped as if it was " +
+                "provided with -%s, and its output is moved into -%s when complete, followed by a .done marker",
+                INPUT_FILE_OPTION, BATCH_OUTPUT_OPTION))
+            .build();
+    options.addOption(watchOption);
+
+    Option incrementalOption =
+        Option.builder(INCREMENTAL_OPTION)
+            .longOpt(INCREMENTAL_OPTION_LONG)
+            .argName("dir")
+            .hasArg()
+            .desc("Directory to keep the output of every triples map in, with a manifest of the source files it was " +
+                "mapped from. On the next run, only triples maps with changed source files are mapped again, and " +
+                "the output of the others is reused")
+            .build();
+    options.addOption(incrementalOption);
+
+    Option incrementalDeltaOption =
+        Option.builder(INCREMENTAL_DELTA_OPTION)
+            .longOpt(INCREMENTAL_DELTA_OPTION_LONG)
+            .argName("dir")
+            .hasArg()
+            .desc(String.format("Directory to write the statements added and removed since the previous -%s run " +
+                "to, as added.nq and removed.nq", INCREMENTAL_OPTION))
+            .build();
+    options.addOption(incrementalDeltaOption);
+  }
+
+  @FunctionalInterface
+  private interface OutputTask {
 
-    writeRdf(model, format, fw);
+    void write(RDFHandler handler) throws IOException;
   }
 
-  private static void writeRdf(Model model, RDFFormat format, Writer writer) {
-    BufferedWriter bw = new BufferedWriter(writer);
+  static void writeRdf(Model model, RDFFormat format, OutputStream out) {
     WriterConfig config = new WriterConfig();
     config.set(BasicWriterSettings.PRETTY_PRINT, true);
-    Rio.write(model, bw, format, config);
+    Rio.write(model, out, format, config);
   }
 
 }
@@ -0,0 +1,143 @@
+package com.skemu.rdf.carml;
+
+import com.taxonic.carml.engine.RmlMapper;
+import com.taxonic.carml.model.TriplesMap;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Namespace;
+import org.eclipse.rdf4j.rio.RDFHandler;
+
+/**
+ * Maps a single large line oriented input file by splitting it into record aligned chunks that are mapped
+ * concurrently, each bound as the input stream of its own mapper. Results are handed to the {@link RDFHandler} on the
+ * calling thread, either in chunk order or as soon as a chunk is done.
+ *
+ * <p>Every chunk is mapped in isolation, so joins between records of the input only match within a chunk.
+ */
+@Slf4j
+class ChunkedMapper {
+
+  private final MapperFactory mapperFactory;
+
+  private final Set<TriplesMap> mapping;
+
+  private final int threads;
+
+  private final boolean ordered;
+
+  private MappingMetrics metrics;
+
+  ChunkedMapper(MapperFactory mapperFactory, Set<TriplesMap> mapping, int threads, boolean ordered) {
+    this.mapperFactory = Objects.requireNonNull(mapperFactory);
+    this.mapping = Objects.requireNonNull(mapping);
+    this.threads = threads;
+    this.ordered = ordered;
+  }
+
+  /**
+   * Records the execution of every chunk, named after the input file and its chunk number, and the bytes read from
+   * the input file in the given metrics.
+   */
+  ChunkedMapper metrics(MappingMetrics metrics) {
+    this.metrics = metrics;
+    return this;
+  }
+
+  void map(Path input, int recordsPerChunk, Set<Namespace> namespaces, RDFHandler handler) {
+    RecordChunkReader.Format format = RecordChunkReader.Format.forFileName(
+        Compression.stripExtension(input.getFileName().toString()))
+        .orElseThrow(() -> new CarmlJarException(String.format(
+            "Could not determine chunk format for input file %s. Supported extensions are .csv, .jsonl and .ndjson",
+            input)));
+
+    log.info("Mapping {} in chunks of {} records using {} threads ...", input, recordsPerChunk, threads);
+
+    handler.startRDF();
+    namespaces.forEach(namespace -> handler.handleNamespace(namespace.getPrefix(), namespace.getName()));
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CompletionService<Model> completionService = new ExecutorCompletionService<>(executor);
+    Deque<Future<Model>> pending = new ArrayDeque<>();
+    int maxPending = threads * 2;
+    long chunks = 0;
+
+    try (InputStream inputStream = openInput(input);
+        RecordChunkReader chunkReader = new RecordChunkReader(inputStream, format, recordsPerChunk)) {
+      byte[] chunk;
+      while ((chunk = chunkReader.next()) != null) {
+        pending.add(submit(executor, completionService, mapChunk(chunk, String.format("%s#%d", input, chunks))));
+        chunks++;
+        if (pending.size() >= maxPending) {
+          takeNext(pending, completionService).get().forEach(handler::handleStatement);
+        }
+      }
+
+      while (!pending.isEmpty()) {
+        takeNext(pending, completionService).get().forEach(handler::handleStatement);
+      }
+    } catch (IOException exception) {
+      throw new CarmlJarException(String.format("Could not read input file %s", input), exception);
+    } catch (ExecutionException exception) {
+      throw new CarmlJarException(String.format("Failed to map chunk of input file %s", input), exception.getCause());
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new CarmlJarException(String.format("Interrupted while mapping input file %s", input), exception);
+    } finally {
+      executor.shutdownNow();
+    }
+
+    handler.endRDF();
+    log.info("Mapped {} chunks of {}", chunks, input);
+  }
+
+  private InputStream openInput(Path input) throws IOException {
+    InputStream inputStream = InputStreams.file(input);
+    return metrics == null ? inputStream : metrics.countRead(inputStream);
+  }
+
+  private Callable<Model> mapChunk(byte[] chunk, String name) {
+    return () -> {
+      MappingMetrics.Execution execution = metrics == null ? null : metrics.startExecution(name);
+
+      RmlMapper mapper = mapperFactory.create();
+      mapper.bindInputStream(new ByteArrayInputStream(chunk));
+      Model model = mapper.map(mapping);
+
+      if (execution != null) {
+        execution.finish(model.size());
+      }
+      return model;
+    };
+  }
+
+  private Future<Model> submit(ExecutorService executor, CompletionService<Model> completionService,
+      Callable<Model> task) {
+    return ordered ? executor.submit(task) : completionService.submit(task);
+  }
+
+  private Future<Model> takeNext(Deque<Future<Model>> pending, CompletionService<Model> completionService)
+      throws InterruptedException {
+    if (ordered) {
+      return pending.removeFirst();
+    }
+    Future<Model> next = completionService.take();
+    pending.remove(next);
+    return next;
+  }
+
+}
@@ -0,0 +1,89 @@
+package com.skemu.rdf.carml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorInputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorOutputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+
+/**
+ * Compression formats recognized by file extension. For every format, concatenated compressed members decompress to
+ * the concatenation of their contents, which allows compressing blocks of a stream independently.
+ */
+enum Compression {
+
+  GZIP(".gz") {
+    @Override
+    OutputStream compress(OutputStream out) throws IOException {
+      return new GZIPOutputStream(out, OutputStreams.DEFAULT_BUFFER_SIZE);
+    }
+
+    @Override
+    InputStream decompress(InputStream in) throws IOException {
+      // reads all concatenated members
+      return new GZIPInputStream(in, OutputStreams.DEFAULT_BUFFER_SIZE);
+    }
+  },
+
+  ZSTD(".zst") {
+    @Override
+    OutputStream compress(OutputStream out) throws IOException {
+      return new ZstdCompressorOutputStream(out);
+    }
+
+    @Override
+    InputStream decompress(InputStream in) throws IOException {
+      return new ZstdCompressorInputStream(in);
+    }
+  },
+
+  LZ4(".lz4") {
+    @Override
+    OutputStream compress(OutputStream out) throws IOException {
+      return new FramedLZ4CompressorOutputStream(out);
+    }
+
+    @Override
+    InputStream decompress(InputStream in) throws IOException {
+      return new FramedLZ4CompressorInputStream(in, true);
+    }
+  };
+
+  private final String extension;
+
+  Compression(String extension) {
+    this.extension = extension;
+  }
+
+  String getExtension() {
+    return extension;
+  }
+
+  abstract OutputStream compress(OutputStream out) throws IOException;
+
+  abstract InputStream decompress(InputStream in) throws IOException;
+
+  static Optional<Compression> forFileName(String fileName) {
+    String lowerCaseFileName = fileName.toLowerCase(Locale.ROOT);
+    return Arrays.stream(values())
+        .filter(compression -> lowerCaseFileName.endsWith(compression.extension))
+        .findFirst();
+  }
+
+  /**
+   * Returns the file name without its compression extension, if any, e.g. {@code data.csv} for {@code data.csv.gz}.
+   */
+  static String stripExtension(String fileName) {
+    return forFileName(fileName)
+        .map(compression -> fileName.substring(0, fileName.length() - compression.extension.length()))
+        .orElse(fileName);
+  }
+
+}
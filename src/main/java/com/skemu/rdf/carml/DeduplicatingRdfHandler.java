@@ -0,0 +1,154 @@
+package com.skemu.rdf.carml;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.Hasher;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.rio.RDFHandler;
+import org.eclipse.rdf4j.rio.helpers.NTriplesUtil;
+import org.eclipse.rdf4j.rio.helpers.RDFHandlerWrapper;
+
+/**
+ * Removes duplicate statements before handing them to the wrapped handler, using a fixed memory budget. With
+ * {@link Strategy#EXACT} and {@link Strategy#BLOOM} statements are passed on as they arrive, with
+ * {@link Strategy#SORT} they are passed on sorted when all statements have been handled.
+ */
+@Slf4j
+class DeduplicatingRdfHandler extends RDFHandlerWrapper {
+
+  private static final HashFunction FINGERPRINT = Hashing.murmur3_128();
+
+  private static final double BLOOM_FALSE_POSITIVE_PROBABILITY = 0.001;
+
+  enum Strategy {
+    /**
+     * Keeps a 128-bit fingerprint of every distinct statement in an off-heap hash set. Fails when the budget does not
+     * fit all distinct statements.
+     */
+    EXACT,
+    /**
+     * Keeps a Bloom filter sized to the budget. Never lets a duplicate through, but drops a small fraction of distinct
+     * statements as false positives, more so when the filter gets fuller than it was sized for.
+     */
+    BLOOM,
+    /**
+     * Sorts statements on disk in runs of the budget's size, and skips duplicates when merging the runs.
+     */
+    SORT
+  }
+
+  private final Strategy strategy;
+
+  private final long memoryBudget;
+
+  private OffHeapFingerprintSet fingerprints;
+
+  private BloomFilter<byte[]> bloomFilter;
+
+  private ExternalStatementSorter sorter;
+
+  private long duplicates;
+
+  DeduplicatingRdfHandler(RDFHandler handler, Strategy strategy, long memoryBudget) {
+    super(handler);
+    this.strategy = Objects.requireNonNull(strategy);
+    this.memoryBudget = memoryBudget;
+  }
+
+  @Override
+  public void startRDF() {
+    duplicates = 0;
+    switch (strategy) {
+      case EXACT:
+        fingerprints = new OffHeapFingerprintSet(memoryBudget);
+        break;
+      case BLOOM:
+        // the number of insertions for which a filter of the budget's size has the target false positive probability
+        long bits = memoryBudget * Byte.SIZE;
+        long expectedInsertions =
+            (long) (bits * Math.log(2) * Math.log(2) / -Math.log(BLOOM_FALSE_POSITIVE_PROBABILITY));
+        bloomFilter = BloomFilter.create(Funnels.byteArrayFunnel(), Math.max(expectedInsertions, 1),
+            BLOOM_FALSE_POSITIVE_PROBABILITY);
+        break;
+      case SORT:
+        sorter = new ExternalStatementSorter(memoryBudget);
+        break;
+    }
+    super.startRDF();
+  }
+
+  @Override
+  public void handleStatement(Statement statement) {
+    switch (strategy) {
+      case EXACT:
+        ByteBuffer fingerprint = ByteBuffer.wrap(fingerprint(statement).asBytes());
+        if (fingerprints.add(fingerprint.getLong(), fingerprint.getLong())) {
+          super.handleStatement(statement);
+        } else {
+          duplicates++;
+        }
+        break;
+      case BLOOM:
+        // put only reports no change when the filter might contain the statement already
+        if (bloomFilter.put(fingerprint(statement).asBytes())) {
+          super.handleStatement(statement);
+        } else {
+          duplicates++;
+        }
+        break;
+      case SORT:
+        sorter.add(statement);
+        break;
+    }
+  }
+
+  @Override
+  public void endRDF() {
+    if (strategy == Strategy.SORT) {
+      try {
+        duplicates = sorter.forEachSorted(true, super::handleStatement);
+      } finally {
+        sorter.close();
+      }
+    }
+    log.info("Removed {} duplicate statements", duplicates);
+
+    fingerprints = null;
+    bloomFilter = null;
+    sorter = null;
+    super.endRDF();
+  }
+
+  long getDuplicates() {
+    return duplicates;
+  }
+
+  private static HashCode fingerprint(Statement statement) {
+    Hasher hasher = FINGERPRINT.newHasher();
+    putValue(hasher, statement.getSubject());
+    putValue(hasher, statement.getPredicate());
+    putValue(hasher, statement.getObject());
+    Resource context = statement.getContext();
+    if (context != null) {
+      putValue(hasher, context);
+    }
+    return hasher.hash();
+  }
+
+  private static void putValue(Hasher hasher, Value value) {
+    // the N-Triples form tells apart IRIs, blank nodes and literals, length prefixing separates the terms
+    String term = NTriplesUtil.toNTriplesString(value);
+    hasher.putInt(term.length());
+    hasher.putString(term, StandardCharsets.UTF_8);
+  }
+
+}
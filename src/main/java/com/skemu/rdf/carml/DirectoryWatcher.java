@@ -0,0 +1,242 @@
+package com.skemu.rdf.carml;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.rdf4j.model.Namespace;
+import org.eclipse.rdf4j.rio.RDFFormat;
+
+/**
+ * Watches a landing directory and maps every new or modified file in it, as if it was provided with {@code -i}, with a
+ * mapping and functions that stay loaded. Files are mapped on a pool of worker threads once they have not changed for
+ * a short quiet period, so files that are still being written are not picked up.
+ *
+ * <p>Output files are named after the complete source file name, so {@code a.csv} is mapped to {@code a.csv.nq}.
+ * Every output file is moved into the output directory when it is complete. After that, a {@code .done} marker
+ * with the size and modification time of the mapped file is written next to it. Files without an up-to-date marker
+ * are mapped again when watching starts, so every file is processed at least once, even across restarts.
+ */
+@Slf4j
+class DirectoryWatcher implements Closeable {
+
+  static final String MARKER_EXTENSION = ".done";
+
+  private static final long QUIET_PERIOD_MILLIS = 200;
+
+  private static final long POLL_INTERVAL_MILLIS = 50;
+
+  private final BatchMapper batchMapper;
+
+  private final Path directory;
+
+  private final Path outputDirectory;
+
+  private final RDFFormat format;
+
+  private final Set<Namespace> namespaces;
+
+  private final ExecutorService workers;
+
+  // only accessed by the watching thread
+  private final Map<Path, PendingFile> pendingFiles = new LinkedHashMap<>();
+
+  private final Set<Path> filesInProgress = ConcurrentHashMap.newKeySet();
+
+  private volatile boolean closed;
+
+  DirectoryWatcher(BatchMapper batchMapper, Path directory, Path outputDirectory, RDFFormat format,
+      Set<Namespace> namespaces, int threads) {
+    this.batchMapper = Objects.requireNonNull(batchMapper);
+    this.directory = Objects.requireNonNull(directory);
+    this.outputDirectory = Objects.requireNonNull(outputDirectory);
+    this.format = Objects.requireNonNull(format);
+    this.namespaces = namespaces;
+    this.workers = Executors.newFixedThreadPool(threads, runnable -> new Thread(runnable, "watch-worker"));
+  }
+
+  /**
+   * Watches the directory until this watcher is closed or the thread is interrupted.
+   */
+  void watch() {
+    try (WatchService watchService = directory.getFileSystem().newWatchService()) {
+      Files.createDirectories(outputDirectory);
+      directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+      // files that arrived while not watching, or whose mapping did not complete
+      scheduleExistingFiles();
+      log.info("Watching {} for source files, writing output to {} ...", directory, outputDirectory);
+
+      while (!closed) {
+        WatchKey key = watchService.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        if (key != null) {
+          for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+              scheduleExistingFiles();
+            } else {
+              schedule(directory.resolve((Path) event.context()));
+            }
+          }
+          if (!key.reset()) {
+            throw new CarmlJarException(String.format("Watched directory %s is no longer accessible", directory));
+          }
+        }
+        submitQuietFiles();
+      }
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+    } catch (IOException exception) {
+      throw new CarmlJarException(String.format("Could not watch directory %s", directory), exception);
+    } finally {
+      close();
+    }
+  }
+
+  private void scheduleExistingFiles() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      files.sorted().forEach(this::schedule);
+    }
+  }
+
+  private void schedule(Path file) {
+    String fileName = file.getFileName().toString();
+    // hidden and temporary files are still being written, and will be moved in place when they are complete
+    if (fileName.startsWith(".") || fileName.endsWith(".tmp") || fileName.endsWith(".part")
+        || fileName.endsWith(MARKER_EXTENSION) || !Files.isRegularFile(file)) {
+      return;
+    }
+    pendingFiles.put(file, new PendingFile(fileState(file), System.currentTimeMillis()));
+  }
+
+  private void submitQuietFiles() {
+    long now = System.currentTimeMillis();
+    Iterator<Map.Entry<Path, PendingFile>> iterator = pendingFiles.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<Path, PendingFile> entry = iterator.next();
+      Path file = entry.getKey();
+      PendingFile pendingFile = entry.getValue();
+      if (now - pendingFile.since < QUIET_PERIOD_MILLIS || filesInProgress.contains(file)) {
+        continue;
+      }
+
+      String state = fileState(file);
+      if (state == null) {
+        // deleted before it was mapped
+        iterator.remove();
+      } else if (!state.equals(pendingFile.state)) {
+        entry.setValue(new PendingFile(state, now));
+      } else {
+        iterator.remove();
+        if (!state.equals(readMarker(file))) {
+          filesInProgress.add(file);
+          workers.execute(() -> process(file, state));
+        }
+      }
+    }
+  }
+
+  private void process(Path file, String state) {
+    try {
+      long start = System.nanoTime();
+      // files arrive independently, so they cannot be checked for unique names up front like batch inputs
+      Path outputPath = outputDirectory.resolve(batchMapper.fullOutputFileName(file, format));
+      batchMapper.mapToFile(file, outputPath, format, namespaces);
+      writeMarker(file, state);
+      log.info("Mapped {} to {} in {} ms", file, outputPath,
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    } catch (IOException | RuntimeException exception) {
+      // no marker is written, so the file is mapped again when it changes or when watching restarts
+      log.error(String.format("Failed to map %s", file), exception);
+    } finally {
+      filesInProgress.remove(file);
+    }
+  }
+
+  private static String fileState(Path file) {
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+      return String.format("%d:%d", attributes.size(), attributes.lastModifiedTime().toMillis());
+    } catch (IOException exception) {
+      return null;
+    }
+  }
+
+  private Path markerFile(Path file) {
+    return outputDirectory.resolve(file.getFileName() + MARKER_EXTENSION);
+  }
+
+  private String readMarker(Path file) {
+    Path markerFile = markerFile(file);
+    if (!Files.isRegularFile(markerFile)) {
+      return null;
+    }
+    try {
+      return new String(Files.readAllBytes(markerFile), StandardCharsets.UTF_8).trim();
+    } catch (IOException exception) {
+      log.warn(String.format("Could not read marker %s, mapping %s again", markerFile, file), exception);
+      return null;
+    }
+  }
+
+  private void writeMarker(Path file, String state) throws IOException {
+    Path markerFile = markerFile(file);
+    Path tempFile = Files.createTempFile(outputDirectory, "." + markerFile.getFileName(), ".tmp");
+    try {
+      try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+        writer.write(state);
+      }
+      Files.move(tempFile, markerFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tempFile);
+    }
+  }
+
+  /**
+   * Stops watching, and waits for the files that are being mapped.
+   */
+  @Override
+  public void close() {
+    if (closed && workers.isTerminated()) {
+      return;
+    }
+    closed = true;
+    workers.shutdown();
+    try {
+      workers.awaitTermination(1, TimeUnit.MINUTES);
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static class PendingFile {
+
+    private final String state;
+
+    private final long since;
+
+    PendingFile(String state, long since) {
+      this.state = state;
+      this.since = since;
+    }
+  }
+
+}
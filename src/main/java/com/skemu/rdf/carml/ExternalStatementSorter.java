@@ -0,0 +1,265 @@
+package com.skemu.rdf.carml;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFParser;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+import org.eclipse.rdf4j.rio.helpers.BasicParserSettings;
+import org.eclipse.rdf4j.rio.helpers.NTriplesUtil;
+
+/**
+ * Sorts statements by their N-Quads serialization within a memory budget. Statements are collected in memory until
+ * the budget is used up and are then written to disk as a sorted, LZ4 compressed run. The runs are merged when the
+ * statements are read back, which groups statements by subject, or by graph and then by subject.
+ */
+@Slf4j
+class ExternalStatementSorter implements Closeable {
+
+  // estimated heap use of a line besides its characters: string, array and list slot overhead
+  private static final int LINE_OVERHEAD = 64;
+
+  private final long memoryBudget;
+
+  private final boolean graphFirst;
+
+  private final List<String> buffer = new ArrayList<>();
+
+  private final List<Path> runs = new ArrayList<>();
+
+  private long bufferedBytes;
+
+  private Path directory;
+
+  ExternalStatementSorter(long memoryBudget) {
+    this(memoryBudget, false);
+  }
+
+  /**
+   * Creates a sorter that sorts statements by graph before sorting them by their N-Quads serialization if
+   * {@code graphFirst} is set, with the statements of the default graph first.
+   */
+  ExternalStatementSorter(long memoryBudget, boolean graphFirst) {
+    this.memoryBudget = memoryBudget;
+    this.graphFirst = graphFirst;
+  }
+
+  void add(Statement statement) {
+    String line = graphFirst ? graphKey(statement) + toLine(statement) : toLine(statement);
+    buffer.add(line);
+    bufferedBytes += line.length() * 2L + LINE_OVERHEAD;
+    if (bufferedBytes >= memoryBudget) {
+      spill();
+    }
+  }
+
+  /**
+   * Hands all added statements to the consumer in sorted order, skipping repeated statements if {@code distinct} is
+   * set.
+   *
+   * @return the number of skipped statements
+   */
+  long forEachSorted(boolean distinct, Consumer<Statement> consumer) {
+    buffer.sort(Comparator.naturalOrder());
+    List<Iterator<String>> sortedRuns = new ArrayList<>();
+    List<BufferedReader> readers = new ArrayList<>();
+    try {
+      for (Path run : runs) {
+        BufferedReader reader =
+            new BufferedReader(new InputStreamReader(InputStreams.file(run), StandardCharsets.UTF_8));
+        readers.add(reader);
+        sortedRuns.add(reader.lines().iterator());
+      }
+      sortedRuns.add(buffer.iterator());
+      log.debug("Merging {} sorted runs ...", sortedRuns.size());
+
+      MergingLineReader lines = new MergingLineReader(sortedRuns, distinct, graphFirst);
+      RDFParser parser = Rio.createParser(RDFFormat.NQUADS);
+      parser.getParserConfig().set(BasicParserSettings.PRESERVE_BNODE_IDS, true);
+      parser.setRDFHandler(new AbstractRDFHandler() {
+
+        @Override
+        public void handleStatement(Statement statement) {
+          consumer.accept(statement);
+        }
+      });
+      parser.parse(lines, "");
+      return lines.skipped;
+    } catch (IOException | UncheckedIOException exception) {
+      throw new CarmlJarException("Could not read sorted statements", exception);
+    } finally {
+      for (BufferedReader reader : readers) {
+        try {
+          reader.close();
+        } catch (IOException exception) {
+          log.warn("Could not close sorted run", exception);
+        }
+      }
+    }
+  }
+
+  private void spill() {
+    buffer.sort(Comparator.naturalOrder());
+    try {
+      if (directory == null) {
+        directory = Files.createTempDirectory("carml-sort");
+      }
+      Path run = directory.resolve(String.format("run-%05d.nq%s", runs.size(), Compression.LZ4.getExtension()));
+      try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+          OutputStreams.compressed(Files.newOutputStream(run), run.getFileName().toString(),
+              OutputStreams.DEFAULT_BUFFER_SIZE, 1), StandardCharsets.UTF_8))) {
+        for (String line : buffer) {
+          writer.write(line);
+          writer.write('\n');
+        }
+      }
+      runs.add(run);
+      log.debug("Spilled {} statements to sorted run {}", buffer.size(), run);
+    } catch (IOException exception) {
+      throw new CarmlJarException("Could not write sorted run to disk", exception);
+    }
+
+    buffer.clear();
+    bufferedBytes = 0;
+  }
+
+  @Override
+  public void close() {
+    buffer.clear();
+    if (directory == null) {
+      return;
+    }
+
+    try {
+      for (Path run : runs) {
+        Files.deleteIfExists(run);
+      }
+      Files.deleteIfExists(directory);
+    } catch (IOException exception) {
+      log.warn(String.format("Could not delete sorted runs in %s", directory), exception);
+    }
+  }
+
+  // the graph followed by a tab, which cannot occur unescaped in an N-Triples term
+  private static String graphKey(Statement statement) {
+    return statement.getContext() == null ? "\t" : NTriplesUtil.toNTriplesString(statement.getContext()) + '\t';
+  }
+
+  static String toLine(Statement statement) {
+    StringBuilder line = new StringBuilder(128)
+        .append(NTriplesUtil.toNTriplesString(statement.getSubject())).append(' ')
+        .append(NTriplesUtil.toNTriplesString(statement.getPredicate())).append(' ')
+        .append(NTriplesUtil.toNTriplesString(statement.getObject()));
+    if (statement.getContext() != null) {
+      line.append(' ').append(NTriplesUtil.toNTriplesString(statement.getContext()));
+    }
+    return line.append(" .").toString();
+  }
+
+  /**
+   * Reads the lines of sorted runs as one sorted document, by a k-way merge of the runs.
+   */
+  private static class MergingLineReader extends Reader {
+
+    private final PriorityQueue<RunCursor> cursors =
+        new PriorityQueue<>(Comparator.comparing((RunCursor cursor) -> cursor.line));
+
+    private final boolean distinct;
+
+    private final boolean graphKeys;
+
+    private String previousLine;
+
+    private String current = "";
+
+    private int position;
+
+    private long skipped;
+
+    MergingLineReader(List<Iterator<String>> runs, boolean distinct, boolean graphKeys) {
+      this.distinct = distinct;
+      this.graphKeys = graphKeys;
+      runs.stream()
+          .filter(Iterator::hasNext)
+          .map(RunCursor::new)
+          .forEach(cursors::add);
+    }
+
+    @Override
+    public int read(char[] chars, int offset, int length) {
+      if (position == current.length() && !nextLine()) {
+        return -1;
+      }
+      int count = Math.min(length, current.length() - position);
+      current.getChars(position, position + count, chars, offset);
+      position += count;
+      return count;
+    }
+
+    private boolean nextLine() {
+      while (!cursors.isEmpty()) {
+        RunCursor cursor = cursors.poll();
+        String line = cursor.line;
+        if (cursor.advance()) {
+          cursors.add(cursor);
+        }
+
+        if (distinct && line.equals(previousLine)) {
+          skipped++;
+          continue;
+        }
+        previousLine = line;
+        current = (graphKeys ? line.substring(line.indexOf('\t') + 1) : line) + '\n';
+        position = 0;
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    public void close() {
+      cursors.clear();
+    }
+  }
+
+  private static class RunCursor {
+
+    private final Iterator<String> lines;
+
+    private String line;
+
+    RunCursor(Iterator<String> lines) {
+      this.lines = lines;
+      advance();
+    }
+
+    boolean advance() {
+      if (!lines.hasNext()) {
+        line = null;
+        return false;
+      }
+      line = lines.next();
+      return true;
+    }
+  }
+
+}
@@ -0,0 +1,60 @@
+package com.skemu.rdf.carml;
+
+import com.google.common.collect.ImmutableList;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+
+/**
+ * Loads classes from function jars before looking in the application, so that libraries shaded or bundled in a
+ * function jar take precedence over the versions used by this application. Classes shared with the mapper, such as the
+ * CARML function annotations and the RDF4J model, are always loaded from the application.
+ *
+ * <p>Classes are read lazily from the jars, as they are used.
+ */
+class FunctionClassLoader extends URLClassLoader {
+
+  private static final List<String> PARENT_FIRST_PACKAGES = ImmutableList.of("java.", "javax.", "jdk.", "sun.",
+      "com.taxonic.carml.", "org.eclipse.rdf4j.", "org.slf4j.");
+
+  static {
+    registerAsParallelCapable();
+  }
+
+  FunctionClassLoader(URL[] urls, ClassLoader parent) {
+    super(urls, parent);
+  }
+
+  @Override
+  protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+    if (isParentFirst(name)) {
+      return super.loadClass(name, resolve);
+    }
+
+    synchronized (getClassLoadingLock(name)) {
+      Class<?> loadedClass = findLoadedClass(name);
+      if (loadedClass == null) {
+        try {
+          loadedClass = findClass(name);
+        } catch (ClassNotFoundException exception) {
+          return super.loadClass(name, resolve);
+        }
+      }
+      if (resolve) {
+        resolveClass(loadedClass);
+      }
+      return loadedClass;
+    }
+  }
+
+  @Override
+  public URL getResource(String name) {
+    URL resource = findResource(name);
+    return resource != null ? resource : super.getResource(name);
+  }
+
+  private static boolean isParentFirst(String className) {
+    return PARENT_FIRST_PACKAGES.stream().anyMatch(className::startsWith);
+  }
+
+}
@@ -0,0 +1,190 @@
+package com.skemu.rdf.carml;
+
+import com.google.common.collect.ImmutableSet;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.asm.AnnotationVisitor;
+import org.springframework.asm.ClassReader;
+import org.springframework.asm.ClassVisitor;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.asm.SpringAsmInfo;
+
+/**
+ * Finds the classes in function jars that declare transformation functions, by reading their class files without
+ * loading them. The classes found per jar are remembered in an index file, and a jar is only scanned again when its
+ * size or modification time changes.
+ */
+@Slf4j
+class FunctionIndex {
+
+  private static final String INDEX_FILE = "function-index.properties";
+
+  private static final String FNO_FUNCTION_DESCRIPTOR = "Lcom/taxonic/carml/engine/function/FnoFunction;";
+
+  private final Path directory;
+
+  /**
+   * Creates an index stored in {@code directory}, or one that scans the jars every time if it is {@code null}.
+   */
+  FunctionIndex(Path directory) {
+    this.directory = directory;
+  }
+
+  Set<String> functionClasses(Set<File> jars) {
+    Properties index = loadIndex();
+    boolean indexChanged = false;
+
+    Set<String> functionClasses = new LinkedHashSet<>();
+    for (File jar : jars) {
+      String jarPath = jar.getAbsoluteFile().toPath().normalize().toString();
+      String jarState = String.format("%d:%d", jar.length(), jar.lastModified());
+
+      String cachedClasses = index.getProperty(jarPath);
+      if (cachedClasses != null && cachedClasses.startsWith(jarState + ":")) {
+        Arrays.stream(cachedClasses.substring(jarState.length() + 1).split(","))
+            .filter(className -> !className.isEmpty())
+            .forEach(functionClasses::add);
+        continue;
+      }
+
+      Set<String> jarFunctionClasses = scan(jar);
+      functionClasses.addAll(jarFunctionClasses);
+      index.setProperty(jarPath, jarState + ":" + String.join(",", jarFunctionClasses));
+      indexChanged = true;
+    }
+
+    if (indexChanged) {
+      storeIndex(index);
+    }
+
+    return functionClasses;
+  }
+
+  private static Set<String> scan(File jar) {
+    log.debug("Scanning {} for transformation functions ...", jar);
+    Set<String> functionClasses = new LinkedHashSet<>();
+    try (JarFile jarFile = new JarFile(jar)) {
+      for (JarEntry entry : Collections.list(jarFile.entries())) {
+        if (entry.getName().endsWith(".class") && !entry.getName().endsWith("module-info.class")) {
+          try (InputStream in = jarFile.getInputStream(entry)) {
+            FunctionClassVisitor visitor = new FunctionClassVisitor();
+            new ClassReader(in).accept(visitor, ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES);
+            if (visitor.isFunctionClass()) {
+              functionClasses.add(visitor.className);
+            }
+          }
+        }
+      }
+    } catch (IOException exception) {
+      throw new CarmlJarException(String.format("Could not read function jar %s", jar), exception);
+    }
+
+    log.info("Found {} function classes in {}", functionClasses.size(), jar);
+    return ImmutableSet.copyOf(functionClasses);
+  }
+
+  private Properties loadIndex() {
+    Properties index = new Properties();
+    if (directory == null) {
+      return index;
+    }
+
+    Path indexFile = directory.resolve(INDEX_FILE);
+    if (Files.isRegularFile(indexFile)) {
+      try (Reader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+        index.load(reader);
+      } catch (IOException exception) {
+        log.warn(String.format("Could not read %s, scanning function jars instead", indexFile), exception);
+      }
+    }
+    return index;
+  }
+
+  private void storeIndex(Properties index) {
+    if (directory == null) {
+      return;
+    }
+
+    try {
+      Files.createDirectories(directory);
+      Path tempFile = Files.createTempFile(directory, INDEX_FILE, ".tmp");
+      try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+        index.store(writer, "Function classes by jar path, as size:modified-time:classes");
+      }
+      Files.move(tempFile, directory.resolve(INDEX_FILE), StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException exception) {
+      log.warn(String.format("Could not store function index in %s", directory), exception);
+    }
+  }
+
+  /**
+   * Detects concrete public classes with a public constructor without parameters and at least one method annotated as
+   * a function.
+   */
+  private static class FunctionClassVisitor extends ClassVisitor {
+
+    private String className;
+
+    private boolean instantiable;
+
+    private boolean hasDefaultConstructor;
+
+    private boolean hasFunction;
+
+    FunctionClassVisitor() {
+      super(SpringAsmInfo.ASM_VERSION);
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName,
+        String[] interfaces) {
+      className = name.replace('/', '.');
+      instantiable = (access & Opcodes.ACC_PUBLIC) != 0
+          && (access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_INTERFACE)) == 0;
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+        String[] exceptions) {
+      if (name.equals("<init>") && descriptor.equals("()V") && (access & Opcodes.ACC_PUBLIC) != 0) {
+        hasDefaultConstructor = true;
+      }
+      if (hasFunction) {
+        return null;
+      }
+
+      return new MethodVisitor(SpringAsmInfo.ASM_VERSION) {
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String annotationDescriptor, boolean visible) {
+          if (annotationDescriptor.equals(FNO_FUNCTION_DESCRIPTOR)) {
+            hasFunction = true;
+          }
+          return null;
+        }
+      };
+    }
+
+    boolean isFunctionClass() {
+      return instantiable && hasDefaultConstructor && hasFunction;
+    }
+  }
+
+}
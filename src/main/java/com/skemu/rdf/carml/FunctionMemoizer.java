@@ -0,0 +1,326 @@
+package com.skemu.rdf.carml;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableSet;
+import com.taxonic.carml.engine.function.FnoFunction;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.asm.AnnotationVisitor;
+import org.springframework.asm.ClassReader;
+import org.springframework.asm.ClassVisitor;
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.asm.SpringAsmInfo;
+import org.springframework.asm.Type;
+
+/**
+ * Caches the results of pure transformation functions by their argument values. A function is memoized when its method
+ * has an annotation named {@value #MEMOIZED_ANNOTATION_NAME}, from any package, or when it is selected by its function
+ * IRI, class name or {@code Class#method} name.
+ *
+ * <p>CARML finds functions through their {@link FnoFunction} and {@code FnoParam} annotations, so a function object
+ * cannot be wrapped in a plain proxy. Instead, a class is generated for every function class with memoized functions,
+ * which declares all its functions with the original annotations and delegates them to a {@link MemoizedMethod}.
+ */
+@Slf4j
+class FunctionMemoizer {
+
+  static final String MEMOIZED_ANNOTATION_NAME = "Memoized";
+
+  private static final String MEMOIZED_METHOD = Type.getInternalName(MemoizedMethod.class);
+
+  private static final String METHODS_FIELD = "methods";
+
+  private final Set<String> selectors;
+
+  private final long maximumSize;
+
+  private final Map<String, Cache<List<Object>, Optional<Object>>> caches = new ConcurrentHashMap<>();
+
+  FunctionMemoizer(Set<String> selectors, long maximumSize) {
+    this.selectors = ImmutableSet.copyOf(selectors);
+    this.maximumSize = maximumSize;
+  }
+
+  Set<Object> memoize(Set<Object> functions) {
+    return functions.stream()
+        .map(this::memoize)
+        .collect(ImmutableSet.toImmutableSet());
+  }
+
+  /**
+   * Returns an object declaring the same functions as {@code function} with the memoized ones cached, or
+   * {@code function} itself if none of its functions are memoized.
+   */
+  Object memoize(Object function) {
+    Class<?> functionClass = function.getClass();
+    List<Method> methods = Arrays.stream(functionClass.getDeclaredMethods())
+        .filter(method -> method.isAnnotationPresent(FnoFunction.class))
+        .filter(method -> Modifier.isPublic(method.getModifiers()) && !Modifier.isStatic(method.getModifiers()))
+        .collect(Collectors.toList());
+    if (methods.stream().noneMatch(this::isMemoized)) {
+      return function;
+    }
+
+    MemoizedMethod[] memoizedMethods = methods.stream()
+        .map(method -> new MemoizedMethod(function, method, isMemoized(method) ? createCache(method) : null))
+        .toArray(MemoizedMethod[]::new);
+
+    try {
+      Class<?> memoizedClass = generateClass(functionClass, methods);
+      return memoizedClass.getConstructor(MemoizedMethod[].class).newInstance((Object) memoizedMethods);
+    } catch (IOException | ReflectiveOperationException | LinkageError exception) {
+      throw new CarmlJarException(String.format("Could not memoize functions of %s", functionClass.getName()),
+          exception);
+    }
+  }
+
+  private boolean isMemoized(Method method) {
+    boolean annotated = Arrays.stream(method.getAnnotations())
+        .map(Annotation::annotationType)
+        .anyMatch(type -> type.getSimpleName().equals(MEMOIZED_ANNOTATION_NAME));
+    String className = method.getDeclaringClass().getName();
+    return annotated
+        || selectors.contains(method.getAnnotation(FnoFunction.class).value())
+        || selectors.contains(className)
+        || selectors.contains(className + "#" + method.getName());
+  }
+
+  private Cache<List<Object>, Optional<Object>> createCache(Method method) {
+    Cache<List<Object>, Optional<Object>> cache = CacheBuilder.newBuilder()
+        .maximumSize(maximumSize)
+        .recordStats()
+        .build();
+    caches.put(method.getAnnotation(FnoFunction.class).value(), cache);
+    log.debug("Memoizing function {} in a cache of {} results", method, maximumSize);
+    return cache;
+  }
+
+  /**
+   * Returns the cache statistics per memoized function IRI.
+   */
+  Map<String, CacheStats> statistics() {
+    Map<String, CacheStats> statistics = new LinkedHashMap<>();
+    caches.forEach((function, cache) -> statistics.put(function, cache.stats()));
+    return statistics;
+  }
+
+  void logStatistics() {
+    statistics().forEach((function, stats) -> log.info("Function {}: {} cache hits, {} misses, {} evictions",
+        function, stats.hitCount(), stats.missCount(), stats.evictionCount()));
+  }
+
+  private static Class<?> generateClass(Class<?> functionClass, List<Method> methods) throws IOException {
+    String className = functionClass.getName() + "$$Memoized";
+    ClassLoader classLoader = functionClass.getClassLoader();
+    String resource = Type.getInternalName(functionClass) + ".class";
+
+    byte[] bytecode;
+    try (InputStream in = classLoader.getResourceAsStream(resource)) {
+      if (in == null) {
+        throw new IOException(String.format("Could not find class file %s", resource));
+      }
+      ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+      new ClassReader(in).accept(new MemoizingClassVisitor(writer, className.replace('.', '/'), methods),
+          ClassReader.SKIP_FRAMES);
+      bytecode = writer.toByteArray();
+    }
+
+    return new GeneratedClassLoader(classLoader).define(className, bytecode);
+  }
+
+  /**
+   * Copies the function methods of a class with their annotations, replacing their code with a call to the
+   * {@link MemoizedMethod} at the same index as the method.
+   */
+  private static class MemoizingClassVisitor extends ClassVisitor {
+
+    private final ClassWriter writer;
+
+    private final String className;
+
+    private final List<String> methodKeys = new ArrayList<>();
+
+    MemoizingClassVisitor(ClassWriter writer, String className, List<Method> methods) {
+      super(SpringAsmInfo.ASM_VERSION);
+      this.writer = writer;
+      this.className = className;
+      methods.forEach(method -> methodKeys.add(method.getName() + Type.getMethodDescriptor(method)));
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName,
+        String[] interfaces) {
+      writer.visit(version, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, className, null,
+          "java/lang/Object", null);
+      writer.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, METHODS_FIELD, "[L" + MEMOIZED_METHOD + ";", null,
+          null).visitEnd();
+
+      MethodVisitor constructor = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "([L" + MEMOIZED_METHOD + ";)V",
+          null, null);
+      constructor.visitCode();
+      constructor.visitVarInsn(Opcodes.ALOAD, 0);
+      constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+      constructor.visitVarInsn(Opcodes.ALOAD, 0);
+      constructor.visitVarInsn(Opcodes.ALOAD, 1);
+      constructor.visitFieldInsn(Opcodes.PUTFIELD, className, METHODS_FIELD, "[L" + MEMOIZED_METHOD + ";");
+      constructor.visitInsn(Opcodes.RETURN);
+      constructor.visitMaxs(0, 0);
+      constructor.visitEnd();
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+        String[] exceptions) {
+      int index = methodKeys.indexOf(name + descriptor);
+      if (index < 0) {
+        return null;
+      }
+
+      MethodVisitor target = writer.visitMethod(Opcodes.ACC_PUBLIC, name, descriptor, signature, exceptions);
+      // only annotations and parameters are copied, the original code is replaced
+      return new MethodVisitor(SpringAsmInfo.ASM_VERSION) {
+
+        @Override
+        public void visitParameter(String parameterName, int parameterAccess) {
+          target.visitParameter(parameterName, parameterAccess);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String annotationDescriptor, boolean visible) {
+          return target.visitAnnotation(annotationDescriptor, visible);
+        }
+
+        @Override
+        public void visitAnnotableParameterCount(int parameterCount, boolean visible) {
+          target.visitAnnotableParameterCount(parameterCount, visible);
+        }
+
+        @Override
+        public AnnotationVisitor visitParameterAnnotation(int parameter, String annotationDescriptor,
+            boolean visible) {
+          return target.visitParameterAnnotation(parameter, annotationDescriptor, visible);
+        }
+
+        @Override
+        public void visitEnd() {
+          generateDelegation(target, index, descriptor);
+          target.visitEnd();
+        }
+      };
+    }
+
+    private void generateDelegation(MethodVisitor method, int index, String descriptor) {
+      method.visitCode();
+      method.visitVarInsn(Opcodes.ALOAD, 0);
+      method.visitFieldInsn(Opcodes.GETFIELD, className, METHODS_FIELD, "[L" + MEMOIZED_METHOD + ";");
+      method.visitLdcInsn(index);
+      method.visitInsn(Opcodes.AALOAD);
+
+      Type[] argumentTypes = Type.getArgumentTypes(descriptor);
+      method.visitLdcInsn(argumentTypes.length);
+      method.visitTypeInsn(Opcodes.ANEWARRAY, "java/lang/Object");
+      int local = 1;
+      for (int i = 0; i < argumentTypes.length; i++) {
+        method.visitInsn(Opcodes.DUP);
+        method.visitLdcInsn(i);
+        method.visitVarInsn(argumentTypes[i].getOpcode(Opcodes.ILOAD), local);
+        box(method, argumentTypes[i]);
+        method.visitInsn(Opcodes.AASTORE);
+        local += argumentTypes[i].getSize();
+      }
+      method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, MEMOIZED_METHOD, "invoke",
+          "([Ljava/lang/Object;)Ljava/lang/Object;", false);
+
+      Type returnType = Type.getReturnType(descriptor);
+      if (returnType.getSort() == Type.VOID) {
+        method.visitInsn(Opcodes.POP);
+        method.visitInsn(Opcodes.RETURN);
+      } else {
+        unbox(method, returnType);
+        method.visitInsn(returnType.getOpcode(Opcodes.IRETURN));
+      }
+      method.visitMaxs(0, 0);
+    }
+
+    private static void box(MethodVisitor method, Type type) {
+      String boxType = boxType(type);
+      if (boxType != null) {
+        method.visitMethodInsn(Opcodes.INVOKESTATIC, boxType, "valueOf",
+            "(" + type.getDescriptor() + ")L" + boxType + ";", false);
+      }
+    }
+
+    private static void unbox(MethodVisitor method, Type type) {
+      String boxType = boxType(type);
+      if (boxType == null) {
+        method.visitTypeInsn(Opcodes.CHECKCAST, type.getSort() == Type.ARRAY ? type.getDescriptor()
+            : type.getInternalName());
+        return;
+      }
+      method.visitTypeInsn(Opcodes.CHECKCAST, boxType);
+      method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, boxType, type.getClassName() + "Value",
+          "()" + type.getDescriptor(), false);
+    }
+
+    private static String boxType(Type type) {
+      switch (type.getSort()) {
+        case Type.BOOLEAN:
+          return "java/lang/Boolean";
+        case Type.CHAR:
+          return "java/lang/Character";
+        case Type.BYTE:
+          return "java/lang/Byte";
+        case Type.SHORT:
+          return "java/lang/Short";
+        case Type.INT:
+          return "java/lang/Integer";
+        case Type.FLOAT:
+          return "java/lang/Float";
+        case Type.LONG:
+          return "java/lang/Long";
+        case Type.DOUBLE:
+          return "java/lang/Double";
+        default:
+          return null;
+      }
+    }
+  }
+
+  /**
+   * Defines generated classes next to the function classes, resolving {@link MemoizedMethod} from this application
+   * when the function class loader does not see it.
+   */
+  private static class GeneratedClassLoader extends ClassLoader {
+
+    GeneratedClassLoader(ClassLoader parent) {
+      super(parent);
+    }
+
+    Class<?> define(String name, byte[] bytecode) {
+      return defineClass(name, bytecode, 0, bytecode.length);
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+      return FunctionMemoizer.class.getClassLoader().loadClass(name);
+    }
+  }
+
+}
@@ -0,0 +1,58 @@
+package com.skemu.rdf.carml;
+
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.rio.RDFHandler;
+import org.eclipse.rdf4j.rio.helpers.RDFHandlerWrapper;
+
+/**
+ * Hands statements to the wrapped handler grouped by subject, or by graph and then by subject, when all statements
+ * have been handled. Writers of grouped formats such as Turtle, TriG and RDF/XML abbreviate the repeated subjects and
+ * predicates of consecutive statements, so they produce compact output without keeping all statements in memory.
+ *
+ * <p>Statements are sorted on disk by an {@link ExternalStatementSorter} in runs of the memory budget's size, and the
+ * runs are merged when all statements have been handled. Repeated statements are passed on once.
+ */
+@Slf4j
+class GroupingRdfHandler extends RDFHandlerWrapper {
+
+  private final long memoryBudget;
+
+  private final boolean graphFirst;
+
+  private ExternalStatementSorter sorter;
+
+  private long statements;
+
+  GroupingRdfHandler(RDFHandler handler, long memoryBudget, boolean graphFirst) {
+    super(handler);
+    this.memoryBudget = memoryBudget;
+    this.graphFirst = graphFirst;
+  }
+
+  @Override
+  public void startRDF() {
+    statements = 0;
+    sorter = new ExternalStatementSorter(memoryBudget, graphFirst);
+    super.startRDF();
+  }
+
+  @Override
+  public void handleStatement(Statement statement) {
+    sorter.add(statement);
+    statements++;
+  }
+
+  @Override
+  public void endRDF() {
+    log.info("Writing {} statements grouped by {} ...", statements, graphFirst ? "graph and subject" : "subject");
+    try {
+      sorter.forEachSorted(true, super::handleStatement);
+    } finally {
+      sorter.close();
+      sorter = null;
+    }
+    super.endRDF();
+  }
+
+}
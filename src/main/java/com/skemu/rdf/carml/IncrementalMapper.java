@@ -0,0 +1,447 @@
+package com.skemu.rdf.carml;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.CountingInputStream;
+import com.taxonic.carml.engine.RmlMapper;
+import com.taxonic.carml.model.RefObjectMap;
+import com.taxonic.carml.model.TriplesMap;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Namespace;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandler;
+import org.eclipse.rdf4j.rio.RDFParser;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+import org.eclipse.rdf4j.rio.helpers.BasicParserSettings;
+
+/**
+ * Maps only the parts of a mapping whose logical sources changed since the previous run, and reuses the output of the
+ * other parts. Parts are the triples map partitions of {@link StreamingMapper}. A part depends on the sources of its
+ * triples maps and of the parent triples maps they join with.
+ *
+ * <p>The output of every part is kept in a state directory as a binary RDF file, together with a manifest of the
+ * size, modification time and content hash of every source file and the output file of every part. Content hashes are
+ * only recomputed for files whose size or modification time changed, and a touched file with unchanged content does
+ * not cause its parts to be mapped again. All parts are mapped again when a mapping or function jar file changes.
+ */
+@Slf4j
+class IncrementalMapper {
+
+  static final String MANIFEST_FILE_NAME = "manifest.json";
+
+  static final String ADDED_FILE_NAME = "added.nq";
+
+  static final String REMOVED_FILE_NAME = "removed.nq";
+
+  private static final String OUTPUT_EXTENSION = ".brf";
+
+  private final Path directory;
+
+  private final List<Path> definitionFiles;
+
+  private final Path relativeSourceLocation;
+
+  private final Path input;
+
+  private Path deltaDirectory;
+
+  /**
+   * Creates a mapper keeping its state in {@code directory}. Sources that are not files, such as {@code carml:Stream},
+   * are taken to be the {@code input} file, and parts reading them are always mapped if there is none.
+   */
+  IncrementalMapper(Path directory, List<Path> definitionFiles, Path relativeSourceLocation, Path input) {
+    this.directory = Objects.requireNonNull(directory);
+    this.definitionFiles = definitionFiles;
+    this.relativeSourceLocation = relativeSourceLocation;
+    this.input = input;
+  }
+
+  /**
+   * Writes the statements added to and removed from the output since the previous run to {@code added.nq} and
+   * {@code removed.nq} in the given directory. The delta is computed from the outputs of the parts that were mapped
+   * again, so a statement that is also produced by an unchanged part can be reported as removed.
+   */
+  IncrementalMapper writeDelta(Path deltaDirectory) {
+    this.deltaDirectory = deltaDirectory;
+    return this;
+  }
+
+  /**
+   * Maps the changed parts of a mapping and writes the output of all parts to {@code handler}. Parts reading
+   * {@code carml:Stream} sources are mapped with a newly opened stream from {@code inputSource}.
+   */
+  @SuppressWarnings("unchecked")
+  void map(RmlMapper mapper, InputSource inputSource, Set<TriplesMap> mapping, Set<Namespace> namespaces,
+      RDFHandler handler) {
+    Map<String, Object> previousManifest = readManifest();
+    Map<String, Map<String, Object>> previousSources =
+        (Map<String, Map<String, Object>>) previousManifest.getOrDefault("sources", Collections.emptyMap());
+    Map<String, Map<String, Object>> previousParts =
+        new LinkedHashMap<>((Map<String, Map<String, Object>>) previousManifest.getOrDefault("parts",
+            Collections.emptyMap()));
+
+    String definitions = hashDefinitions();
+    if (!definitions.equals(previousManifest.get("definitions")) && !previousParts.isEmpty()) {
+      log.info("Mapping or function files changed, mapping all triples maps ...");
+    }
+
+    Map<String, Map<String, Object>> sources = new TreeMap<>();
+    Map<String, Map<String, Object>> parts = new LinkedHashMap<>();
+    Model added = new LinkedHashModel();
+    Model removed = new LinkedHashModel();
+    int mappedParts = 0;
+
+    handler.startRDF();
+    namespaces.forEach(namespace -> handler.handleNamespace(namespace.getPrefix(), namespace.getName()));
+
+    for (Set<TriplesMap> partition : StreamingMapper.partition(mapping)) {
+      String name = StreamingMapper.name(partition);
+      Set<String> partSources = getSources(partition);
+      partSources.forEach(source -> sources.computeIfAbsent(source,
+          file -> fingerprint(Paths.get(file), previousSources.get(file))));
+      String state = hashState(definitions, partSources, sources);
+
+      Map<String, Object> previousPart = previousParts.remove(name);
+      Path previousOutput = previousPart == null ? null : directory.resolve((String) previousPart.get("file"));
+      if (state != null && previousPart != null && state.equals(previousPart.get("state"))
+          && Files.isRegularFile(previousOutput)) {
+        log.debug("Reusing output of unchanged triples map partition {}", name);
+        readOutput(previousOutput, handler);
+        parts.put(name, previousPart);
+        continue;
+      }
+
+      log.info("Mapping changed triples map partition {} ...", name);
+      Model model = mapPart(mapper, inputSource, partition, name, sources);
+      mappedParts++;
+      model.forEach(handler::handleStatement);
+
+      String file = String.format("%s-%s%s", hash(name).substring(0, 16),
+          state != null ? state.substring(0, 16) : UUID.randomUUID().toString(), OUTPUT_EXTENSION);
+      writeOutput(directory.resolve(file), model);
+
+      Map<String, Object> part = new LinkedHashMap<>();
+      part.put("file", file);
+      part.put("state", state);
+      part.put("sources", partSources);
+      part.put("statements", (long) model.size());
+      parts.put(name, part);
+
+      if (deltaDirectory != null) {
+        Model previousModel = new LinkedHashModel();
+        if (previousOutput != null && Files.isRegularFile(previousOutput)) {
+          readOutput(previousOutput, new AbstractRDFHandler() {
+
+            @Override
+            public void handleStatement(Statement statement) {
+              previousModel.add(statement);
+            }
+          });
+        }
+        model.stream().filter(statement -> !previousModel.contains(statement)).forEach(added::add);
+        previousModel.stream().filter(statement -> !model.contains(statement)).forEach(removed::add);
+      }
+    }
+
+    handler.endRDF();
+
+    // parts of the previous run that are no longer in the mapping
+    if (deltaDirectory != null) {
+      previousParts.values().stream()
+          .map(part -> directory.resolve((String) part.get("file")))
+          .filter(Files::isRegularFile)
+          .forEach(file -> readOutput(file, new AbstractRDFHandler() {
+
+            @Override
+            public void handleStatement(Statement statement) {
+              removed.add(statement);
+            }
+          }));
+    }
+
+    Map<String, Object> manifest = new LinkedHashMap<>();
+    manifest.put("definitions", definitions);
+    manifest.put("sources", sources);
+    manifest.put("parts", parts);
+    writeManifest(manifest);
+    deleteUnusedOutputs(parts);
+
+    if (deltaDirectory != null) {
+      writeDelta(added, removed);
+    }
+    log.info("Mapped {} of {} triples map partitions, reused the output of the others", mappedParts, parts.size());
+  }
+
+  /**
+   * Maps a part, binding a newly opened input stream only if it reads {@code carml:Stream} sources. A stream with
+   * nothing left to read would map to empty output that is then reused as if it was up to date, so the run fails
+   * instead when the stream yields no bytes while the input file is not empty.
+   */
+  private Model mapPart(RmlMapper mapper, InputSource inputSource, Set<TriplesMap> partition, String name,
+      Map<String, Map<String, Object>> sources) {
+    if (inputSource == null || withParents(partition).stream().noneMatch(IncrementalMapper::readsStream)) {
+      return mapper.map(partition);
+    }
+
+    try (CountingInputStream inputStream = new CountingInputStream(inputSource.open())) {
+      mapper.bindInputStream(inputStream);
+      Model model = mapper.map(partition);
+
+      Map<String, Object> fingerprint = input == null ? null
+          : sources.get(input.toAbsolutePath().normalize().toString());
+      if (inputStream.getCount() == 0 && fingerprint != null && ((Number) fingerprint.get("size")).longValue() > 0) {
+        throw new CarmlJarException(String.format(
+            "Input stream of triples map partition %s was already consumed, not storing its output", name));
+      }
+      return model;
+    } catch (IOException exception) {
+      throw new CarmlJarException("Could not read input", exception);
+    }
+  }
+
+  /**
+   * Returns the absolute paths of the sources of the triples maps in a partition and of their parent triples maps, or
+   * an empty string for a source that cannot be tracked.
+   */
+  private Set<String> getSources(Set<TriplesMap> partition) {
+    return withParents(partition).stream()
+        .map(this::getSource)
+        .collect(Collectors.toCollection(TreeSet::new));
+  }
+
+  private static Set<TriplesMap> withParents(Set<TriplesMap> partition) {
+    Set<TriplesMap> triplesMaps = new HashSet<>();
+    partition.forEach(triplesMap -> addWithParents(triplesMap, triplesMaps));
+    return triplesMaps;
+  }
+
+  private static void addWithParents(TriplesMap triplesMap, Set<TriplesMap> result) {
+    if (!result.add(triplesMap)) {
+      return;
+    }
+
+    triplesMap.getPredicateObjectMaps().stream()
+        .flatMap(predicateObjectMap -> predicateObjectMap.getObjectMaps().stream())
+        .filter(RefObjectMap.class::isInstance)
+        .map(objectMap -> ((RefObjectMap) objectMap).getParentTriplesMap())
+        .filter(Objects::nonNull)
+        .forEach(parent -> addWithParents(parent, result));
+  }
+
+  private static boolean readsStream(TriplesMap triplesMap) {
+    Object source = triplesMap.getLogicalSource() == null ? null : triplesMap.getLogicalSource().getSource();
+    return source != null && !(source instanceof String);
+  }
+
+  private String getSource(TriplesMap triplesMap) {
+    Object source = triplesMap.getLogicalSource() == null ? null : triplesMap.getLogicalSource().getSource();
+    Path path;
+    if (source instanceof String) {
+      path = relativeSourceLocation != null
+          ? relativeSourceLocation.resolve((String) source)
+          : Paths.get((String) source);
+    } else if (readsStream(triplesMap) && input != null) {
+      path = input;
+    } else {
+      return "";
+    }
+    return path.toAbsolutePath().normalize().toString();
+  }
+
+  private static Map<String, Object> fingerprint(Path file, Map<String, Object> previous) {
+    if (!Files.isRegularFile(file)) {
+      return null;
+    }
+
+    BasicFileAttributes attributes;
+    try {
+      attributes = Files.readAttributes(file, BasicFileAttributes.class);
+    } catch (IOException exception) {
+      throw new CarmlJarException(String.format("Could not read source file %s", file), exception);
+    }
+
+    long size = attributes.size();
+    long modified = attributes.lastModifiedTime().toMillis();
+    boolean unchanged = previous != null
+        && ((Number) previous.get("size")).longValue() == size
+        && ((Number) previous.get("modified")).longValue() == modified;
+
+    Map<String, Object> fingerprint = new LinkedHashMap<>();
+    fingerprint.put("size", size);
+    fingerprint.put("modified", modified);
+    fingerprint.put("sha256", unchanged ? previous.get("sha256") : hashContent(file));
+    return fingerprint;
+  }
+
+  /**
+   * Hashes the content of the sources of a part, or returns {@code null} if one of them cannot be tracked.
+   */
+  private static String hashState(String definitions, Set<String> partSources,
+      Map<String, Map<String, Object>> sources) {
+    Hasher hasher = Hashing.sha256().newHasher().putString(definitions, StandardCharsets.UTF_8);
+    for (String source : partSources) {
+      Map<String, Object> fingerprint = sources.get(source);
+      if (fingerprint == null) {
+        return null;
+      }
+      hasher.putString(source, StandardCharsets.UTF_8)
+          .putString((String) fingerprint.get("sha256"), StandardCharsets.UTF_8);
+    }
+    return hasher.hash().toString();
+  }
+
+  private String hashDefinitions() {
+    Hasher hasher = Hashing.sha256().newHasher();
+    for (Path definitionFile : definitionFiles) {
+      try (Stream<Path> files = Files.walk(definitionFile)) {
+        for (Path file : files.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+          hasher.putString(file.toString(), StandardCharsets.UTF_8)
+              .putString(hashContent(file), StandardCharsets.UTF_8);
+        }
+      } catch (IOException exception) {
+        throw new CarmlJarException(String.format("Could not read %s", definitionFile), exception);
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+  private static String hashContent(Path file) {
+    try {
+      return com.google.common.io.Files.asByteSource(file.toFile()).hash(Hashing.sha256()).toString();
+    } catch (IOException exception) {
+      throw new CarmlJarException(String.format("Could not read file %s", file), exception);
+    }
+  }
+
+  private static String hash(String value) {
+    return Hashing.sha256().hashString(value, StandardCharsets.UTF_8).toString();
+  }
+
+  private static void readOutput(Path file, RDFHandler handler) {
+    RDFParser parser = Rio.createParser(RDFFormat.BINARY);
+    parser.getParserConfig().set(BasicParserSettings.PRESERVE_BNODE_IDS, true);
+    parser.setRDFHandler(new AbstractRDFHandler() {
+
+      @Override
+      public void handleStatement(Statement statement) {
+        handler.handleStatement(statement);
+      }
+    });
+
+    try (InputStream in = InputStreams.file(file)) {
+      parser.parse(in, "");
+    } catch (IOException exception) {
+      throw new CarmlJarException(String.format("Could not read previous output %s", file), exception);
+    }
+  }
+
+  private static void writeOutput(Path file, Model model) {
+    try {
+      Files.createDirectories(file.getParent());
+      try (OutputStream out = OutputStreams.file(file, OutputStreams.DEFAULT_BUFFER_SIZE)) {
+        Rio.write(model, out, RDFFormat.BINARY);
+      }
+    } catch (IOException exception) {
+      throw new CarmlJarException(String.format("Could not write output %s", file), exception);
+    }
+  }
+
+  private Map<String, Object> readManifest() {
+    Path manifestFile = directory.resolve(MANIFEST_FILE_NAME);
+    if (!Files.isRegularFile(manifestFile)) {
+      log.info("No previous incremental state found in {}, mapping all triples maps ...", directory);
+      return Collections.emptyMap();
+    }
+
+    try {
+      @SuppressWarnings("unchecked")
+      Map<String, Object> manifest = new ObjectMapper().readValue(manifestFile.toFile(), Map.class);
+      return manifest;
+    } catch (IOException exception) {
+      log.warn(String.format("Could not read %s, mapping all triples maps", manifestFile), exception);
+      return Collections.emptyMap();
+    }
+  }
+
+  private void writeManifest(Map<String, Object> manifest) {
+    Path manifestFile = directory.resolve(MANIFEST_FILE_NAME);
+    try {
+      Files.createDirectories(directory);
+      Path tempFile = Files.createTempFile(directory, MANIFEST_FILE_NAME, ".tmp");
+      new ObjectMapper()
+          .enable(SerializationFeature.INDENT_OUTPUT)
+          .writeValue(tempFile.toFile(), manifest);
+      Files.move(tempFile, manifestFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException exception) {
+      throw new CarmlJarException(String.format("Could not write incremental manifest %s", manifestFile), exception);
+    }
+  }
+
+  private void deleteUnusedOutputs(Map<String, Map<String, Object>> parts) {
+    Set<String> usedFiles = parts.values().stream()
+        .map(part -> (String) part.get("file"))
+        .collect(Collectors.toSet());
+
+    try (DirectoryStream<Path> outputs = Files.newDirectoryStream(directory, "*" + OUTPUT_EXTENSION)) {
+      for (Path output : outputs) {
+        if (!usedFiles.contains(output.getFileName().toString())) {
+          Files.delete(output);
+        }
+      }
+    } catch (IOException exception) {
+      log.warn(String.format("Could not delete unused outputs in %s", directory), exception);
+    }
+  }
+
+  private void writeDelta(Model added, Model removed) {
+    // statements that moved between parts are neither added nor removed
+    Set<Statement> moved = new HashSet<>(added);
+    moved.retainAll(removed);
+    added.removeAll(moved);
+    removed.removeAll(moved);
+
+    try {
+      Files.createDirectories(deltaDirectory);
+      try (OutputStream out = OutputStreams.file(deltaDirectory.resolve(ADDED_FILE_NAME),
+          OutputStreams.DEFAULT_BUFFER_SIZE)) {
+        Rio.write(added, out, RDFFormat.NQUADS);
+      }
+      try (OutputStream out = OutputStreams.file(deltaDirectory.resolve(REMOVED_FILE_NAME),
+          OutputStreams.DEFAULT_BUFFER_SIZE)) {
+        Rio.write(removed, out, RDFFormat.NQUADS);
+      }
+    } catch (IOException exception) {
+      throw new CarmlJarException(String.format("Could not write delta to %s", deltaDirectory), exception);
+    }
+    log.info("{} statements added and {} statements removed since the previous run", added.size(), removed.size());
+  }
+
+}
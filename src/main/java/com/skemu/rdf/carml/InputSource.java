@@ -0,0 +1,44 @@
+package com.skemu.rdf.carml;
+
+import com.taxonic.carml.engine.RmlMapper;
+import com.taxonic.carml.model.TriplesMap;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+import java.util.Set;
+import org.eclipse.rdf4j.model.Model;
+
+/**
+ * Opens the input that is bound to a mapper as {@code carml:Stream} source. A bound stream can only be read once, and
+ * CARML discards it after every {@link RmlMapper#map(Set)} call, so a mapping that is executed in parts needs a new
+ * stream for every part.
+ */
+@FunctionalInterface
+interface InputSource {
+
+  InputStream open() throws IOException;
+
+  static InputSource bytes(byte[] bytes) {
+    Objects.requireNonNull(bytes);
+    return () -> new ByteArrayInputStream(bytes);
+  }
+
+  /**
+   * Executes triples maps with a newly opened input stream bound to the mapper, which is closed when they are done.
+   * No stream is bound if {@code input} is {@code null}.
+   */
+  static Model map(RmlMapper mapper, InputSource input, Set<TriplesMap> triplesMaps) {
+    if (input == null) {
+      return mapper.map(triplesMaps);
+    }
+
+    try (InputStream inputStream = input.open()) {
+      mapper.bindInputStream(inputStream);
+      return mapper.map(triplesMaps);
+    } catch (IOException exception) {
+      throw new CarmlJarException("Could not read input", exception);
+    }
+  }
+
+}
@@ -0,0 +1,41 @@
+package com.skemu.rdf.carml;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+class InputStreams {
+
+  static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+  // smaller files are read with a buffer, as mapping a file costs more than reading a few buffers
+  static final long MAPPED_FILE_THRESHOLD = 1 << 20;
+
+  private InputStreams() {
+  }
+
+  /**
+   * Opens a stream on a file, decompressing it while reading when the file name has a {@link Compression} extension.
+   * Large regular files are read through memory-mapped regions, other files with a buffer.
+   */
+  static InputStream file(Path path) throws IOException {
+    InputStream in = Files.isRegularFile(path) && Files.size(path) >= MAPPED_FILE_THRESHOLD
+        ? new MappedFileInputStream(path)
+        : new BufferedInputStream(Files.newInputStream(path), DEFAULT_BUFFER_SIZE);
+    Optional<Compression> compression = Compression.forFileName(path.getFileName().toString());
+    if (!compression.isPresent()) {
+      return in;
+    }
+
+    try {
+      return compression.get().decompress(in);
+    } catch (IOException exception) {
+      in.close();
+      throw exception;
+    }
+  }
+
+}
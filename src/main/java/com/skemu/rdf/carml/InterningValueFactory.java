@@ -0,0 +1,162 @@
+package com.skemu.rdf.carml;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.rdf4j.model.BNode;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.impl.AbstractValueFactory;
+
+/**
+ * Value factory that returns one shared instance for equal terms, so that terms repeated throughout a large in-memory
+ * output, such as the objects of generated links, code list values and template-generated IRIs, are kept in memory
+ * once.
+ *
+ * <p>Datatypes and terms used as predicate or graph are few, and are always interned. Other terms are kept in a
+ * concurrent dictionary with a memory budget that evicts the least recently used terms, so that high-cardinality
+ * subject IRIs that are never repeated cannot fill the heap. Blank nodes are never interned.
+ */
+@Slf4j
+class InterningValueFactory extends AbstractValueFactory {
+
+  // estimated heap use of a term besides the characters of its string value: term, string and array headers
+  private static final int TERM_OVERHEAD = 64;
+
+  private static final int MAX_PINNED_TERMS = 100_000;
+
+  private final Map<Value, Value> pinnedTerms = new ConcurrentHashMap<>();
+
+  private final Cache<Value, Value> terms;
+
+  private final LongAdder lookups = new LongAdder();
+
+  private final LongAdder duplicates = new LongAdder();
+
+  private final LongAdder bytesSaved = new LongAdder();
+
+  /**
+   * Creates a value factory interning terms in a dictionary of about {@code memoryBudget} bytes, besides the pinned
+   * terms.
+   */
+  InterningValueFactory(long memoryBudget, int concurrencyLevel) {
+    terms = CacheBuilder.newBuilder()
+        .maximumWeight(memoryBudget)
+        .weigher((Value key, Value value) -> estimateSize(key))
+        .concurrencyLevel(Math.max(1, concurrencyLevel))
+        .recordStats()
+        .build();
+  }
+
+  @Override
+  public IRI createIRI(String iri) {
+    return intern(super.createIRI(iri));
+  }
+
+  @Override
+  public IRI createIRI(String namespace, String localName) {
+    return intern(super.createIRI(namespace, localName));
+  }
+
+  @Override
+  public Literal createLiteral(String label) {
+    return intern(super.createLiteral(label));
+  }
+
+  @Override
+  public Literal createLiteral(String label, String language) {
+    return intern(super.createLiteral(label, language));
+  }
+
+  @Override
+  public Literal createLiteral(String label, IRI datatype) {
+    return intern(super.createLiteral(label, pin(datatype)));
+  }
+
+  @Override
+  public Statement createStatement(Resource subject, IRI predicate, Value object) {
+    return super.createStatement(intern(subject), pin(predicate), intern(object));
+  }
+
+  @Override
+  public Statement createStatement(Resource subject, IRI predicate, Value object, Resource context) {
+    return super.createStatement(intern(subject), pin(predicate), intern(object), pin(context));
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T extends Value> T intern(T value) {
+    if (value == null || value instanceof BNode) {
+      return value;
+    }
+
+    Value pinned = pinnedTerms.get(value);
+    if (pinned != null) {
+      return (T) lookedUp(value, pinned);
+    }
+    return (T) lookedUp(value, terms.asMap().putIfAbsent(value, value));
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T extends Value> T pin(T value) {
+    if (value == null || value instanceof BNode || pinnedTerms.size() >= MAX_PINNED_TERMS) {
+      return intern(value);
+    }
+
+    return (T) lookedUp(value, pinnedTerms.putIfAbsent(value, value));
+  }
+
+  /**
+   * Counts a lookup of a term, unless the term is the interned instance itself, as statements are created from terms
+   * that were interned when they were created.
+   */
+  private Value lookedUp(Value value, Value interned) {
+    if (interned == value) {
+      return value;
+    }
+
+    lookups.increment();
+    if (interned == null) {
+      return value;
+    }
+    duplicates.increment();
+    bytesSaved.add(estimateSize(interned));
+    return interned;
+  }
+
+  private static int estimateSize(Value value) {
+    int size = TERM_OVERHEAD + value.stringValue().length();
+    if (value instanceof Literal) {
+      size += ((Literal) value).getLanguage().map(String::length).orElse(0);
+    }
+    return size;
+  }
+
+  long getBytesSaved() {
+    return bytesSaved.sum();
+  }
+
+  Map<String, Object> statistics() {
+    Map<String, Object> statistics = new LinkedHashMap<>();
+    statistics.put("lookups", lookups.sum());
+    statistics.put("duplicates", duplicates.sum());
+    statistics.put("bytesSaved", bytesSaved.sum());
+    statistics.put("pinnedTerms", (long) pinnedTerms.size());
+    statistics.put("dictionaryTerms", terms.size());
+    statistics.put("evictions", terms.stats().evictionCount());
+    return statistics;
+  }
+
+  void logStatistics() {
+    log.info("Interned {} duplicates of {} terms, saving about {} bytes. {} pinned and {} dictionary terms, {} evicted",
+        duplicates.sum(), lookups.sum(), bytesSaved.sum(), pinnedTerms.size(), terms.size(),
+        terms.stats().evictionCount());
+  }
+
+}
@@ -2,11 +2,11 @@ package com.skemu.rdf.carml;
 
 import com.taxonic.carml.rdf_mapper.util.ImmutableCollectors;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Path;
 import java.util.Set;
-import org.xeustechnologies.jcl.JarClassLoader;
-import org.xeustechnologies.jcl.JclObjectFactory;
 
 public class JarFunctionLoader {
 
@@ -14,19 +14,51 @@ public class JarFunctionLoader {
   }
 
   public static Set<Object> load(Set<String> functionClasses, Set<File> jars) {
-    JarClassLoader jcl = new JarClassLoader();
+    return load(functionClasses, jars, null);
+  }
+
+  /**
+   * Creates the transformation functions of the given classes, or of all function classes in {@code jars} if no
+   * classes are given. Function classes found in the jars are remembered in {@code indexDirectory}, if set.
+   *
+   * <p>Classes are read from the jars as they are used, so the class loader stays open for the lifetime of the
+   * functions.
+   */
+  public static Set<Object> load(Set<String> functionClasses, Set<File> jars, Path indexDirectory) {
+    URL[] urls = jars.stream()
+        .map(JarFunctionLoader::toUrl)
+        .toArray(URL[]::new);
+    FunctionClassLoader classLoader = new FunctionClassLoader(urls, JarFunctionLoader.class.getClassLoader());
+
+    Set<String> classNames = functionClasses.isEmpty()
+        ? new FunctionIndex(indexDirectory).functionClasses(jars)
+        : functionClasses;
+
+    return classNames.stream()
+        .map(className -> create(classLoader, className))
+        .collect(ImmutableCollectors.toImmutableSet());
+  }
+
+  private static URL toUrl(File jar) {
+    if (!jar.isFile()) {
+      throw new CarmlJarException(String.format("Could not find jar file %s", jar));
+    }
     try {
-      for (File jar : jars) {
-        jcl.add(new FileInputStream(jar));
-      }
-    } catch (FileNotFoundException e) {
-      throw new RuntimeException("Could not find jar file", e);
+      return jar.toURI().toURL();
+    } catch (MalformedURLException exception) {
+      throw new CarmlJarException(String.format("Invalid jar file path %s", jar), exception);
     }
+  }
 
-    JclObjectFactory factory = JclObjectFactory.getInstance();
-    return functionClasses.stream()
-        .map(f -> factory.create(jcl, f))
-        .collect(ImmutableCollectors.toImmutableSet());
+  private static Object create(ClassLoader classLoader, String className) {
+    try {
+      return Class.forName(className, true, classLoader).getDeclaredConstructor().newInstance();
+    } catch (ClassNotFoundException exception) {
+      throw new CarmlJarException(String.format("Could not find function class %s", className), exception);
+    } catch (InstantiationException | IllegalAccessException | NoSuchMethodException
+        | InvocationTargetException exception) {
+      throw new CarmlJarException(String.format("Could not create function class %s", className), exception);
+    }
   }
 
 }
@@ -0,0 +1,139 @@
+package com.skemu.rdf.carml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Reads a file through memory-mapped regions, so reading does not copy the file through read system calls. Every
+ * region is loaded into memory on a background thread as soon as it is mapped, and the next region is mapped while the
+ * current one is read, so the parser reading the stream rarely waits for the disk.
+ *
+ * <p>Like any input stream, it reads the file once. A mapping that is executed in parts opens a stream for every
+ * part through its {@link InputSource}.
+ *
+ * <p>Mapped regions are released by the garbage collector, not when the stream is closed.
+ */
+class MappedFileInputStream extends InputStream {
+
+  static final int DEFAULT_REGION_SIZE = 64 << 20;
+
+  private static final ExecutorService READ_AHEAD = Executors.newCachedThreadPool(runnable -> {
+    Thread thread = new Thread(runnable, "input-read-ahead");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final FileChannel channel;
+
+  private final long size;
+
+  private final int regionSize;
+
+  private long mappedUpTo;
+
+  private MappedByteBuffer region;
+
+  private MappedByteBuffer nextRegion;
+
+  private boolean closed;
+
+  MappedFileInputStream(Path path) throws IOException {
+    this(path, DEFAULT_REGION_SIZE);
+  }
+
+  MappedFileInputStream(Path path, int regionSize) throws IOException {
+    this.regionSize = regionSize;
+    channel = FileChannel.open(Objects.requireNonNull(path), StandardOpenOption.READ);
+    try {
+      size = channel.size();
+      region = mapNextRegion();
+      nextRegion = mapNextRegion();
+    } catch (IOException | RuntimeException exception) {
+      channel.close();
+      throw exception;
+    }
+  }
+
+  private MappedByteBuffer mapNextRegion() throws IOException {
+    if (mappedUpTo >= size) {
+      return null;
+    }
+
+    MappedByteBuffer mapped = channel.map(MapMode.READ_ONLY, mappedUpTo, Math.min(regionSize, size - mappedUpTo));
+    mappedUpTo += mapped.capacity();
+    READ_AHEAD.execute(mapped::load);
+    return mapped;
+  }
+
+  private boolean ensureRemaining() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+
+    while (region != null && !region.hasRemaining()) {
+      region = nextRegion;
+      nextRegion = mapNextRegion();
+    }
+    return region != null;
+  }
+
+  @Override
+  public int read() throws IOException {
+    return ensureRemaining() ? region.get() & 0xff : -1;
+  }
+
+  @Override
+  public int read(byte[] bytes, int offset, int length) throws IOException {
+    Objects.checkFromIndexSize(offset, length, bytes.length);
+    if (length == 0) {
+      return 0;
+    }
+    if (!ensureRemaining()) {
+      return -1;
+    }
+
+    int count = Math.min(length, region.remaining());
+    region.get(bytes, offset, count);
+    return count;
+  }
+
+  @Override
+  public long skip(long count) throws IOException {
+    long skipped = 0;
+    while (skipped < count && ensureRemaining()) {
+      int step = (int) Math.min(count - skipped, region.remaining());
+      region.position(region.position() + step);
+      skipped += step;
+    }
+    return skipped;
+  }
+
+  @Override
+  public int available() throws IOException {
+    if (!ensureRemaining()) {
+      return 0;
+    }
+    long remaining = region.remaining() + (size - mappedUpTo) + (nextRegion == null ? 0 : nextRegion.capacity());
+    return (int) Math.min(Integer.MAX_VALUE, remaining);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    region = null;
+    nextRegion = null;
+    channel.close();
+  }
+
+}
@@ -0,0 +1,86 @@
+package com.skemu.rdf.carml;
+
+import com.google.common.collect.ImmutableSet;
+import com.taxonic.carml.engine.RmlMapper;
+import com.taxonic.carml.logical_source_resolver.CsvResolver;
+import com.taxonic.carml.logical_source_resolver.JsonPathResolver;
+import com.taxonic.carml.logical_source_resolver.XPathResolver;
+import com.taxonic.carml.vocab.Rdf;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.Set;
+import org.eclipse.rdf4j.model.ValueFactory;
+
+/**
+ * Creates {@link RmlMapper} instances sharing one configuration. Transformation functions are loaded once and shared
+ * by all mappers, so they should be thread-safe when mappers are used concurrently.
+ */
+class MapperFactory {
+
+  private final Set<Object> functions;
+
+  private final Path relativeSourceLocation;
+
+  private ValueFactory valueFactory;
+
+  MapperFactory(Set<Object> functions, Path relativeSourceLocation) {
+    this.functions = ImmutableSet.copyOf(functions);
+    this.relativeSourceLocation = relativeSourceLocation;
+  }
+
+  /**
+   * Creates the terms of all mappers with the given value factory, which has to be thread-safe when mappers are used
+   * concurrently.
+   */
+  MapperFactory valueFactory(ValueFactory valueFactory) {
+    this.valueFactory = valueFactory;
+    return this;
+  }
+
+  RmlMapper create() {
+    RmlMapper.Builder mapperBuilder = RmlMapper.newBuilder()
+        .setLogicalSourceResolver(Rdf.Ql.JsonPath, new JsonPathResolver())
+        .setLogicalSourceResolver(Rdf.Ql.XPath, new XPathResolver())
+        .setLogicalSourceResolver(Rdf.Ql.Csv, new CsvResolver());
+
+    functions.forEach(mapperBuilder::addFunctions);
+
+    mapperBuilder.sourceResolver(this::resolveCompressedSource);
+    if (relativeSourceLocation != null) {
+      mapperBuilder.fileResolver(relativeSourceLocation);
+    }
+    if (valueFactory != null) {
+      mapperBuilder.valueFactorySupplier(() -> valueFactory);
+    }
+
+    return mapperBuilder.build();
+  }
+
+  /**
+   * Resolves file sources with a {@link Compression} extension, relative to the relative source location if there is
+   * one, to a stream decompressing them. Other sources are left to the default resolvers.
+   */
+  private Optional<InputStream> resolveCompressedSource(Object source) {
+    if (!(source instanceof String) || !Compression.forFileName((String) source).isPresent()) {
+      return Optional.empty();
+    }
+
+    Path path = relativeSourceLocation != null
+        ? relativeSourceLocation.resolve((String) source)
+        : Paths.get((String) source);
+    if (!Files.isRegularFile(path)) {
+      return Optional.empty();
+    }
+
+    try {
+      return Optional.of(InputStreams.file(path));
+    } catch (IOException exception) {
+      throw new CarmlJarException(String.format("Could not read source file %s", path), exception);
+    }
+  }
+
+}
@@ -0,0 +1,242 @@
+package com.skemu.rdf.carml;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+
+/**
+ * On-disk cache of parsed mapping models, stored as binary RDF snapshots. A snapshot is keyed by the paths, sizes,
+ * modification times and content hashes of the mapping files it was parsed from. Content hashes are remembered per
+ * file and only recomputed when the size or modification time of a file changes, so a warm run only reads the
+ * snapshot. Snapshot file names start with a hash of the mapping file paths, and writing a snapshot deletes the
+ * snapshots of earlier versions of the same mapping files. Snapshots of other sets of mapping files are kept up to
+ * {@link #maxSnapshots(int)}, evicting the least recently used ones beyond that.
+ */
+@Slf4j
+class MappingCache {
+
+  private static final String SNAPSHOT_EXTENSION = ".brf";
+
+  private static final String CONTENT_HASHES_FILE = "content-hashes.properties";
+
+  private static final int READ_BUFFER_SIZE = 1 << 20;
+
+  private static final int PATHS_KEY_LENGTH = 16;
+
+  static final int DEFAULT_MAX_SNAPSHOTS = 32;
+
+  private final Path directory;
+
+  private int maxSnapshots = DEFAULT_MAX_SNAPSHOTS;
+
+  MappingCache(Path directory) {
+    this.directory = Objects.requireNonNull(directory);
+  }
+
+  /**
+   * Sets the number of snapshots kept in the cache directory, defaults to {@value #DEFAULT_MAX_SNAPSHOTS}.
+   */
+  MappingCache maxSnapshots(int maxSnapshots) {
+    if (maxSnapshots < 1) {
+      throw new IllegalArgumentException("The mapping cache must keep at least one snapshot");
+    }
+    this.maxSnapshots = maxSnapshots;
+    return this;
+  }
+
+  Model load(List<Path> files, RDFFormat format, Supplier<Model> parser) {
+    String pathsKey = pathsKey(files, format);
+    String key = key(files, format);
+    Path snapshot = directory.resolve(pathsKey + "-" + key + SNAPSHOT_EXTENSION);
+
+    if (Files.isRegularFile(snapshot)) {
+      log.info("Loading mapping from cache {} ...", snapshot);
+      try (InputStream is = new BufferedInputStream(Files.newInputStream(snapshot), READ_BUFFER_SIZE)) {
+        Model model = Rio.parse(is, "", RDFFormat.BINARY);
+        markUsed(snapshot);
+        return model;
+      } catch (IOException | RuntimeException exception) {
+        log.warn(String.format("Could not read cached mapping %s, parsing mapping files instead", snapshot),
+            exception);
+      }
+    }
+
+    Model model = parser.get();
+    try {
+      Files.createDirectories(directory);
+      Path tempFile = Files.createTempFile(directory, key, ".tmp");
+      try (OutputStream out = OutputStreams.file(tempFile, OutputStreams.DEFAULT_BUFFER_SIZE)) {
+        Rio.write(model, out, RDFFormat.BINARY);
+      }
+      Files.move(tempFile, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      log.debug("Cached parsed mapping in {}", snapshot);
+      deleteSupersededSnapshots(pathsKey, snapshot);
+      evictLeastRecentlyUsedSnapshots(snapshot);
+    } catch (IOException exception) {
+      log.warn(String.format("Could not cache parsed mapping in %s", directory), exception);
+    }
+
+    return model;
+  }
+
+  private void deleteSupersededSnapshots(String pathsKey, Path snapshot) {
+    try (DirectoryStream<Path> snapshots =
+        Files.newDirectoryStream(directory, pathsKey + "-*" + SNAPSHOT_EXTENSION)) {
+      for (Path superseded : snapshots) {
+        if (!superseded.equals(snapshot)) {
+          Files.deleteIfExists(superseded);
+          log.debug("Deleted superseded cached mapping {}", superseded);
+        }
+      }
+    } catch (IOException exception) {
+      log.warn(String.format("Could not delete superseded cached mappings in %s", directory), exception);
+    }
+  }
+
+  /**
+   * Sets the modification time of a snapshot that is read, which orders the snapshots for eviction.
+   */
+  private static void markUsed(Path snapshot) {
+    try {
+      Files.setLastModifiedTime(snapshot, FileTime.fromMillis(System.currentTimeMillis()));
+    } catch (IOException exception) {
+      log.debug("Could not mark cached mapping {} as used", snapshot, exception);
+    }
+  }
+
+  private void evictLeastRecentlyUsedSnapshots(Path snapshot) {
+    List<Path> snapshots = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SNAPSHOT_EXTENSION)) {
+      stream.forEach(snapshots::add);
+      // the snapshot that was just written is always kept
+      snapshots.remove(snapshot);
+      if (snapshots.size() < maxSnapshots) {
+        return;
+      }
+
+      Map<Path, FileTime> lastUsed = new HashMap<>();
+      for (Path other : snapshots) {
+        lastUsed.put(other, Files.getLastModifiedTime(other));
+      }
+      snapshots.sort(Comparator.comparing(lastUsed::get));
+      for (Path evicted : snapshots.subList(0, snapshots.size() - maxSnapshots + 1)) {
+        Files.deleteIfExists(evicted);
+        log.debug("Evicted least recently used cached mapping {}", evicted);
+      }
+    } catch (IOException exception) {
+      log.warn(String.format("Could not evict cached mappings in %s", directory), exception);
+    }
+  }
+
+  /**
+   * Hashes only the paths of the mapping files, which is the same for every version of a mapping.
+   */
+  private static String pathsKey(List<Path> files, RDFFormat format) {
+    Hasher hasher = Hashing.sha256().newHasher()
+        .putString(format == null ? "" : format.getName(), StandardCharsets.UTF_8);
+    files.forEach(file -> hasher.putString(file.toAbsolutePath().normalize().toString(), StandardCharsets.UTF_8));
+    return hasher.hash().toString().substring(0, PATHS_KEY_LENGTH);
+  }
+
+  private String key(List<Path> files, RDFFormat format) {
+    Properties contentHashes = loadContentHashes();
+    boolean contentHashesChanged = false;
+
+    Hasher hasher = Hashing.sha256().newHasher()
+        .putString(format == null ? "" : format.getName(), StandardCharsets.UTF_8);
+
+    for (Path file : files) {
+      Path absoluteFile = file.toAbsolutePath().normalize();
+      BasicFileAttributes attributes = readAttributes(absoluteFile);
+      String fileState = String.format("%d:%d", attributes.size(), attributes.lastModifiedTime().toMillis());
+
+      String cachedContentHash = contentHashes.getProperty(absoluteFile.toString());
+      String contentHash;
+      if (cachedContentHash != null && cachedContentHash.startsWith(fileState + ":")) {
+        contentHash = cachedContentHash.substring(fileState.length() + 1);
+      } else {
+        contentHash = hashContent(absoluteFile);
+        contentHashes.setProperty(absoluteFile.toString(), fileState + ":" + contentHash);
+        contentHashesChanged = true;
+      }
+
+      hasher.putString(absoluteFile.toString(), StandardCharsets.UTF_8)
+          .putString(fileState, StandardCharsets.UTF_8)
+          .putString(contentHash, StandardCharsets.UTF_8);
+    }
+
+    if (contentHashesChanged) {
+      storeContentHashes(contentHashes);
+    }
+
+    return hasher.hash().toString();
+  }
+
+  private static BasicFileAttributes readAttributes(Path file) {
+    try {
+      return Files.readAttributes(file, BasicFileAttributes.class);
+    } catch (IOException exception) {
+      throw new CarmlJarException(String.format("Could not read file %s", file), exception);
+    }
+  }
+
+  private static String hashContent(Path file) {
+    try {
+      return com.google.common.io.Files.asByteSource(file.toFile()).hash(Hashing.sha256()).toString();
+    } catch (IOException exception) {
+      throw new CarmlJarException(String.format("Could not read file %s", file), exception);
+    }
+  }
+
+  private Properties loadContentHashes() {
+    Properties contentHashes = new Properties();
+    Path contentHashesFile = directory.resolve(CONTENT_HASHES_FILE);
+    if (Files.isRegularFile(contentHashesFile)) {
+      try (Reader reader = Files.newBufferedReader(contentHashesFile, StandardCharsets.UTF_8)) {
+        contentHashes.load(reader);
+      } catch (IOException exception) {
+        log.warn(String.format("Could not read %s, recomputing content hashes", contentHashesFile), exception);
+      }
+    }
+    return contentHashes;
+  }
+
+  private void storeContentHashes(Properties contentHashes) {
+    try {
+      Files.createDirectories(directory);
+      Path tempFile = Files.createTempFile(directory, CONTENT_HASHES_FILE, ".tmp");
+      try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+        contentHashes.store(writer, "Mapping file content hashes by path, as size:modified-time:sha256");
+      }
+      Files.move(tempFile, directory.resolve(CONTENT_HASHES_FILE), StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException exception) {
+      log.warn(String.format("Could not store content hashes in %s", directory), exception);
+    }
+  }
+
+}
@@ -0,0 +1,122 @@
+package com.skemu.rdf.carml;
+
+import com.taxonic.carml.model.TriplesMap;
+import com.taxonic.carml.util.IoUtils;
+import com.taxonic.carml.util.RmlMappingLoader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+
+@Slf4j
+class MappingLoader {
+
+  private MappingLoader() {
+  }
+
+  /**
+   * Loads the triples maps from the given mapping files and directories. If {@code format} is {@code null}, the
+   * format of each file is determined by its file name and directories are searched for mapping files. Otherwise,
+   * every path is parsed as a mapping file in that format. If {@code cache} is not {@code null}, the parsed mapping is
+   * taken from or added to the cache. Mapping files are parsed concurrently by up to {@code parallelism} threads.
+   */
+  static Set<TriplesMap> load(RDFFormat format, MappingCache cache, int parallelism, Path... paths) {
+    List<Path> files = resolvePaths(format, paths);
+
+    Model mappingModel = cache == null
+        ? parse(files, format, parallelism)
+        : cache.load(files, format, () -> parse(files, format, parallelism));
+
+    return RmlMappingLoader.build().load(mappingModel);
+  }
+
+  static List<Path> resolvePaths(RDFFormat format, Path... paths) {
+    if (format != null) {
+      return Arrays.asList(paths);
+    }
+
+    return Arrays.stream(paths)
+        .flatMap(path -> {
+          log.debug("Resolving mapping files in {}", path);
+          try (Stream<Path> walk = Files.walk(path)) {
+            return walk.filter(Files::isRegularFile)
+                .collect(Collectors.toList())
+                .stream();
+          } catch (IOException exception) {
+            throw new CarmlJarException(String.format("Exception occurred while reading file %s", path), exception);
+          }
+        })
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Parses the given files on a fork-join pool and merges the results in file order. Parse errors are collected for
+   * all files before failing, so every broken file is reported at once.
+   */
+  static Model parse(List<Path> files, RDFFormat format, int parallelism) {
+    List<Model> models = new ArrayList<>(files.size());
+    List<String> errors = new ArrayList<>();
+
+    ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(parallelism, files.size())));
+    try {
+      List<ForkJoinTask<Optional<Model>>> tasks = files.stream()
+          .map(file -> pool.submit(() -> parse(file, format)))
+          .collect(Collectors.toList());
+
+      for (int i = 0; i < tasks.size(); i++) {
+        try {
+          tasks.get(i).get().ifPresent(models::add);
+        } catch (ExecutionException exception) {
+          String error = String.format("%s: %s", files.get(i), exception.getCause().getMessage());
+          log.error("Could not parse mapping file {}", error);
+          errors.add(error);
+        }
+      }
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new CarmlJarException("Interrupted while parsing mapping files", exception);
+    } finally {
+      pool.shutdownNow();
+    }
+
+    if (!errors.isEmpty()) {
+      throw new MappingFormatException(String.format("Could not parse %d mapping file(s):%n%s", errors.size(),
+          String.join(System.lineSeparator(), errors)));
+    }
+
+    Model mappingModel = new LinkedHashModel(models.stream().mapToInt(Model::size).sum());
+    models.forEach(mappingModel::addAll);
+    return mappingModel;
+  }
+
+  private static Optional<Model> parse(Path file, RDFFormat format) {
+    String fileName = file.getFileName().toString();
+    Optional<RDFFormat> rdfFormat = format == null ? Rio.getParserFormatForFileName(fileName) : Optional.of(format);
+    if (rdfFormat.isEmpty()) {
+      log.warn("Could not determine mapping format for filename '{}', ignoring this file...", fileName);
+      return Optional.empty();
+    }
+
+    try (InputStream is = Files.newInputStream(file)) {
+      return Optional.of(IoUtils.parse(is, rdfFormat.get()));
+    } catch (IOException exception) {
+      throw new CarmlJarException(String.format("Could not read file %s", file), exception);
+    }
+  }
+
+}
@@ -0,0 +1,300 @@
+package com.skemu.rdf.carml;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.cache.CacheStats;
+import com.google.common.io.CountingInputStream;
+import com.google.common.io.CountingOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Collects execution metrics of a mapping run: statements and wall and CPU time per executed {@link Unit}, and bytes
+ * read from the bound input and written to the output. A unit is a triples map, or an input file or chunk when many
+ * inputs are mapped concurrently. Each execution is also emitted as a JFR event, which is only recorded when a flight
+ * recording is running.
+ */
+@Slf4j
+class MappingMetrics {
+
+  private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+  private final Unit unit;
+
+  private final List<ExecutionMetrics> executions = new CopyOnWriteArrayList<>();
+
+  private final List<CountingInputStream> inputs = new CopyOnWriteArrayList<>();
+
+  private final List<CountingOutputStream> outputs = new CopyOnWriteArrayList<>();
+
+  private final LongAdder statements = new LongAdder();
+
+  private final Map<String, CacheStats> functionCaches = new LinkedHashMap<>();
+
+  private Map<String, Object> termInterning;
+
+  private final long startNanos = System.nanoTime();
+
+  private ScheduledExecutorService progressLogger;
+
+  MappingMetrics() {
+    this(Unit.TRIPLES_MAP);
+  }
+
+  MappingMetrics(Unit unit) {
+    this.unit = unit;
+  }
+
+  InputStream countRead(InputStream inputStream) {
+    CountingInputStream countingInputStream = new CountingInputStream(inputStream);
+    inputs.add(countingInputStream);
+    return countingInputStream;
+  }
+
+  OutputStream countWritten(OutputStream outputStream) {
+    CountingOutputStream countingOutputStream = new CountingOutputStream(outputStream);
+    outputs.add(countingOutputStream);
+    return countingOutputStream;
+  }
+
+  /**
+   * Starts measuring the execution of the triples map, input file or chunk with the given name, depending on the
+   * {@link Unit} of these metrics.
+   */
+  Execution startExecution(String name) {
+    return new Execution(name);
+  }
+
+  /**
+   * Adds the cache statistics of memoized functions to the report.
+   */
+  void recordFunctionCaches(Map<String, CacheStats> statistics) {
+    functionCaches.putAll(statistics);
+  }
+
+  /**
+   * Adds the statistics of term interning to the report.
+   */
+  void recordTermInterning(Map<String, Object> statistics) {
+    termInterning = statistics;
+  }
+
+  void startProgressLogging(Duration interval) {
+    progressLogger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "carml-progress");
+      thread.setDaemon(true);
+      return thread;
+    });
+    progressLogger.scheduleAtFixedRate(this::logProgress, interval.toMillis(), interval.toMillis(),
+        TimeUnit.MILLISECONDS);
+  }
+
+  void stop() {
+    if (progressLogger != null) {
+      progressLogger.shutdownNow();
+    }
+    logProgress();
+  }
+
+  private void logProgress() {
+    double seconds = Math.max(elapsedNanos(), 1) / 1e9;
+    log.info("Progress: {} {}, {} statements ({} statements/s), {} bytes read, {} bytes written in {}s",
+        executions.size(), unit.description, statements.sum(), String.format(Locale.ROOT, "%.0f", statements.sum() / seconds),
+        bytesRead(), bytesWritten(), String.format(Locale.ROOT, "%.1f", seconds));
+  }
+
+  private long elapsedNanos() {
+    return System.nanoTime() - startNanos;
+  }
+
+  private long bytesRead() {
+    return inputs.stream().mapToLong(CountingInputStream::getCount).sum();
+  }
+
+  private long bytesWritten() {
+    return outputs.stream().mapToLong(CountingOutputStream::getCount).sum();
+  }
+
+  /**
+   * Writes an end of run report, as CSV if the file name ends with {@code .csv} and as JSON otherwise. The CSV report
+   * only holds one row per execution, while the JSON report also holds the run totals, the memoized function caches and
+   * term interning.
+   */
+  void writeReport(Path reportFile) {
+    try {
+      if (reportFile.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv")) {
+        writeCsvReport(reportFile);
+      } else {
+        writeJsonReport(reportFile);
+      }
+      log.info("Wrote mapping metrics to {}", reportFile);
+    } catch (IOException exception) {
+      throw new CarmlJarException(String.format("Could not write metrics report %s", reportFile), exception);
+    }
+  }
+
+  private void writeJsonReport(Path reportFile) throws IOException {
+    Map<String, Object> report = new LinkedHashMap<>();
+    report.put("wallTimeMillis", TimeUnit.NANOSECONDS.toMillis(elapsedNanos()));
+    report.put("statements", statements.sum());
+    report.put("bytesRead", bytesRead());
+    report.put("bytesWritten", bytesWritten());
+
+    List<Map<String, Object>> executionReports = new ArrayList<>();
+    for (ExecutionMetrics execution : executions) {
+      Map<String, Object> executionReport = new LinkedHashMap<>();
+      executionReport.put(unit.key, execution.name);
+      executionReport.put("statements", execution.statements);
+      executionReport.put("wallTimeMillis", TimeUnit.NANOSECONDS.toMillis(execution.wallNanos));
+      executionReport.put("cpuTimeMillis", TimeUnit.NANOSECONDS.toMillis(execution.cpuNanos));
+      executionReports.add(executionReport);
+    }
+    report.put(unit.key + "s", executionReports);
+
+    List<Map<String, Object>> functionReports = new ArrayList<>();
+    functionCaches.forEach((function, stats) -> {
+      Map<String, Object> functionReport = new LinkedHashMap<>();
+      functionReport.put("function", function);
+      functionReport.put("cacheHits", stats.hitCount());
+      functionReport.put("cacheMisses", stats.missCount());
+      functionReport.put("cacheEvictions", stats.evictionCount());
+      functionReports.add(functionReport);
+    });
+    if (!functionReports.isEmpty()) {
+      report.put("memoizedFunctions", functionReports);
+    }
+    if (termInterning != null) {
+      report.put("termInterning", termInterning);
+    }
+
+    new ObjectMapper()
+        .enable(SerializationFeature.INDENT_OUTPUT)
+        .writeValue(reportFile.toFile(), report);
+  }
+
+  private void writeCsvReport(Path reportFile) throws IOException {
+    try (Writer writer = Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8)) {
+      writer.write(unit.key + ",statements,wallTimeMillis,cpuTimeMillis\n");
+      for (ExecutionMetrics execution : executions) {
+        writer.write(String.format(Locale.ROOT, "\"%s\",%d,%d,%d%n", execution.name.replace("\"", "\"\""),
+            execution.statements, TimeUnit.NANOSECONDS.toMillis(execution.wallNanos),
+            TimeUnit.NANOSECONDS.toMillis(execution.cpuNanos)));
+      }
+    }
+  }
+
+  /**
+   * What is measured as a single execution, with the key it is reported under.
+   */
+  enum Unit {
+
+    TRIPLES_MAP("triplesMap", "triples maps"),
+
+    INPUT_FILE("inputFile", "input files"),
+
+    CHUNK("chunk", "chunks");
+
+    private final String key;
+
+    private final String description;
+
+    Unit(String key, String description) {
+      this.key = key;
+      this.description = description;
+    }
+  }
+
+  static class ExecutionMetrics {
+
+    final String name;
+
+    final long statements;
+
+    final long wallNanos;
+
+    final long cpuNanos;
+
+    private ExecutionMetrics(String name, long statements, long wallNanos, long cpuNanos) {
+      this.name = name;
+      this.statements = statements;
+      this.wallNanos = wallNanos;
+      this.cpuNanos = cpuNanos;
+    }
+  }
+
+  /**
+   * Measures the execution of a single triples map, input file or chunk on the current thread.
+   */
+  class Execution {
+
+    private final String name;
+
+    private final long startNanos = System.nanoTime();
+
+    private final long startCpuNanos = THREAD_MX_BEAN.getCurrentThreadCpuTime();
+
+    private final TriplesMapEvent event = new TriplesMapEvent();
+
+    private Execution(String name) {
+      this.name = name;
+      event.begin();
+    }
+
+    void finish(long statementCount) {
+      long wallNanos = System.nanoTime() - startNanos;
+      long cpuNanos = THREAD_MX_BEAN.getCurrentThreadCpuTime() - startCpuNanos;
+
+      executions.add(new ExecutionMetrics(name, statementCount, wallNanos, cpuNanos));
+      statements.add(statementCount);
+
+      event.end();
+      if (event.shouldCommit()) {
+        event.triplesMap = name;
+        event.statements = statementCount;
+        event.cpuTime = cpuNanos;
+        event.commit();
+      }
+    }
+  }
+
+  @Name("com.skemu.rdf.carml.TriplesMap")
+  @Label("Triples Map Execution")
+  @Category("CARML")
+  static class TriplesMapEvent extends Event {
+
+    @Label("Triples Map")
+    String triplesMap;
+
+    @Label("Statements")
+    long statements;
+
+    @Label("CPU Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long cpuTime;
+  }
+
+}
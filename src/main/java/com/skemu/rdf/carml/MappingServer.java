@@ -0,0 +1,306 @@
+package com.skemu.rdf.carml;
+
+import com.google.common.collect.ImmutableMap;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.taxonic.carml.engine.RmlMapper;
+import com.taxonic.carml.model.TriplesMap;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Namespace;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+
+/**
+ * HTTP service on the loopback interface that maps source data posted to {@code /mappings/<name>} with one of the
+ * mappings loaded at startup. The request body is bound as the mapper input stream, like the {@code -i} option, and
+ * the output is streamed back in the format given by the {@code format} query parameter or {@code Accept} header.
+ *
+ * <p>At most {@code maxConcurrent} requests are mapped at the same time. Requests that cannot start mapping within the
+ * queue timeout are rejected with {@code 503 Service Unavailable}.
+ *
+ * <p>Streamed output is produced per triples map partition, and every partition reads the source data again. Request
+ * bodies up to {@value #DEFAULT_BODY_MEMORY_LIMIT} bytes are kept in memory for that, larger bodies are spooled to a
+ * temporary file that is deleted when the request is done.
+ *
+ * <p>Streamed output is sent with status {@code 200} before mapping starts. When mapping fails after that, the
+ * connection is closed without ending the chunked response, so clients see a broken transfer instead of a complete
+ * response with truncated output.
+ */
+@Slf4j
+class MappingServer {
+
+  private static final String MAPPINGS_PATH = "/mappings";
+
+  private static final String FORMAT_PARAMETER = "format";
+
+  static final int DEFAULT_BODY_MEMORY_LIMIT = 16 << 20;
+
+  private final MapperFactory mapperFactory;
+
+  private final Map<String, Set<TriplesMap>> mappings;
+
+  private final Set<Namespace> namespaces;
+
+  private final RDFFormat defaultFormat;
+
+  private final int maxConcurrent;
+
+  private final long queueTimeoutMillis;
+
+  private final Semaphore mappingPermits;
+
+  private int bodyMemoryLimit = DEFAULT_BODY_MEMORY_LIMIT;
+
+  private HttpServer server;
+
+  private ExecutorService executor;
+
+  MappingServer(MapperFactory mapperFactory, Map<String, Set<TriplesMap>> mappings, Set<Namespace> namespaces,
+      RDFFormat defaultFormat, int maxConcurrent, long queueTimeoutMillis) {
+    this.mapperFactory = Objects.requireNonNull(mapperFactory);
+    this.mappings = ImmutableMap.copyOf(mappings);
+    this.namespaces = Objects.requireNonNull(namespaces);
+    this.defaultFormat = Objects.requireNonNull(defaultFormat);
+    this.maxConcurrent = maxConcurrent;
+    this.queueTimeoutMillis = queueTimeoutMillis;
+    this.mappingPermits = new Semaphore(maxConcurrent, true);
+  }
+
+  /**
+   * Spools request bodies of streamed output to a temporary file when they are larger than the given number of bytes.
+   */
+  MappingServer bodyMemoryLimit(int bodyMemoryLimit) {
+    this.bodyMemoryLimit = bodyMemoryLimit;
+    return this;
+  }
+
+  void start(int port) throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), maxConcurrent * 4);
+    // handler threads beyond the mapping permits only wait for a permit or reject the request
+    executor = Executors.newFixedThreadPool(maxConcurrent * 2);
+    server.setExecutor(executor);
+    server.createContext(MAPPINGS_PATH, this::handle);
+    server.start();
+
+    Runtime.getRuntime().addShutdownHook(new Thread(this::stop));
+    log.info("Serving mappings {} on http://{}:{}{}/<name>", mappings.keySet(),
+        server.getAddress().getHostString(), server.getAddress().getPort(), MAPPINGS_PATH);
+  }
+
+  int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  void stop() {
+    if (server != null) {
+      log.info("Stopping mapping server ...");
+      server.stop(1);
+      executor.shutdown();
+    }
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    boolean aborted = false;
+    try {
+      String path = exchange.getRequestURI().getPath();
+      if (path.equals(MAPPINGS_PATH) || path.equals(MAPPINGS_PATH + "/")) {
+        sendText(exchange, 200, String.join("\n", mappings.keySet()));
+        return;
+      }
+
+      if (!path.startsWith(MAPPINGS_PATH + "/")) {
+        sendText(exchange, 404, String.format("Unknown path '%s'", path));
+        return;
+      }
+
+      if (!exchange.getRequestMethod().equals("POST")) {
+        exchange.getResponseHeaders().set("Allow", "POST");
+        sendText(exchange, 405, "Source data should be posted to the mapping");
+        return;
+      }
+
+      String name = path.substring(MAPPINGS_PATH.length() + 1);
+      Set<TriplesMap> mapping = mappings.get(name);
+      if (mapping == null) {
+        sendText(exchange, 404, String.format("Unknown mapping '%s'", name));
+        return;
+      }
+
+      Optional<RDFFormat> format = determineFormat(exchange);
+      if (format.isEmpty()) {
+        sendText(exchange, 406, "Unsupported output format");
+        return;
+      }
+
+      if (!mappingPermits.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS)) {
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        sendText(exchange, 503, "Too many concurrent mapping requests");
+        return;
+      }
+
+      try {
+        map(exchange, mapping, format.get());
+      } finally {
+        mappingPermits.release();
+      }
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+    } catch (RuntimeException exception) {
+      log.error(String.format("Failed to handle request %s", exchange.getRequestURI()), exception);
+      if (exchange.getResponseCode() < 0) {
+        sendText(exchange, 500, exception.getMessage());
+      } else {
+        // closing the exchange would end the response, the server closes the connection instead
+        aborted = true;
+        throw new IOException(String.format("Aborted response to %s", exchange.getRequestURI()), exception);
+      }
+    } finally {
+      if (!aborted) {
+        exchange.close();
+      }
+    }
+  }
+
+  private void map(HttpExchange exchange, Set<TriplesMap> mapping, RDFFormat format) throws IOException {
+    RmlMapper mapper = mapperFactory.create();
+    try (InputStream body = exchange.getRequestBody()) {
+      exchange.getResponseHeaders().set("Content-Type", format.getDefaultMIMEType());
+      if (StreamingMapper.supportsFormat(format)) {
+        try (SpooledBody input = SpooledBody.read(body, bodyMemoryLimit)) {
+          exchange.sendResponseHeaders(200, 0);
+          // only closed when mapping succeeds, as closing ends the response
+          OutputStream out = OutputStreams.buffered(exchange.getResponseBody());
+          StreamingMapper.map(mapper, input, mapping, namespaces, Rio.createWriter(format, out));
+          out.close();
+        }
+      } else {
+        Model model = InputSource.map(mapper, () -> body, mapping);
+        namespaces.forEach(model::setNamespace);
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = OutputStreams.buffered(exchange.getResponseBody());
+        CarmlRunner.writeRdf(model, format, out);
+        out.close();
+      }
+    }
+  }
+
+  private Optional<RDFFormat> determineFormat(HttpExchange exchange) {
+    Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+    if (parameters.containsKey(FORMAT_PARAMETER)) {
+      return CarmlRunner.determineRdfFormat(parameters.get(FORMAT_PARAMETER));
+    }
+
+    String accept = exchange.getRequestHeaders().getFirst("Accept");
+    if (accept == null) {
+      return Optional.of(defaultFormat);
+    }
+
+    return Arrays.stream(accept.split(","))
+        .map(mediaRange -> mediaRange.split(";")[0].trim())
+        .map(mediaType -> mediaType.equals("*/*") ? Optional.of(defaultFormat)
+            : Rio.getWriterFormatForMIMEType(mediaType))
+        .flatMap(Optional::stream)
+        .findFirst();
+  }
+
+  private static Map<String, String> parseQuery(String query) {
+    if (query == null || query.isEmpty()) {
+      return ImmutableMap.of();
+    }
+
+    return Arrays.stream(query.split("&"))
+        .map(parameter -> parameter.split("=", 2))
+        .filter(parameter -> parameter.length == 2)
+        .collect(Collectors.toMap(parameter -> decode(parameter[0]), parameter -> decode(parameter[1]),
+            (first, second) -> first));
+  }
+
+  private static String decode(String value) {
+    return URLDecoder.decode(value, StandardCharsets.UTF_8);
+  }
+
+  private static void sendText(HttpExchange exchange, int status, String message) throws IOException {
+    byte[] body = Optional.ofNullable(message)
+        .map(text -> text.getBytes(StandardCharsets.UTF_8))
+        .orElseGet(() -> new byte[0]);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+    exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+    if (body.length > 0) {
+      exchange.getResponseBody().write(body);
+    }
+  }
+
+  static String mappingName(Path mappingPath) {
+    String fileName = mappingPath.getFileName().toString();
+    int extensionIndex = fileName.indexOf('.');
+    return extensionIndex > 0 ? fileName.substring(0, extensionIndex) : fileName;
+  }
+
+  /**
+   * A request body that can be read once for every triples map partition, kept in memory or in a temporary file.
+   */
+  private static class SpooledBody implements InputSource, Closeable {
+
+    private final InputSource source;
+
+    private final Path file;
+
+    private SpooledBody(InputSource source, Path file) {
+      this.source = source;
+      this.file = file;
+    }
+
+    static SpooledBody read(InputStream body, int memoryLimit) throws IOException {
+      byte[] head = body.readNBytes(memoryLimit + 1);
+      if (head.length <= memoryLimit) {
+        return new SpooledBody(InputSource.bytes(head), null);
+      }
+
+      Path file = Files.createTempFile("carml-request", ".tmp");
+      try (OutputStream out = OutputStreams.file(file, OutputStreams.DEFAULT_BUFFER_SIZE, 1)) {
+        out.write(head);
+        body.transferTo(out);
+      } catch (IOException | RuntimeException exception) {
+        Files.deleteIfExists(file);
+        throw exception;
+      }
+      log.debug("Spooled request body of {} bytes to {}", Files.size(file), file);
+      return new SpooledBody(() -> InputStreams.file(file), file);
+    }
+
+    @Override
+    public InputStream open() throws IOException {
+      return source.open();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (file != null) {
+        Files.deleteIfExists(file);
+      }
+    }
+
+  }
+
+}
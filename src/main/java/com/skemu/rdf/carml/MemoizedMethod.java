@@ -0,0 +1,62 @@
+package com.skemu.rdf.carml;
+
+import com.google.common.cache.Cache;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Invokes a transformation function on its original instance, caching the results by argument values if a cache is
+ * set. Called from the classes generated by {@link FunctionMemoizer}, which are defined in another class loader, so
+ * this class has to be public.
+ */
+public final class MemoizedMethod {
+
+  private final Object function;
+
+  private final Method method;
+
+  private final Cache<List<Object>, Optional<Object>> cache;
+
+  MemoizedMethod(Object function, Method method, Cache<List<Object>, Optional<Object>> cache) {
+    this.function = Objects.requireNonNull(function);
+    this.method = Objects.requireNonNull(method);
+    this.cache = cache;
+  }
+
+  public Object invoke(Object[] arguments) {
+    if (cache == null) {
+      return invokeFunction(arguments);
+    }
+
+    List<Object> key = Arrays.asList(arguments);
+    Optional<Object> result = cache.getIfPresent(key);
+    if (result == null) {
+      // pure functions may be computed twice by concurrent callers, which is cheaper than locking
+      result = Optional.ofNullable(invokeFunction(arguments));
+      cache.put(key, result);
+    }
+    return result.orElse(null);
+  }
+
+  private Object invokeFunction(Object[] arguments) {
+    try {
+      return method.invoke(function, arguments);
+    } catch (InvocationTargetException exception) {
+      Throwable cause = exception.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new CarmlJarException(String.format("Function %s failed", method), cause);
+    } catch (IllegalAccessException exception) {
+      throw new CarmlJarException(String.format("Could not invoke function %s", method), exception);
+    }
+  }
+
+}
@@ -0,0 +1,85 @@
+package com.skemu.rdf.carml;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A set of 128-bit fingerprints in direct memory outside of the heap, using open addressing with linear probing. The
+ * capacity is fixed when the set is created, so its memory use never grows.
+ */
+class OffHeapFingerprintSet {
+
+  private static final int SLOT_SIZE = 16;
+
+  private static final int SEGMENT_SLOT_BITS = 26;
+
+  private static final long MAX_LOAD_FACTOR_PERCENT = 75;
+
+  private final ByteBuffer[] segments;
+
+  private final long slotMask;
+
+  private final long maxSize;
+
+  private long size;
+
+  /**
+   * Creates a set using at most {@code memoryBudget} bytes of direct memory.
+   */
+  OffHeapFingerprintSet(long memoryBudget) {
+    long slots = Long.highestOneBit(Math.max(memoryBudget / SLOT_SIZE, 2));
+    slotMask = slots - 1;
+    maxSize = slots * MAX_LOAD_FACTOR_PERCENT / 100;
+
+    long segmentSlots = 1L << SEGMENT_SLOT_BITS;
+    int segmentCount = (int) Math.max(slots / segmentSlots, 1);
+    segments = new ByteBuffer[segmentCount];
+    for (int i = 0; i < segmentCount; i++) {
+      segments[i] = ByteBuffer.allocateDirect((int) (Math.min(slots, segmentSlots) * SLOT_SIZE));
+    }
+  }
+
+  /**
+   * Adds a fingerprint, returning {@code false} if it was already present.
+   *
+   * @throws CarmlJarException if the set is full
+   */
+  boolean add(long high, long low) {
+    // the all zero fingerprint marks empty slots
+    if (high == 0 && low == 0) {
+      low = 1;
+    }
+
+    for (long slot = mix(high ^ low) & slotMask; ; slot = (slot + 1) & slotMask) {
+      ByteBuffer segment = segments[(int) (slot >>> SEGMENT_SLOT_BITS)];
+      int offset = (int) (slot & ((1L << SEGMENT_SLOT_BITS) - 1)) * SLOT_SIZE;
+      long slotHigh = segment.getLong(offset);
+      long slotLow = segment.getLong(offset + 8);
+
+      if (slotHigh == high && slotLow == low) {
+        return false;
+      }
+      if (slotHigh == 0 && slotLow == 0) {
+        if (size >= maxSize) {
+          throw new CarmlJarException(String.format("Deduplication exceeded its memory budget after %d distinct " +
+              "statements. Increase the budget or use the sort strategy.", size));
+        }
+        segment.putLong(offset, high);
+        segment.putLong(offset + 8, low);
+        size++;
+        return true;
+      }
+    }
+  }
+
+  long size() {
+    return size;
+  }
+
+  private static long mix(long value) {
+    value ^= value >>> 33;
+    value *= 0xff51afd7ed558ccdL;
+    value ^= value >>> 33;
+    return value;
+  }
+
+}
@@ -0,0 +1,72 @@
+package com.skemu.rdf.carml;
+
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+class OutputStreams {
+
+  static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+  private OutputStreams() {
+  }
+
+  static OutputStream buffered(OutputStream out) {
+    return new BufferedOutputStream(out, DEFAULT_BUFFER_SIZE);
+  }
+
+  static OutputStream file(Path path, int bufferSize) throws IOException {
+    return file(path, bufferSize, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Opens a buffered stream on a file. When the file name has a {@link Compression} extension, the output is
+   * compressed in blocks on the given number of threads.
+   */
+  static OutputStream file(Path path, int bufferSize, int threads) throws IOException {
+    return compressed(Files.newOutputStream(path), path.getFileName().toString(), bufferSize, threads);
+  }
+
+  /**
+   * Buffers a stream that is opened for a file with the given name, compressing it as {@link #file(Path, int, int)}
+   * does.
+   *
+   * <p>Files that are written concurrently with others, such as batch output files and shard partitions, are
+   * compressed with a single thread, on the thread writing them. Compressing each of them on all threads as well would
+   * start as many compression threads as the square of the thread count.
+   */
+  static OutputStream compressed(OutputStream out, String fileName, int bufferSize, int threads) throws IOException {
+    Optional<Compression> compression = Compression.forFileName(fileName);
+    if (!compression.isPresent()) {
+      return new BufferedOutputStream(out, bufferSize);
+    }
+
+    if (threads <= 1) {
+      return new BufferedOutputStream(compression.get().compress(new BufferedOutputStream(out, bufferSize)),
+          bufferSize);
+    }
+    return new BufferedOutputStream(new ParallelCompressingOutputStream(out, compression.get(), threads), bufferSize);
+  }
+
+  /**
+   * Opens a buffered stream directly on the standard output file descriptor, bypassing the character encoding and
+   * line flushing of {@link System#out}. Closing the returned stream only flushes it, so standard output stays usable
+   * for logging afterwards.
+   */
+  static OutputStream console(int bufferSize) {
+    System.out.flush();
+    return new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), bufferSize) {
+
+      @Override
+      public void close() throws IOException {
+        flush();
+      }
+    };
+  }
+
+}
@@ -0,0 +1,157 @@
+package com.skemu.rdf.carml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compresses a stream in fixed size blocks on a pool of threads. Every block is compressed as a self-contained member
+ * of the {@link Compression} format and the members are written in order, so the output is a regular compressed file
+ * that decompresses to the original stream.
+ *
+ * <p>{@link #flush()} writes the blocks that are already complete, the block being filled is only written when it is
+ * full or the stream is closed.
+ */
+class ParallelCompressingOutputStream extends OutputStream {
+
+  static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+  private final OutputStream out;
+
+  private final Compression compression;
+
+  private final ExecutorService executor;
+
+  private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+
+  private final int maxPending;
+
+  private final int blockSize;
+
+  private byte[] block;
+
+  private int count;
+
+  private boolean blockWritten;
+
+  private boolean closed;
+
+  ParallelCompressingOutputStream(OutputStream out, Compression compression, int threads) {
+    this(out, compression, threads, DEFAULT_BLOCK_SIZE);
+  }
+
+  ParallelCompressingOutputStream(OutputStream out, Compression compression, int threads, int blockSize) {
+    this.out = Objects.requireNonNull(out);
+    this.compression = Objects.requireNonNull(compression);
+    this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, "compression");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.maxPending = threads * 2;
+    this.blockSize = blockSize;
+    this.block = new byte[blockSize];
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    ensureOpen();
+    if (count == blockSize) {
+      submitBlock();
+    }
+    block[count++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    Objects.checkFromIndexSize(off, len, b.length);
+    ensureOpen();
+    while (len > 0) {
+      if (count == blockSize) {
+        submitBlock();
+      }
+      int length = Math.min(len, blockSize - count);
+      System.arraycopy(b, off, block, count, length);
+      count += length;
+      off += length;
+      len -= length;
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    ensureOpen();
+    while (!pending.isEmpty()) {
+      writeNext();
+    }
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+
+    try {
+      // an empty stream still gets one member, as empty files are not valid for every format
+      if (count > 0 || !blockWritten) {
+        submitBlock();
+      }
+      while (!pending.isEmpty()) {
+        writeNext();
+      }
+    } finally {
+      closed = true;
+      executor.shutdownNow();
+      out.close();
+    }
+  }
+
+  private void submitBlock() throws IOException {
+    byte[] data = block;
+    int length = count;
+    pending.add(executor.submit(() -> compress(data, length)));
+    blockWritten = true;
+    block = new byte[blockSize];
+    count = 0;
+
+    while (pending.size() > maxPending) {
+      writeNext();
+    }
+  }
+
+  private byte[] compress(byte[] data, int length) throws IOException {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+    try (OutputStream compressing = compression.compress(compressed)) {
+      compressing.write(data, 0, length);
+    }
+    return compressed.toByteArray();
+  }
+
+  private void writeNext() throws IOException {
+    try {
+      out.write(pending.remove().get());
+    } catch (ExecutionException exception) {
+      throw new IOException("Failed to compress block", exception.getCause());
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while compressing");
+    }
+  }
+
+  private void ensureOpen() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+  }
+
+}
@@ -0,0 +1,231 @@
+package com.skemu.rdf.carml;
+
+import com.google.common.collect.ImmutableSet;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandler;
+import org.eclipse.rdf4j.rio.RDFWriter;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+
+/**
+ * Decouples mapping from serialization. Statements are collected in batches on the mapping threads and handed to a
+ * writer thread through a bounded queue, which blocks the mapping threads when serialization falls behind.
+ *
+ * <p>For line based formats, batches are additionally serialized concurrently on a pool of serializer threads, as
+ * every batch can be serialized on its own. The writer thread then only writes the serialized batches in order.
+ */
+class PipelinedRdfHandler extends AbstractRDFHandler {
+
+  private static final Set<RDFFormat> LINE_BASED_FORMATS = ImmutableSet.of(RDFFormat.NTRIPLES, RDFFormat.NQUADS);
+
+  private static final Object END = new Object();
+
+  private final RDFHandler handler;
+
+  private final OutputStream out;
+
+  private final RDFFormat format;
+
+  private final int serializerThreads;
+
+  private final int batchSize;
+
+  private final BlockingQueue<Object> queue;
+
+  private List<Statement> batch;
+
+  private ExecutorService serializers;
+
+  private Thread writer;
+
+  private volatile Throwable failure;
+
+  private PipelinedRdfHandler(RDFHandler handler, OutputStream out, RDFFormat format, int serializerThreads,
+      int batchSize, int queueCapacity) {
+    this.handler = handler;
+    this.out = out;
+    this.format = format;
+    this.serializerThreads = serializerThreads;
+    this.batchSize = batchSize;
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+  }
+
+  /**
+   * Hands batches of statements to {@code handler} on a writer thread.
+   */
+  static PipelinedRdfHandler forwarding(RDFHandler handler, int batchSize, int queueCapacity) {
+    return new PipelinedRdfHandler(Objects.requireNonNull(handler), null, null, 0, batchSize, queueCapacity);
+  }
+
+  /**
+   * Serializes batches of statements in a line based format on {@code serializerThreads} threads, and writes them to
+   * {@code out} in order on a writer thread.
+   */
+  static PipelinedRdfHandler serializing(OutputStream out, RDFFormat format, int serializerThreads, int batchSize,
+      int queueCapacity) {
+    if (!supportsSerializing(format)) {
+      throw new IllegalArgumentException(String.format("Format %s is not line based", format.getName()));
+    }
+    return new PipelinedRdfHandler(null, Objects.requireNonNull(out), format, serializerThreads, batchSize,
+        queueCapacity);
+  }
+
+  static boolean supportsSerializing(RDFFormat format) {
+    return LINE_BASED_FORMATS.contains(format);
+  }
+
+  @Override
+  public void startRDF() {
+    batch = new ArrayList<>(batchSize);
+    failure = null;
+    if (handler != null) {
+      handler.startRDF();
+    } else {
+      serializers = Executors.newFixedThreadPool(serializerThreads, runnable -> {
+        Thread thread = new Thread(runnable, "serializer");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+
+    writer = new Thread(this::writeBatches, "output-writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  @Override
+  public synchronized void handleNamespace(String prefix, String uri) {
+    // namespaces are not written in line based formats, and are handed on in order otherwise
+    if (handler != null) {
+      flushBatch();
+      enqueue(new Namespace(prefix, uri));
+    }
+  }
+
+  @Override
+  public synchronized void handleStatement(Statement statement) {
+    batch.add(statement);
+    if (batch.size() >= batchSize) {
+      flushBatch();
+    }
+  }
+
+  private void flushBatch() {
+    if (batch.isEmpty()) {
+      return;
+    }
+
+    List<Statement> statements = batch;
+    batch = new ArrayList<>(batchSize);
+    enqueue(serializers != null
+        ? serializers.submit(() -> serialize(statements))
+        : CompletableFuture.completedFuture(statements));
+  }
+
+  private void enqueue(Object item) {
+    try {
+      // blocks while the queue is full, until the writer catches up
+      while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+        checkFailure();
+      }
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new CarmlJarException("Interrupted while writing output", exception);
+    }
+    checkFailure();
+  }
+
+  private byte[] serialize(List<Statement> statements) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(statements.size() * 128);
+    RDFWriter rdfWriter = Rio.createWriter(format, bytes);
+    rdfWriter.startRDF();
+    statements.forEach(rdfWriter::handleStatement);
+    rdfWriter.endRDF();
+    return bytes.toByteArray();
+  }
+
+  @SuppressWarnings("unchecked")
+  private void writeBatches() {
+    try {
+      Object item;
+      while ((item = queue.take()) != END) {
+        if (item instanceof Namespace) {
+          Namespace namespace = (Namespace) item;
+          handler.handleNamespace(namespace.prefix, namespace.uri);
+        } else if (handler != null) {
+          ((Future<List<Statement>>) item).get().forEach(handler::handleStatement);
+        } else {
+          out.write(((Future<byte[]>) item).get());
+        }
+      }
+    } catch (ExecutionException exception) {
+      failure = exception.getCause();
+    } catch (InterruptedException exception) {
+      failure = exception;
+      Thread.currentThread().interrupt();
+    } catch (IOException | RuntimeException exception) {
+      failure = exception;
+    }
+
+    if (failure != null) {
+      // unblock the mapping threads, which will see the failure
+      queue.clear();
+    }
+  }
+
+  @Override
+  public synchronized void endRDF() {
+    try {
+      flushBatch();
+      enqueue(END);
+      writer.join();
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new CarmlJarException("Interrupted while writing output", exception);
+    } finally {
+      if (serializers != null) {
+        serializers.shutdownNow();
+      }
+    }
+
+    checkFailure();
+    if (handler != null) {
+      handler.endRDF();
+    }
+  }
+
+  private void checkFailure() {
+    if (failure != null) {
+      throw new CarmlJarException("Failed to write output", failure);
+    }
+  }
+
+  private static class Namespace {
+
+    private final String prefix;
+
+    private final String uri;
+
+    Namespace(String prefix, String uri) {
+      this.prefix = prefix;
+      this.uri = uri;
+    }
+  }
+
+}
@@ -0,0 +1,124 @@
+package com.skemu.rdf.carml;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import org.eclipse.rdf4j.model.Namespace;
+import org.eclipse.rdf4j.model.impl.SimpleNamespace;
+
+/**
+ * Index of the namespace prefixes declared in a JSON-LD context. Each context is read once per process and shared, and
+ * supports constant time lookup by prefix.
+ */
+class PrefixRegistry {
+
+  private static final String DEFAULT_CONTEXT = "prefix.cc.context.ld.json";
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private static final Map<Path, PrefixRegistry> FILE_REGISTRIES = new ConcurrentHashMap<>();
+
+  private final Map<String, Namespace> namespaceByPrefix;
+
+  private PrefixRegistry(Map<String, String> prefixes) {
+    Map<String, Namespace> byPrefix = new LinkedHashMap<>();
+    prefixes.forEach((prefix, name) -> byPrefix.put(prefix, new SimpleNamespace(prefix, name)));
+    this.namespaceByPrefix = ImmutableMap.copyOf(byPrefix);
+  }
+
+  static PrefixRegistry getDefault() {
+    return DefaultRegistryHolder.INSTANCE;
+  }
+
+  static PrefixRegistry forFile(File file) {
+    return FILE_REGISTRIES.computeIfAbsent(file.toPath().toAbsolutePath().normalize(), path -> {
+      try (InputStream is = Files.newInputStream(path)) {
+        return new PrefixRegistry(readContext(is));
+      } catch (IOException exception) {
+        throw new CarmlJarException(String.format("Could not read JSON-LD context file %s", path), exception);
+      }
+    });
+  }
+
+  Optional<Namespace> getNamespace(String prefix) {
+    return Optional.ofNullable(namespaceByPrefix.get(prefix));
+  }
+
+  /**
+   * Returns the namespaces for the selected prefixes, or all namespaces if no prefixes are selected. Unknown prefixes
+   * are ignored.
+   */
+  Set<Namespace> getNamespaces(String... selectedPrefixes) {
+    if (selectedPrefixes.length == 0) {
+      return ImmutableSet.copyOf(namespaceByPrefix.values());
+    }
+
+    return Arrays.stream(selectedPrefixes)
+        .map(namespaceByPrefix::get)
+        .filter(Objects::nonNull)
+        .collect(Collectors.toSet());
+  }
+
+  int size() {
+    return namespaceByPrefix.size();
+  }
+
+  /**
+   * Streams the string valued entries of the top level {@code @context} object, without building a JSON tree.
+   */
+  private static Map<String, String> readContext(InputStream inputStream) throws IOException {
+    Map<String, String> prefixes = new LinkedHashMap<>();
+    try (JsonParser parser = JSON_FACTORY.createParser(inputStream)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("JSON-LD context document should be a JSON object");
+      }
+
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        JsonToken value = parser.nextToken();
+        if (field.equals("@context") && value == JsonToken.START_OBJECT) {
+          while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String prefix = parser.getCurrentName();
+            if (parser.nextToken() == JsonToken.VALUE_STRING) {
+              prefixes.put(prefix, parser.getText());
+            } else {
+              parser.skipChildren();
+            }
+          }
+        } else {
+          parser.skipChildren();
+        }
+      }
+    }
+    return prefixes;
+  }
+
+  private static class DefaultRegistryHolder {
+
+    private static final PrefixRegistry INSTANCE = loadDefault();
+
+    private static PrefixRegistry loadDefault() {
+      try (InputStream is = PrefixRegistry.class.getResourceAsStream(DEFAULT_CONTEXT)) {
+        return new PrefixRegistry(readContext(is));
+      } catch (IOException exception) {
+        throw new CarmlJarException("Could not read default JSON-LD context", exception);
+      }
+    }
+  }
+
+}
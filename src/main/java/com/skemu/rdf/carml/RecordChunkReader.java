@@ -0,0 +1,129 @@
+package com.skemu.rdf.carml;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Splits a line oriented source into chunks of whole records, each of which is a valid source on its own. CSV chunks
+ * start with the header record of the source. JSON lines chunks are JSON arrays of the records in the chunk.
+ */
+class RecordChunkReader implements Closeable {
+
+  enum Format {
+    CSV,
+    JSON_LINES;
+
+    static Optional<Format> forFileName(String fileName) {
+      String lowerCaseFileName = fileName.toLowerCase(Locale.ROOT);
+      if (lowerCaseFileName.endsWith(".csv")) {
+        return Optional.of(CSV);
+      }
+      if (lowerCaseFileName.endsWith(".jsonl") || lowerCaseFileName.endsWith(".ndjson")) {
+        return Optional.of(JSON_LINES);
+      }
+      return Optional.empty();
+    }
+  }
+
+  private final BufferedReader reader;
+
+  private final Format format;
+
+  private final int recordsPerChunk;
+
+  private String csvHeader;
+
+  RecordChunkReader(InputStream inputStream, Format format, int recordsPerChunk) {
+    if (recordsPerChunk < 1) {
+      throw new IllegalArgumentException("Chunks should contain at least one record");
+    }
+    this.reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+    this.format = format;
+    this.recordsPerChunk = recordsPerChunk;
+  }
+
+  /**
+   * Reads the next chunk, or returns {@code null} when the source is exhausted.
+   */
+  byte[] next() throws IOException {
+    return format == Format.CSV ? nextCsvChunk() : nextJsonLinesChunk();
+  }
+
+  private byte[] nextCsvChunk() throws IOException {
+    if (csvHeader == null) {
+      csvHeader = readCsvRecord();
+      if (csvHeader == null) {
+        return null;
+      }
+    }
+
+    StringBuilder chunk = new StringBuilder(csvHeader);
+    int records = 0;
+    String record;
+    while (records < recordsPerChunk && (record = readCsvRecord()) != null) {
+      chunk.append(record);
+      records++;
+    }
+
+    return records == 0 ? null : chunk.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Reads a CSV record including its line terminator. A record continues on the next line as long as it contains an
+   * unbalanced number of quotes, i.e. a quoted field contains a line break.
+   */
+  private String readCsvRecord() throws IOException {
+    String line = reader.readLine();
+    if (line == null) {
+      return null;
+    }
+
+    StringBuilder record = new StringBuilder(line).append('\n');
+    int quotes = countQuotes(line);
+    while (quotes % 2 != 0 && (line = reader.readLine()) != null) {
+      record.append(line).append('\n');
+      quotes += countQuotes(line);
+    }
+    return record.toString();
+  }
+
+  private static int countQuotes(String line) {
+    int quotes = 0;
+    for (int i = 0; i < line.length(); i++) {
+      if (line.charAt(i) == '"') {
+        quotes++;
+      }
+    }
+    return quotes;
+  }
+
+  private byte[] nextJsonLinesChunk() throws IOException {
+    StringBuilder chunk = new StringBuilder("[");
+    int records = 0;
+    String line;
+    while (records < recordsPerChunk && (line = reader.readLine()) != null) {
+      if (line.trim().isEmpty()) {
+        continue;
+      }
+      if (records > 0) {
+        chunk.append(",\n");
+      }
+      chunk.append(line);
+      records++;
+    }
+
+    return records == 0 ? null : chunk.append(']').toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+
+}
@@ -0,0 +1,249 @@
+package com.skemu.rdf.carml;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+import org.eclipse.rdf4j.sail.Sail;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.eclipse.rdf4j.sail.nativerdf.NativeStore;
+
+/**
+ * Loads statements directly into a local RDF4J store, instead of writing them to a file that has to be parsed again
+ * to load it. Statements are added in large transactions that are committed on a background thread, while the next
+ * batch is being collected.
+ *
+ * <p>A native store can be loaded with a single triple index, and have its other indexes built once after the load,
+ * which is faster than maintaining all indexes during the load.
+ *
+ * <p>A handler that is closed before the load ended, because mapping failed, rolls back the transaction in progress and
+ * shuts the store down, so its lock is released.
+ */
+@Slf4j
+class RepositoryRdfHandler extends AbstractRDFHandler implements Closeable {
+
+  private static final String LOAD_TRIPLE_INDEXES = "spoc";
+
+  private static final int MAX_PENDING_COMMITS = 2;
+
+  enum StoreType {
+    NATIVE,
+    MEMORY
+  }
+
+  private final Path dataDirectory;
+
+  private final StoreType storeType;
+
+  private final int batchSize;
+
+  private String tripleIndexes;
+
+  private Resource context;
+
+  private final Map<String, String> namespaces = new LinkedHashMap<>();
+
+  private final Deque<Future<?>> pendingCommits = new ArrayDeque<>();
+
+  private List<Statement> batch;
+
+  private Repository repository;
+
+  private RepositoryConnection connection;
+
+  private ExecutorService committer;
+
+  private long statements;
+
+  RepositoryRdfHandler(Path dataDirectory, StoreType storeType, int batchSize) {
+    this.dataDirectory = Objects.requireNonNull(dataDirectory);
+    this.storeType = Objects.requireNonNull(storeType);
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Builds the given triple indexes of a native store after the load, e.g. {@code spoc,posc,cosp}.
+   */
+  RepositoryRdfHandler indexAfterLoad(String tripleIndexes) {
+    this.tripleIndexes = tripleIndexes;
+    return this;
+  }
+
+  /**
+   * Loads all statements into the given named graph, instead of the graph they were mapped to.
+   */
+  RepositoryRdfHandler loadInto(Resource context) {
+    this.context = context;
+    return this;
+  }
+
+  @Override
+  public void startRDF() {
+    log.info("Loading output into {} store {} ...", storeType.name().toLowerCase(Locale.ROOT), dataDirectory);
+    repository = new SailRepository(createStore(tripleIndexes != null ? LOAD_TRIPLE_INDEXES : null));
+    repository.init();
+
+    // all connection operations happen on the committer thread, as connections are not thread-safe
+    committer = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "repository-committer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    batch = new ArrayList<>(batchSize);
+    statements = 0;
+  }
+
+  private Sail createStore(String loadTripleIndexes) {
+    switch (storeType) {
+      case MEMORY:
+        MemoryStore memoryStore = new MemoryStore(dataDirectory.toFile());
+        memoryStore.setPersist(true);
+        return memoryStore;
+      case NATIVE:
+      default:
+        NativeStore nativeStore = loadTripleIndexes != null
+            ? new NativeStore(dataDirectory.toFile(), loadTripleIndexes)
+            : new NativeStore(dataDirectory.toFile());
+        // the store is synced when it is shut down, a failed load has to be redone anyway
+        nativeStore.setForceSync(false);
+        return nativeStore;
+    }
+  }
+
+  @Override
+  public void handleNamespace(String prefix, String uri) {
+    namespaces.put(prefix, uri);
+  }
+
+  @Override
+  public void handleStatement(Statement statement) {
+    batch.add(statement);
+    if (batch.size() >= batchSize) {
+      commitBatch();
+    }
+  }
+
+  private void commitBatch() {
+    List<Statement> statementsToCommit = batch;
+    Map<String, String> namespacesToCommit = new LinkedHashMap<>(namespaces);
+    namespaces.clear();
+    batch = new ArrayList<>(batchSize);
+
+    while (pendingCommits.size() >= MAX_PENDING_COMMITS) {
+      awaitCommit(pendingCommits.remove());
+    }
+    pendingCommits.add(committer.submit(() -> commit(statementsToCommit, namespacesToCommit)));
+    statements += statementsToCommit.size();
+  }
+
+  private void commit(List<Statement> statementsToCommit, Map<String, String> namespacesToCommit) {
+    if (connection == null) {
+      connection = repository.getConnection();
+    }
+
+    connection.begin();
+    try {
+      namespacesToCommit.forEach(connection::setNamespace);
+      if (context != null) {
+        connection.add(statementsToCommit, context);
+      } else {
+        connection.add(statementsToCommit);
+      }
+      connection.commit();
+    } finally {
+      if (connection.isActive()) {
+        connection.rollback();
+      }
+    }
+    log.debug("Committed {} statements to {}", statementsToCommit.size(), dataDirectory);
+  }
+
+  private void awaitCommit(Future<?> commit) {
+    try {
+      commit.get();
+    } catch (ExecutionException exception) {
+      throw new CarmlJarException(String.format("Failed to load statements into %s", dataDirectory),
+          exception.getCause());
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new CarmlJarException(String.format("Interrupted while loading statements into %s", dataDirectory),
+          exception);
+    }
+  }
+
+  @Override
+  public void endRDF() {
+    try {
+      if (!batch.isEmpty() || !namespaces.isEmpty()) {
+        commitBatch();
+      }
+      while (!pendingCommits.isEmpty()) {
+        awaitCommit(pendingCommits.remove());
+      }
+      awaitCommit(committer.submit(() -> {
+        if (connection != null) {
+          connection.close();
+        }
+      }));
+    } finally {
+      committer.shutdownNow();
+      repository.shutDown();
+    }
+    log.info("Loaded {} statements into {}", statements, dataDirectory);
+
+    if (tripleIndexes != null && storeType == StoreType.NATIVE) {
+      // a native store rebuilds its indexes when it is opened with different ones
+      log.info("Building triple indexes {} ...", tripleIndexes);
+      Repository indexedRepository = new SailRepository(createStore(tripleIndexes));
+      indexedRepository.init();
+      indexedRepository.shutDown();
+    }
+  }
+
+  /**
+   * Rolls back the transaction in progress, stops the committer and shuts the store down, if the handler did not end
+   * normally.
+   */
+  @Override
+  public void close() {
+    if (committer == null || committer.isShutdown()) {
+      return;
+    }
+
+    pendingCommits.forEach(commit -> commit.cancel(false));
+    pendingCommits.clear();
+    try {
+      awaitCommit(committer.submit(() -> {
+        if (connection != null) {
+          if (connection.isActive()) {
+            connection.rollback();
+          }
+          connection.close();
+        }
+      }));
+    } catch (CarmlJarException exception) {
+      log.warn(String.format("Could not roll back loading statements into %s", dataDirectory), exception.getCause());
+    } finally {
+      committer.shutdownNow();
+      repository.shutDown();
+    }
+  }
+
+}
@@ -0,0 +1,457 @@
+package com.skemu.rdf.carml;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingOutputStream;
+import com.google.common.io.CountingOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFWriter;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+
+/**
+ * Writes statements to a directory of shard files instead of a single output file. Statements are partitioned by
+ * named graph or by a hash of their subject, and a partition is rotated to a new shard file once it reaches a maximum
+ * number of statements or bytes. Partitions are written concurrently on a pool of writer threads, while the
+ * statements of one partition are written in the order they are handled.
+ *
+ * <p>At most {@value #MAX_OPEN_SHARDS} shards are open at the same time. When more partitions are written, the shard of
+ * the partition written least recently is closed, and the partition continues in a new shard file.
+ *
+ * <p>When all statements are written, a {@value #MANIFEST_FILE_NAME} file is written listing every shard with its
+ * partition, number of statements, size and SHA-256 checksum. A handler that is closed before that, because mapping
+ * failed, stops its writer threads and closes its shards without writing a manifest.
+ */
+@Slf4j
+class ShardedRdfHandler extends AbstractRDFHandler implements Closeable {
+
+  static final String MANIFEST_FILE_NAME = "manifest.json";
+
+  static final int MAX_OPEN_SHARDS = 128;
+
+  private static final int BATCH_SIZE = 1000;
+
+  private static final HashFunction SUBJECT_HASH = Hashing.murmur3_32();
+
+  enum Partitioning {
+    NONE,
+    GRAPH,
+    SUBJECT
+  }
+
+  private final Path directory;
+
+  private final RDFFormat format;
+
+  private final int threads;
+
+  private Partitioning partitioning = Partitioning.NONE;
+
+  private int subjectPartitions = 1;
+
+  private long maxStatements = Long.MAX_VALUE;
+
+  private long maxBytes = Long.MAX_VALUE;
+
+  private Compression compression;
+
+  // replaced instead of modified, as shards are opened on the writer threads
+  private volatile Map<String, String> namespaces = Collections.emptyMap();
+
+  private final Map<Object, Partition> partitions = new LinkedHashMap<>();
+
+  // partitions that may have an open shard, in the order they were last written to
+  private final Map<Partition, Boolean> openPartitions = new LinkedHashMap<>(16, 0.75f, true);
+
+  private final List<Map<String, Object>> shards = Collections.synchronizedList(new ArrayList<>());
+
+  private ExecutorService executor;
+
+  private Semaphore pendingBatches;
+
+  ShardedRdfHandler(Path directory, RDFFormat format, int threads) {
+    this.directory = Objects.requireNonNull(directory);
+    this.format = Objects.requireNonNull(format);
+    this.threads = threads;
+  }
+
+  /**
+   * Partitions statements by the given strategy. For {@link Partitioning#SUBJECT}, statements are hashed into
+   * {@code subjectPartitions} partitions, so all statements about a subject end up in the same partition.
+   */
+  ShardedRdfHandler partitionBy(Partitioning partitioning, int subjectPartitions) {
+    this.partitioning = Objects.requireNonNull(partitioning);
+    this.subjectPartitions = subjectPartitions;
+    return this;
+  }
+
+  /**
+   * Rotates to a new shard file once the current one holds {@code maxStatements} statements or {@code maxBytes}
+   * bytes, whichever comes first. The byte limit is approximate: it applies to the serialized output before
+   * compression, a shard ends with the statement that reaches it, and binary output is counted after the buffer of
+   * the binary writer.
+   */
+  ShardedRdfHandler rotateAfter(long maxStatements, long maxBytes) {
+    this.maxStatements = maxStatements;
+    this.maxBytes = maxBytes;
+    return this;
+  }
+
+  ShardedRdfHandler compress(Compression compression) {
+    this.compression = compression;
+    return this;
+  }
+
+  @Override
+  public void startRDF() {
+    try {
+      Files.createDirectories(directory);
+    } catch (IOException exception) {
+      throw new CarmlJarException(String.format("Could not create shard directory %s", directory), exception);
+    }
+
+    executor = Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, "shard-writer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    pendingBatches = new Semaphore(threads * 4);
+    if (partitioning == Partitioning.SUBJECT) {
+      // create all partitions up front, so partition numbers match subject hashes
+      for (int i = 0; i < subjectPartitions; i++) {
+        partitions.put(i, new Partition(i, Integer.toString(i)));
+      }
+    }
+  }
+
+  @Override
+  public void handleNamespace(String prefix, String uri) {
+    Map<String, String> updated = new LinkedHashMap<>(namespaces);
+    updated.put(prefix, uri);
+    namespaces = Collections.unmodifiableMap(updated);
+  }
+
+  @Override
+  public void handleStatement(Statement statement) {
+    Object key = partitionKey(statement);
+    Partition partition = partitions.get(key);
+    if (partition == null) {
+      partition = new Partition(partitions.size(), partitionLabel(statement));
+      partitions.put(key, partition);
+    }
+    partition.add(statement);
+  }
+
+  private Object partitionKey(Statement statement) {
+    switch (partitioning) {
+      case GRAPH:
+        return Optional.ofNullable(statement.getContext());
+      case SUBJECT:
+        int hash = SUBJECT_HASH.hashString(statement.getSubject().toString(), StandardCharsets.UTF_8).asInt();
+        return Math.floorMod(hash, subjectPartitions);
+      default:
+        return partitioning;
+    }
+  }
+
+  private String partitionLabel(Statement statement) {
+    Resource context = statement.getContext();
+    return partitioning == Partitioning.GRAPH && context != null ? context.stringValue() : null;
+  }
+
+  @Override
+  public void endRDF() {
+    try {
+      partitions.values().forEach(Partition::finish);
+      CompletableFuture.allOf(partitions.values().stream()
+          .map(partition -> partition.tail)
+          .toArray(CompletableFuture[]::new))
+          .join();
+    } catch (CompletionException exception) {
+      throw new CarmlJarException(String.format("Failed to write shards to %s", directory), exception.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+
+    writeManifest();
+  }
+
+  /**
+   * Stops the writer threads and closes the shards that are still open, if the handler did not end normally.
+   */
+  @Override
+  public void close() {
+    if (executor == null) {
+      return;
+    }
+
+    executor.shutdownNow();
+    try {
+      if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+        log.warn("Shard writers in {} did not stop, leaving their shards open", directory);
+        return;
+      }
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+    partitions.values().forEach(Partition::abandonShard);
+  }
+
+  private void markWritten(Partition partition) {
+    openPartitions.put(partition, Boolean.TRUE);
+    if (openPartitions.size() > MAX_OPEN_SHARDS) {
+      Partition leastRecent = openPartitions.keySet().iterator().next();
+      openPartitions.remove(leastRecent);
+      leastRecent.rotate();
+    }
+  }
+
+  private void writeManifest() {
+    List<Map<String, Object>> sortedShards = new ArrayList<>(shards);
+    sortedShards.sort(Comparator.comparing(shard -> (String) shard.get("file")));
+
+    Map<String, Object> manifest = new LinkedHashMap<>();
+    manifest.put("format", format.getName());
+    manifest.put("partitioning", partitioning.name().toLowerCase(Locale.ROOT));
+    manifest.put("statements", sortedShards.stream().mapToLong(shard -> (Long) shard.get("statements")).sum());
+    manifest.put("shards", sortedShards);
+
+    Path manifestFile = directory.resolve(MANIFEST_FILE_NAME);
+    try {
+      new ObjectMapper()
+          .enable(SerializationFeature.INDENT_OUTPUT)
+          .writeValue(manifestFile.toFile(), manifest);
+    } catch (IOException exception) {
+      throw new CarmlJarException(String.format("Could not write shard manifest %s", manifestFile), exception);
+    }
+    log.info("Wrote {} shards to {}", sortedShards.size(), directory);
+  }
+
+  /**
+   * A partition collects statements in batches on the handling thread, and writes them on the writer threads. Writes
+   * of one partition are chained, so its shard state is only accessed by one writer thread at a time.
+   */
+  private class Partition {
+
+    private final int number;
+
+    private final String label;
+
+    private List<Statement> batch = new ArrayList<>(BATCH_SIZE);
+
+    private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+
+    private int shardNumber;
+
+    private Shard shard;
+
+    Partition(int number, String label) {
+      this.number = number;
+      this.label = label;
+    }
+
+    void add(Statement statement) {
+      batch.add(statement);
+      if (batch.size() >= BATCH_SIZE) {
+        submit();
+      }
+    }
+
+    void finish() {
+      submit();
+      rotate();
+    }
+
+    /**
+     * Closes the current shard after the pending writes, so the next write opens a new shard file.
+     */
+    void rotate() {
+      tail = tail.thenRunAsync(this::closeShard, executor);
+    }
+
+    /**
+     * Closes the current shard without adding it to the manifest, once the writer threads are stopped.
+     */
+    void abandonShard() {
+      if (shard == null) {
+        return;
+      }
+
+      try {
+        shard.out.close();
+      } catch (IOException exception) {
+        log.warn(String.format("Could not close shard file %s", shard.path), exception);
+      }
+      shard = null;
+    }
+
+    private void submit() {
+      if (batch.isEmpty()) {
+        return;
+      }
+      if (tail.isCompletedExceptionally()) {
+        // fail fast with the cause of the failed write
+        try {
+          tail.join();
+        } catch (CompletionException exception) {
+          throw new CarmlJarException(String.format("Failed to write shards to %s", directory), exception.getCause());
+        }
+      }
+
+      List<Statement> statements = batch;
+      batch = new ArrayList<>(BATCH_SIZE);
+      try {
+        pendingBatches.acquire();
+      } catch (InterruptedException exception) {
+        Thread.currentThread().interrupt();
+        throw new CarmlJarException("Interrupted while writing shards", exception);
+      }
+
+      tail = tail.thenRunAsync(() -> write(statements), executor);
+      tail.whenComplete((result, failure) -> pendingBatches.release());
+      markWritten(this);
+    }
+
+    private void write(List<Statement> statements) {
+      for (Statement statement : statements) {
+        if (shard == null) {
+          shard = openShard();
+        }
+        shard.writer.handleStatement(statement);
+        shard.statements++;
+        if (shard.statements >= maxStatements || (maxBytes != Long.MAX_VALUE && shard.serializedBytes() >= maxBytes)) {
+          closeShard();
+        }
+      }
+    }
+
+    private Shard openShard() {
+      String fileName = String.format("part-%05d-%05d.%s%s", number, shardNumber++, format.getDefaultFileExtension(),
+          compression != null ? compression.getExtension() : "");
+      Path path = directory.resolve(fileName);
+      try {
+        return new Shard(path);
+      } catch (IOException exception) {
+        throw new CarmlJarException(String.format("Could not open shard file %s", path), exception);
+      }
+    }
+
+    private void closeShard() {
+      if (shard == null) {
+        return;
+      }
+
+      try {
+        shard.writer.endRDF();
+        shard.out.close();
+      } catch (IOException exception) {
+        throw new CarmlJarException(String.format("Could not write shard file %s", shard.path), exception);
+      }
+
+      Map<String, Object> entry = new LinkedHashMap<>();
+      entry.put("file", shard.path.getFileName().toString());
+      entry.put("partition", label);
+      entry.put("statements", shard.statements);
+      entry.put("bytes", shard.bytes.getCount());
+      entry.put("sha256", shard.checksum.hash().toString());
+      shards.add(entry);
+      log.debug("Wrote {} statements to shard {}", shard.statements, shard.path);
+      shard = null;
+    }
+
+  }
+
+  private class Shard {
+
+    private final Path path;
+
+    private final CountingOutputStream bytes;
+
+    private final HashingOutputStream checksum;
+
+    private final OutputStream out;
+
+    private final CountingOutputStream serialized;
+
+    private final Writer characters;
+
+    private final RDFWriter writer;
+
+    private long statements;
+
+    Shard(Path path) throws IOException {
+      this.path = path;
+      bytes = new CountingOutputStream(Files.newOutputStream(path));
+      checksum = new HashingOutputStream(Hashing.sha256(), bytes);
+      int compressionThreads = partitioning == Partitioning.NONE ? threads : 1;
+      out = OutputStreams.compressed(checksum, path.getFileName().toString(), OutputStreams.DEFAULT_BUFFER_SIZE,
+          compressionThreads);
+
+      // counted above the output buffer and compression, which would make rotation lag behind by their block sizes
+      serialized = new CountingOutputStream(new FilterOutputStream(out) {
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+          out.write(buffer, offset, length);
+        }
+
+        @Override
+        public void flush() {
+          // flushing the characters only has to make them countable, the output stream is flushed when closed
+        }
+      });
+      if (format.hasCharset()) {
+        characters = new OutputStreamWriter(serialized, format.getCharset());
+        writer = Rio.createWriter(format, characters);
+      } else {
+        characters = null;
+        writer = Rio.createWriter(format, serialized);
+      }
+      writer.startRDF();
+      namespaces.forEach(writer::handleNamespace);
+    }
+
+    long serializedBytes() {
+      if (characters != null) {
+        try {
+          characters.flush();
+        } catch (IOException exception) {
+          throw new CarmlJarException(String.format("Could not write shard file %s", path), exception);
+        }
+      }
+      return serialized.getCount();
+    }
+
+  }
+
+}
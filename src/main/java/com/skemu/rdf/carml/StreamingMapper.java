@@ -0,0 +1,129 @@
+package com.skemu.rdf.carml;
+
+import com.google.common.collect.ImmutableSet;
+import com.taxonic.carml.engine.RmlMapper;
+import com.taxonic.carml.model.PredicateObjectMap;
+import com.taxonic.carml.model.TermMap;
+import com.taxonic.carml.model.TriplesMap;
+import com.taxonic.carml.rdf_mapper.util.ImmutableCollectors;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Namespace;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandler;
+
+/**
+ * Maps a mapping one triples map at a time, handing the resulting statements to an {@link RDFHandler} as soon as a
+ * triples map is done. Only the output of the triples map currently being executed is kept in memory. The input is
+ * opened again for every triples map, as a bound input stream is used up by the first triples map reading it.
+ */
+@Slf4j
+class StreamingMapper {
+
+  private static final Set<RDFFormat> STREAMING_FORMATS =
+      ImmutableSet.of(RDFFormat.NTRIPLES, RDFFormat.NQUADS, RDFFormat.BINARY);
+
+  private StreamingMapper() {
+  }
+
+  static boolean supportsFormat(RDFFormat format) {
+    return STREAMING_FORMATS.contains(format);
+  }
+
+  static void map(RmlMapper mapper, InputSource input, Set<TriplesMap> mapping, Set<Namespace> namespaces,
+      RDFHandler handler) {
+    map(mapper, input, mapping, namespaces, handler, null);
+  }
+
+  /**
+   * Maps as {@link #map(RmlMapper, InputSource, Set, Set, RDFHandler)}, recording the execution of every triples map
+   * in {@code metrics} if it is not {@code null}.
+   */
+  static void map(RmlMapper mapper, InputSource input, Set<TriplesMap> mapping, Set<Namespace> namespaces,
+      RDFHandler handler, MappingMetrics metrics) {
+    Objects.requireNonNull(mapper);
+    Objects.requireNonNull(handler);
+
+    handler.startRDF();
+    namespaces.forEach(namespace -> handler.handleNamespace(namespace.getPrefix(), namespace.getName()));
+
+    for (Set<TriplesMap> partition : partition(mapping)) {
+      MappingMetrics.Execution execution = metrics == null ? null : metrics.startExecution(name(partition));
+
+      Model model = InputSource.map(mapper, input, partition);
+      log.debug("Mapped {} statements for triples map partition {}", model.size(), partition);
+      model.forEach(handler::handleStatement);
+
+      if (execution != null) {
+        execution.finish(model.size());
+      }
+    }
+
+    handler.endRDF();
+  }
+
+  static String name(Set<TriplesMap> partition) {
+    TriplesMap triplesMap = partition.iterator().next();
+    return triplesMap.getLabel() != null ? triplesMap.getLabel() : triplesMap.getId();
+  }
+
+  /**
+   * Splits a mapping into independently executable parts: one per triples map, followed by the triples maps it uses
+   * as function values. Triples maps that are only used as function values do not get a part of their own.
+   */
+  static List<Set<TriplesMap>> partition(Set<TriplesMap> mapping) {
+    Set<TriplesMap> functionValueMaps = mapping.stream()
+        .flatMap(StreamingMapper::getFunctionValues)
+        .collect(ImmutableCollectors.toImmutableSet());
+
+    return mapping.stream()
+        .filter(triplesMap -> !functionValueMaps.contains(triplesMap))
+        .map(StreamingMapper::withFunctionValues)
+        .collect(Collectors.toList());
+  }
+
+  private static Set<TriplesMap> withFunctionValues(TriplesMap triplesMap) {
+    Set<TriplesMap> result = new LinkedHashSet<>();
+    addWithFunctionValues(triplesMap, result);
+    return ImmutableSet.copyOf(result);
+  }
+
+  private static void addWithFunctionValues(TriplesMap triplesMap, Set<TriplesMap> result) {
+    if (result.add(triplesMap)) {
+      getFunctionValues(triplesMap).forEach(functionValue -> addWithFunctionValues(functionValue, result));
+    }
+  }
+
+  private static Stream<TriplesMap> getFunctionValues(TriplesMap triplesMap) {
+    return getTermMaps(triplesMap)
+        .map(TermMap::getFunctionValue)
+        .filter(Objects::nonNull);
+  }
+
+  private static Stream<TermMap> getTermMaps(TriplesMap triplesMap) {
+    Stream<TermMap> subjectMaps = Stream.ofNullable(triplesMap.getSubjectMap())
+        .flatMap(subjectMap -> Stream.concat(Stream.of(subjectMap), subjectMap.getGraphMaps().stream()));
+
+    Stream<TermMap> predicateObjectTermMaps = triplesMap.getPredicateObjectMaps().stream()
+        .flatMap(StreamingMapper::getTermMaps);
+
+    return Stream.concat(subjectMaps, predicateObjectTermMaps);
+  }
+
+  private static Stream<TermMap> getTermMaps(PredicateObjectMap predicateObjectMap) {
+    Stream<TermMap> objectMaps = predicateObjectMap.getObjectMaps().stream()
+        .filter(TermMap.class::isInstance)
+        .map(TermMap.class::cast);
+
+    return Stream.of(predicateObjectMap.getPredicateMaps().stream(), objectMaps,
+        predicateObjectMap.getGraphMaps().stream())
+        .flatMap(termMaps -> termMaps);
+  }
+
+}
@@ -0,0 +1,206 @@
+package com.skemu.rdf.carml;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CarmlRunnerTest {
+
+	// two triples maps reading the bound input stream, each producing two statements per record
+	private static final String STREAM_MAPPING = String.join("\n",
+			"@prefix rr: <http://www.w3.org/ns/r2rml#> .",
+			"@prefix rml: <http://semweb.mmlab.be/ns/rml#> .",
+			"@prefix ql: <http://semweb.mmlab.be/ns/ql#> .",
+			"@prefix carml: <http://carml.taxonic.com/carml/> .",
+			"@prefix ex: <http://example.com/> .",
+			"",
+			"<#PersonMapping> a rr:TriplesMap ;",
+			"  rml:logicalSource [ rml:source [ a carml:Stream ] ; rml:referenceFormulation ql:CSV ] ;",
+			"  rr:subjectMap [ rr:template \"http://example.com/person/{id}\" ; rr:class ex:Person ] ;",
+			"  rr:predicateObjectMap [ rr:predicate ex:name ; rr:objectMap [ rml:reference \"name\" ] ] .",
+			"",
+			"<#CityMapping> a rr:TriplesMap ;",
+			"  rml:logicalSource [ rml:source [ a carml:Stream ] ; rml:referenceFormulation ql:CSV ] ;",
+			"  rr:subjectMap [ rr:template \"http://example.com/city/{id}\" ; rr:class ex:City ] ;",
+			"  rr:predicateObjectMap [ rr:predicate ex:name ; rr:objectMap [ rml:reference \"city\" ] ] .",
+			"");
+
+	private static final int RECORDS = 100;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path mappingFile;
+
+	private Path inputFile;
+
+	@Before
+	public void setup() throws IOException {
+		mappingFile = folder.getRoot().toPath().resolve("stream.rml.ttl");
+		Files.write(mappingFile, STREAM_MAPPING.getBytes(StandardCharsets.UTF_8));
+		inputFile = writeInput("people.csv", RECORDS);
+	}
+
+	@Test
+	public void run_streamingWithInputFile_mapsEveryTriplesMapOverTheInput() throws Exception {
+		Model streamed = run("streamed.nq", "-m", mappingFile.toString(), "-i", inputFile.toString(), "-of", "nq",
+				"-s");
+		Model inMemory = run("in-memory.nq", "-m", mappingFile.toString(), "-i", inputFile.toString(), "-of", "nq");
+
+		assertThat(streamed.size(), is(RECORDS * 4));
+		assertThat(streamed.size(), is(inMemory.size()));
+	}
+
+	@Test
+	public void run_streamingWithMappedInputFile_mapsEveryTriplesMapOverTheInput() throws Exception {
+		// large enough to be read through memory-mapped regions, which every triples map has to read from the start
+		int records = 50_000;
+		Path largeInputFile = writeInput("large.csv", records);
+		assertThat(Files.size(largeInputFile) >= InputStreams.MAPPED_FILE_THRESHOLD, is(true));
+
+		Model streamed = run("streamed.nq", "-m", mappingFile.toString(), "-i", largeInputFile.toString(), "-of",
+				"nq", "-s");
+		Model inMemory = run("in-memory.nq", "-m", mappingFile.toString(), "-i", largeInputFile.toString(), "-of",
+				"nq");
+
+		assertThat(streamed.size(), is(records * 4));
+		assertThat(streamed.size(), is(inMemory.size()));
+	}
+
+	@Test
+	public void run_sortedWithoutStreaming_mapsEveryTriplesMapOverTheInput() throws Exception {
+		// -so streams the mapping, so every triples map reads the input again
+		Model sorted = run("sorted.nq", "-m", mappingFile.toString(), "-i", inputFile.toString(), "-of", "nq", "-so",
+				"16");
+
+		assertThat(sorted.size(), is(RECORDS * 4));
+	}
+
+	@Test(expected = CarmlJarException.class)
+	public void run_pipelinedWithGroupedFormat_isRejected() throws Exception {
+		run("pipelined.ttl", "-m", mappingFile.toString(), "-i", inputFile.toString(), "-of", "ttl", "-pl", "1");
+	}
+
+	@Test(expected = CarmlJarException.class)
+	public void run_sortedIntoShards_isRejected() throws Exception {
+		runRunner("-m", mappingFile.toString(), "-i", inputFile.toString(), "-of", "nq", "-so", "16", "-sd",
+				folder.getRoot().toPath().resolve("shards").toString());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void run_batchWithMetrics_reportsEveryInputFile() throws Exception {
+		Path inputDirectory = folder.newFolder("batch").toPath();
+		Files.move(writeInput("first.csv", RECORDS), inputDirectory.resolve("first.csv"));
+		Files.move(writeInput("second.csv", RECORDS), inputDirectory.resolve("second.csv"));
+		Path reportFile = folder.getRoot().toPath().resolve("metrics.json");
+
+		Model model = run("batch.nq", "-m", mappingFile.toString(), "-b", inputDirectory.toString(), "-of", "nq",
+				"-mt", reportFile.toString());
+
+		Map<String, Object> report = new ObjectMapper().readValue(reportFile.toFile(), Map.class);
+		assertThat(((List<?>) report.get("inputFiles")).size(), is(2));
+		assertThat(((Number) report.get("statements")).longValue(), is((long) RECORDS * 8));
+		assertThat(model.size(), is(RECORDS * 4));
+	}
+
+	@Test
+	public void run_batchWithOutputCompression_writesCompressedOutputFiles() throws Exception {
+		Path inputDirectory = folder.newFolder("batch").toPath();
+		Files.move(writeInput("first.csv", RECORDS), inputDirectory.resolve("first.csv"));
+		Path outputDirectory = folder.getRoot().toPath().resolve("output");
+
+		runRunner("-m", mappingFile.toString(), "-b", inputDirectory.toString(), "-bo", outputDirectory.toString(),
+				"-of", "nq", "-bz", "gz");
+
+		byte[] output = Files.readAllBytes(outputDirectory.resolve("first.nq.gz"));
+		assertThat(output[0], is((byte) 0x1f));
+		assertThat(output[1], is((byte) 0x8b));
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(output))) {
+			assertThat(Rio.parse(in, "", RDFFormat.NQUADS).size(), is(RECORDS * 4));
+		}
+	}
+
+	@Test
+	public void main_withoutOutputFile_writesOnlyNQuadsToStandardOutput() throws Exception {
+		for (Class<?> mainClass : new Class<?>[] { CarmlCli.class, CarmlJar.class }) {
+			byte[] output = runMain(mainClass, "-m", mappingFile.toString(), "-i", inputFile.toString(), "-of", "nq",
+					"-s", "-pg", "1");
+
+			Model model = Rio.parse(new ByteArrayInputStream(output), "", RDFFormat.NQUADS);
+			assertThat(mainClass.getSimpleName(), model.size(), is(RECORDS * 4));
+		}
+	}
+
+	Path writeInput(String fileName, int records) throws IOException {
+		StringBuilder csv = new StringBuilder("id,name,city\n");
+		for (int i = 0; i < records; i++) {
+			csv.append(i).append(",Person ").append(i).append(",City ").append(i).append('\n');
+		}
+		Path file = folder.getRoot().toPath().resolve(fileName);
+		Files.write(file, csv.toString().getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	Model run(String outputFileName, String... args) throws Exception {
+		Path outputFile = folder.getRoot().toPath().resolve(outputFileName);
+		String[] runArgs = new String[args.length + 2];
+		System.arraycopy(args, 0, runArgs, 0, args.length);
+		runArgs[args.length] = "-o";
+		runArgs[args.length + 1] = outputFile.toString();
+
+		runRunner(runArgs);
+
+		try (InputStream in = Files.newInputStream(outputFile)) {
+			return Rio.parse(in, "", RDFFormat.NQUADS);
+		}
+	}
+
+	void runRunner(String... args) throws Exception {
+		CarmlRunner runner = new CarmlRunner();
+		runner.afterPropertiesSet();
+		runner.run(args);
+	}
+
+	/**
+	 * Runs a main class in a separate JVM, as the console output is written to the standard output file descriptor,
+	 * and returns what it wrote to standard output.
+	 */
+	byte[] runMain(Class<?> mainClass, String... args) throws Exception {
+		String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+		ProcessBuilder processBuilder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+				mainClass.getName());
+		processBuilder.command().addAll(Arrays.asList(args));
+		processBuilder.redirectError(folder.newFile());
+
+		Process process = processBuilder.start();
+		byte[] output;
+		try (InputStream in = process.getInputStream()) {
+			output = in.readAllBytes();
+		}
+		assertThat(process.waitFor(2, TimeUnit.MINUTES), is(true));
+		assertThat(process.exitValue(), is(0));
+		return output;
+	}
+
+}
@@ -0,0 +1,71 @@
+package com.skemu.rdf.carml;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CompressionTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void forFileName_withAnyCaseExtension_returnsCompression() {
+		assertThat(Compression.forFileName("out.nq.gz"), is(Optional.of(Compression.GZIP)));
+		assertThat(Compression.forFileName("out.NT.ZST"), is(Optional.of(Compression.ZSTD)));
+		assertThat(Compression.forFileName("out.lz4"), is(Optional.of(Compression.LZ4)));
+		assertThat(Compression.forFileName("out.nq"), is(Optional.empty()));
+	}
+
+	@Test
+	public void stripExtension_withCompressedFileName_removesOnlyCompressionExtension() {
+		assertThat(Compression.stripExtension("data.csv.gz"), is("data.csv"));
+		assertThat(Compression.stripExtension("data.csv"), is("data.csv"));
+	}
+
+	@Test
+	public void close_afterWritesAndFlush_decompressesToOriginalContent() throws IOException {
+		StringBuilder content = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			content.append("<http://example.org/s").append(i).append("> <http://example.org/p> \"").append(i).append("\" .\n");
+		}
+		byte[] bytes = content.toString().getBytes(StandardCharsets.UTF_8);
+
+		for (Compression compression : Compression.values()) {
+			Path file = folder.getRoot().toPath().resolve("out.nt" + compression.getExtension());
+			try (OutputStream out = new ParallelCompressingOutputStream(Files.newOutputStream(file), compression, 4,
+					4096)) {
+				out.write(bytes, 0, 1000);
+				out.flush();
+				out.write(bytes, 1000, bytes.length - 1000);
+			}
+
+			try (InputStream in = InputStreams.file(file)) {
+				assertThat(compression.name(), in.readAllBytes(), is(bytes));
+			}
+		}
+	}
+
+	@Test
+	public void close_withoutWrites_decompressesToEmptyContent() throws IOException {
+		for (Compression compression : Compression.values()) {
+			Path file = folder.getRoot().toPath().resolve("empty.nt" + compression.getExtension());
+			new ParallelCompressingOutputStream(Files.newOutputStream(file), compression, 2).close();
+
+			try (InputStream in = InputStreams.file(file)) {
+				assertThat(compression.name(), in.readAllBytes().length, is(0));
+			}
+		}
+	}
+
+}
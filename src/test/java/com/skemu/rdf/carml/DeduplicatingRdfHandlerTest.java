@@ -0,0 +1,68 @@
+package com.skemu.rdf.carml;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.eclipse.rdf4j.rio.helpers.StatementCollector;
+import org.junit.Test;
+
+public class DeduplicatingRdfHandlerTest {
+
+	private static final ValueFactory VF = SimpleValueFactory.getInstance();
+
+	@Test
+	public void endRDF_exactStrategy_forwardsEveryStatementOnce() {
+		assertDeduplicated(DeduplicatingRdfHandler.Strategy.EXACT, 1 << 20);
+	}
+
+	@Test
+	public void endRDF_bloomStrategy_forwardsEveryStatementOnce() {
+		assertDeduplicated(DeduplicatingRdfHandler.Strategy.BLOOM, 1 << 20);
+	}
+
+	@Test
+	public void endRDF_sortStrategyOverBudget_mergesSpilledRunsWithoutDuplicates() {
+		assertDeduplicated(DeduplicatingRdfHandler.Strategy.SORT, 16 * 1024);
+	}
+
+	@Test(expected = CarmlJarException.class)
+	public void handleStatement_exactStrategyOverBudget_throwsException() {
+		DeduplicatingRdfHandler handler =
+				new DeduplicatingRdfHandler(new StatementCollector(), DeduplicatingRdfHandler.Strategy.EXACT, 1024);
+		handler.startRDF();
+		repeatedStatements(1).forEach(handler::handleStatement);
+	}
+
+	private void assertDeduplicated(DeduplicatingRdfHandler.Strategy strategy, long memoryBudget) {
+		StatementCollector collector = new StatementCollector();
+		DeduplicatingRdfHandler handler = new DeduplicatingRdfHandler(collector, strategy, memoryBudget);
+
+		handler.startRDF();
+		repeatedStatements(3).forEach(handler::handleStatement);
+		handler.endRDF();
+
+		assertThat(strategy.name(), collector.getStatements().size(), is(1000));
+		assertThat(strategy.name(), new HashSet<>(collector.getStatements()).size(), is(1000));
+		assertThat(strategy.name(), handler.getDuplicates(), is(2000L));
+	}
+
+	// quoted language literals in default and named graphs, which spilled runs have to read back exactly
+	private static List<Statement> repeatedStatements(int copies) {
+		List<Statement> statements = new ArrayList<>();
+		for (int copy = 0; copy < copies; copy++) {
+			for (int i = 0; i < 1000; i++) {
+				statements.add(VF.createStatement(VF.createIRI("http://example.org/s" + i), RDFS.LABEL,
+						VF.createLiteral("label \"" + i + "\"", "en"), i % 2 == 0 ? VF.createIRI("http://example.org/g") : null));
+			}
+		}
+		return statements;
+	}
+
+}
@@ -0,0 +1,177 @@
+package com.skemu.rdf.carml;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import com.google.common.collect.ImmutableSet;
+import com.taxonic.carml.model.TriplesMap;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Set;
+import java.util.stream.Stream;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DirectoryWatcherTest {
+
+	// one triples map reading the bound input stream, producing two statements per record
+	private static final String PEOPLE_MAPPING = String.join("\n",
+			"@prefix rr: <http://www.w3.org/ns/r2rml#> .",
+			"@prefix rml: <http://semweb.mmlab.be/ns/rml#> .",
+			"@prefix ql: <http://semweb.mmlab.be/ns/ql#> .",
+			"@prefix carml: <http://carml.taxonic.com/carml/> .",
+			"@prefix ex: <http://example.com/> .",
+			"",
+			"<#PersonMapping> a rr:TriplesMap ;",
+			"  rml:logicalSource [ rml:source [ a carml:Stream ] ; rml:referenceFormulation ql:CSV ] ;",
+			"  rr:subjectMap [ rr:template \"http://example.com/person/{id}\" ; rr:class ex:Person ] ;",
+			"  rr:predicateObjectMap [ rr:predicate ex:name ; rr:objectMap [ rml:reference \"name\" ] ] .",
+			"");
+
+	private static final long TIMEOUT_MILLIS = 10_000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Set<TriplesMap> mapping;
+
+	private Path landingDirectory;
+
+	private Path outputDirectory;
+
+	private DirectoryWatcher watcher;
+
+	private Thread watchThread;
+
+	@Before
+	public void setup() throws IOException {
+		Path mappingFile = folder.getRoot().toPath().resolve("people.rml.ttl");
+		Files.write(mappingFile, PEOPLE_MAPPING.getBytes(StandardCharsets.UTF_8));
+		mapping = MappingLoader.load(null, null, 1, mappingFile);
+		landingDirectory = folder.newFolder("landing").toPath();
+		outputDirectory = folder.getRoot().toPath().resolve("output");
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		stopWatching();
+	}
+
+	@Test
+	public void watch_fileBeingWritten_mapsItOnceItIsQuiet() throws Exception {
+		startWatching();
+
+		// keeps changing for longer than the quiet period, so a partially written file would be mapped early
+		Path file = landingDirectory.resolve("people.csv");
+		Files.write(file, "id,name\n".getBytes(StandardCharsets.UTF_8));
+		for (int i = 0; i < 10; i++) {
+			Files.write(file, String.format("%d,Person %d%n", i, i).getBytes(StandardCharsets.UTF_8),
+					StandardOpenOption.APPEND);
+			Thread.sleep(50);
+		}
+
+		Path marker = awaitFile(outputDirectory.resolve("people.csv" + DirectoryWatcher.MARKER_EXTENSION));
+		assertThat(parse(outputDirectory.resolve("people.csv.nq")).size(), is(20));
+		BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+		assertThat(new String(Files.readAllBytes(marker), StandardCharsets.UTF_8),
+				is(String.format("%d:%d", attributes.size(), attributes.lastModifiedTime().toMillis())));
+	}
+
+	@Test
+	public void watch_filesWithSameBaseName_keepsTheirOutputsApart() throws Exception {
+		startWatching();
+
+		writePeople(landingDirectory.resolve("a.csv"), 2);
+		writePeople(landingDirectory.resolve("a.txt"), 3);
+
+		awaitFile(outputDirectory.resolve("a.csv" + DirectoryWatcher.MARKER_EXTENSION));
+		awaitFile(outputDirectory.resolve("a.txt" + DirectoryWatcher.MARKER_EXTENSION));
+		assertThat(parse(outputDirectory.resolve("a.csv.nq")).size(), is(4));
+		assertThat(parse(outputDirectory.resolve("a.txt.nq")).size(), is(6));
+	}
+
+	@Test
+	public void watch_temporaryAndHiddenFiles_skipsThem() throws Exception {
+		startWatching();
+
+		writePeople(landingDirectory.resolve("people.csv.part"), 1);
+		writePeople(landingDirectory.resolve("people.csv.tmp"), 1);
+		writePeople(landingDirectory.resolve(".people.csv"), 1);
+		writePeople(landingDirectory.resolve("people.csv"), 1);
+
+		// the skipped files became quiet first, and closing waits for the files that are being mapped
+		awaitFile(outputDirectory.resolve("people.csv" + DirectoryWatcher.MARKER_EXTENSION));
+		stopWatching();
+		try (Stream<Path> outputs = Files.list(outputDirectory)) {
+			assertThat(outputs.count(), is(2L));
+		}
+	}
+
+	@Test
+	public void watch_restarted_mapsOnlyFilesWithoutUpToDateMarker() throws Exception {
+		writePeople(landingDirectory.resolve("first.csv"), 1);
+		startWatching();
+		awaitFile(outputDirectory.resolve("first.csv" + DirectoryWatcher.MARKER_EXTENSION));
+		stopWatching();
+
+		// arrives while not watching, while the output of the first file is gone but its marker is up to date
+		Files.delete(outputDirectory.resolve("first.csv.nq"));
+		writePeople(landingDirectory.resolve("second.csv"), 1);
+		startWatching();
+
+		awaitFile(outputDirectory.resolve("second.csv" + DirectoryWatcher.MARKER_EXTENSION));
+		assertThat(parse(outputDirectory.resolve("second.csv.nq")).size(), is(2));
+		assertThat(Files.exists(outputDirectory.resolve("first.csv.nq")), is(false));
+	}
+
+	private void startWatching() {
+		BatchMapper batchMapper = new BatchMapper(new MapperFactory(ImmutableSet.of(), null), mapping, 2);
+		watcher = new DirectoryWatcher(batchMapper, landingDirectory, outputDirectory, RDFFormat.NQUADS,
+				ImmutableSet.of(), 2);
+		watchThread = new Thread(watcher::watch, "watch-test");
+		watchThread.start();
+	}
+
+	private void stopWatching() throws InterruptedException {
+		if (watcher != null) {
+			watcher.close();
+			watchThread.join(TIMEOUT_MILLIS);
+			watcher = null;
+		}
+	}
+
+	private static void writePeople(Path file, int records) throws IOException {
+		StringBuilder csv = new StringBuilder("id,name\n");
+		for (int i = 0; i < records; i++) {
+			csv.append(i).append(",Person ").append(i).append('\n');
+		}
+		Files.write(file, csv.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static Path awaitFile(Path file) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (!Files.exists(file)) {
+			assertThat(file + " was not written in time", System.currentTimeMillis() < deadline, is(true));
+			Thread.sleep(20);
+		}
+		return file;
+	}
+
+	private static Model parse(Path file) throws IOException {
+		try (InputStream in = Files.newInputStream(file)) {
+			return Rio.parse(in, "", RDFFormat.NQUADS);
+		}
+	}
+
+}
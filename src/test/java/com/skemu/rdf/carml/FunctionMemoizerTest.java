@@ -0,0 +1,93 @@
+package com.skemu.rdf.carml;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsSame.sameInstance;
+
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableSet;
+import com.taxonic.carml.engine.function.FnoFunction;
+import com.taxonic.carml.engine.function.FnoParam;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class FunctionMemoizerTest {
+
+	private static final String EX = "http://example.org/fn#";
+
+	@Retention(RetentionPolicy.RUNTIME)
+	public @interface Memoized {
+	}
+
+	public static class Functions {
+
+		final AtomicInteger slugCalls = new AtomicInteger();
+
+		final AtomicInteger padCalls = new AtomicInteger();
+
+		@Memoized
+		@FnoFunction(EX + "slug")
+		public String slug(@FnoParam(EX + "value") String value) {
+			slugCalls.incrementAndGet();
+			return value.toLowerCase().replace(' ', '-');
+		}
+
+		@FnoFunction(EX + "pad")
+		public String pad(@FnoParam(EX + "value") int value, @FnoParam(EX + "width") long width) {
+			padCalls.incrementAndGet();
+			return String.format("%0" + width + "d", value);
+		}
+	}
+
+	@Test
+	public void memoize_withMemoizedAnnotation_keepsFnoAnnotationsAndCachesResults() throws Exception {
+		Functions functions = new Functions();
+		FunctionMemoizer memoizer = new FunctionMemoizer(ImmutableSet.of(), 100);
+
+		Object memoized = memoizer.memoize(functions);
+		assertThat(memoized, not(sameInstance(functions)));
+
+		Method slug = memoized.getClass().getMethod("slug", String.class);
+		assertThat(slug.getAnnotation(FnoFunction.class).value(), is(EX + "slug"));
+		assertThat(((FnoParam) slug.getParameterAnnotations()[0][0]).value(), is(EX + "value"));
+
+		for (int i = 0; i < 10; i++) {
+			assertThat(slug.invoke(memoized, "Some Value"), is("some-value"));
+		}
+		assertThat(functions.slugCalls.get(), is(1));
+
+		Method pad = memoized.getClass().getMethod("pad", int.class, long.class);
+		assertThat(pad.invoke(memoized, 7, 3L), is("007"));
+		assertThat(pad.invoke(memoized, 7, 3L), is("007"));
+		assertThat(functions.padCalls.get(), is(2));
+
+		CacheStats stats = memoizer.statistics().get(EX + "slug");
+		assertThat(stats.hitCount(), is(9L));
+		assertThat(stats.missCount(), is(1L));
+	}
+
+	@Test
+	public void memoize_withSelectedMethodName_cachesSelectedFunction() throws Exception {
+		Functions functions = new Functions();
+		FunctionMemoizer memoizer = new FunctionMemoizer(ImmutableSet.of(Functions.class.getName() + "#pad"), 100);
+
+		Object memoized = memoizer.memoize(functions);
+		Method pad = memoized.getClass().getMethod("pad", int.class, long.class);
+		pad.invoke(memoized, 7, 3L);
+		pad.invoke(memoized, 7, 3L);
+
+		assertThat(functions.padCalls.get(), is(1));
+		assertThat(memoizer.statistics().keySet(), is(ImmutableSet.of(EX + "slug", EX + "pad")));
+	}
+
+	@Test
+	public void memoize_withoutMemoizedFunctions_returnsSameInstance() {
+		Object functions = new Object();
+		assertThat(new FunctionMemoizer(ImmutableSet.of(), 100).memoize(functions), sameInstance(functions));
+	}
+
+}
@@ -0,0 +1,93 @@
+package com.skemu.rdf.carml;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.StatementCollector;
+import org.junit.Test;
+
+public class GroupingRdfHandlerTest {
+
+	private static final ValueFactory VF = SimpleValueFactory.getInstance();
+
+	@Test
+	public void endRDF_overBudget_groupsByGraphAndSubjectAcrossSpilledRuns() {
+		StatementCollector collector = new StatementCollector();
+		GroupingRdfHandler handler = new GroupingRdfHandler(collector, 4 * 1024, true);
+
+		handler.startRDF();
+		interleavedStatements().forEach(handler::handleStatement);
+		handler.endRDF();
+
+		List<Statement> grouped = new ArrayList<>(collector.getStatements());
+		assertThat(grouped.size(), is(450));
+		assertThat(new HashSet<>(grouped), is(new HashSet<>(interleavedStatements())));
+
+		// every graph and every subject within a graph is seen in one consecutive run of statements
+		Set<Resource> finishedGraphs = new HashSet<>();
+		Set<Resource> finishedSubjects = new HashSet<>();
+		for (int i = 1; i < grouped.size(); i++) {
+			Statement previous = grouped.get(i - 1);
+			Statement statement = grouped.get(i);
+			if (!Objects.equals(previous.getContext(), statement.getContext())) {
+				finishedGraphs.add(previous.getContext());
+				finishedSubjects.clear();
+				assertThat(finishedGraphs.contains(statement.getContext()), is(false));
+			} else if (!previous.getSubject().equals(statement.getSubject())) {
+				finishedSubjects.add(previous.getSubject());
+				assertThat(finishedSubjects.contains(statement.getSubject()), is(false));
+			}
+		}
+	}
+
+	@Test
+	public void endRDF_withTrigWriter_writesEachSubjectOncePerGraph() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GroupingRdfHandler handler = new GroupingRdfHandler(Rio.createWriter(RDFFormat.TRIG, out), 4 * 1024, true);
+
+		handler.startRDF();
+		handler.handleNamespace("ex", "http://example.org/");
+		interleavedStatements().forEach(handler::handleStatement);
+		handler.endRDF();
+
+		String trig = new String(out.toByteArray(), StandardCharsets.UTF_8);
+		Model model = Rio.parse(new StringReader(trig), "", RDFFormat.TRIG);
+		assertThat(model, is(new LinkedHashModel(interleavedStatements())));
+		// each subject is written once per graph, with its predicates abbreviated
+		assertThat(trig.split("ex:s1 ", -1).length - 1, is(2));
+		assertThat(trig.split("ex:s2 ", -1).length - 1, is(1));
+	}
+
+	// every subject comes back once per property, and odd subjects are in a different graph per copy
+	private static List<Statement> interleavedStatements() {
+		List<Statement> statements = new ArrayList<>();
+		for (int copy = 0; copy < 2; copy++) {
+			for (int property = 0; property < 3; property++) {
+				for (int i = 0; i < 100; i++) {
+					statements.add(VF.createStatement(VF.createIRI("http://example.org/s" + i),
+							property == 0 ? RDFS.LABEL : VF.createIRI("http://example.org/p" + property),
+							VF.createLiteral("value " + i), i % 2 == 0 ? null : VF.createIRI("http://example.org/g" + copy)));
+				}
+			}
+		}
+		return statements;
+	}
+
+}
@@ -0,0 +1,107 @@
+package com.skemu.rdf.carml;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.taxonic.carml.model.TriplesMap;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.rio.helpers.StatementCollector;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class IncrementalMapperTest {
+
+	// two triples maps reading the bound input stream, so they are mapped as separate parts
+	private static final String STREAM_MAPPING = String.join("\n",
+			"@prefix rr: <http://www.w3.org/ns/r2rml#> .",
+			"@prefix rml: <http://semweb.mmlab.be/ns/rml#> .",
+			"@prefix ql: <http://semweb.mmlab.be/ns/ql#> .",
+			"@prefix carml: <http://carml.taxonic.com/carml/> .",
+			"@prefix ex: <http://example.com/> .",
+			"",
+			"<#PersonMapping> a rr:TriplesMap ;",
+			"  rml:logicalSource [ rml:source [ a carml:Stream ] ; rml:referenceFormulation ql:CSV ] ;",
+			"  rr:subjectMap [ rr:template \"http://example.com/person/{id}\" ; rr:class ex:Person ] ;",
+			"  rr:predicateObjectMap [ rr:predicate ex:name ; rr:objectMap [ rml:reference \"name\" ] ] .",
+			"",
+			"<#CityMapping> a rr:TriplesMap ;",
+			"  rml:logicalSource [ rml:source [ a carml:Stream ] ; rml:referenceFormulation ql:CSV ] ;",
+			"  rr:subjectMap [ rr:template \"http://example.com/city/{id}\" ; rr:class ex:City ] ;",
+			"  rr:predicateObjectMap [ rr:predicate ex:name ; rr:objectMap [ rml:reference \"city\" ] ] .",
+			"");
+
+	private static final String PEOPLE = "id,name,city\n1,Alice,Utrecht\n2,Bob,Amsterdam\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path mappingFile;
+
+	private Path inputFile;
+
+	private Path stateDirectory;
+
+	private Set<TriplesMap> mapping;
+
+	@Before
+	public void setup() throws IOException {
+		mappingFile = folder.getRoot().toPath().resolve("stream.rml.ttl");
+		Files.write(mappingFile, STREAM_MAPPING.getBytes(StandardCharsets.UTF_8));
+		inputFile = folder.getRoot().toPath().resolve("people.csv");
+		Files.write(inputFile, PEOPLE.getBytes(StandardCharsets.UTF_8));
+		stateDirectory = folder.getRoot().toPath().resolve("state");
+		mapping = MappingLoader.load(null, null, 1, mappingFile);
+	}
+
+	@Test
+	public void map_withInputSource_mapsEveryPartOverTheInput() throws IOException {
+		Model model = map(() -> InputStreams.file(inputFile));
+
+		assertThat(model.size(), is(8));
+		JsonNode manifest = new ObjectMapper().readTree(
+				stateDirectory.resolve(IncrementalMapper.MANIFEST_FILE_NAME).toFile());
+		assertThat(manifest.get("parts").size(), is(2));
+		for (JsonNode part : manifest.get("parts")) {
+			assertThat(part.get("statements").asLong(), is(4L));
+		}
+	}
+
+	@Test
+	public void map_withConsumedInputStream_doesNotStoreOutput() throws IOException {
+		// closing does not fail reading it again, it just has nothing left to read
+		InputStream once = new ByteArrayInputStream(PEOPLE.getBytes(StandardCharsets.UTF_8));
+
+		try {
+			map(() -> once);
+			fail("Mapping a consumed input stream should fail");
+		} catch (CarmlJarException exception) {
+			// the first part read the stream, the second one found it consumed
+		}
+
+		assertThat(Files.exists(stateDirectory.resolve(IncrementalMapper.MANIFEST_FILE_NAME)), is(false));
+	}
+
+	private Model map(InputSource inputSource) {
+		Model model = new LinkedHashModel();
+		new IncrementalMapper(stateDirectory, ImmutableList.of(mappingFile), null, inputFile)
+				.map(new MapperFactory(ImmutableSet.of(), null).create(), inputSource, mapping, ImmutableSet.of(),
+						new StatementCollector(model));
+		return model;
+	}
+
+}
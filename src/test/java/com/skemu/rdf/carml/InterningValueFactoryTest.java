@@ -0,0 +1,66 @@
+package com.skemu.rdf.carml;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsSame.sameInstance;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.vocabulary.XSD;
+import org.junit.Test;
+
+public class InterningValueFactoryTest {
+
+	private static final String EX = "http://example.org/";
+
+	@Test
+	public void createValue_withEqualTerms_returnsSharedInstance() {
+		InterningValueFactory valueFactory = new InterningValueFactory(1 << 20, 1);
+
+		IRI city = valueFactory.createIRI(EX + "city/Amsterdam");
+		assertThat(valueFactory.createIRI(EX + "city/", "Amsterdam"), sameInstance(city));
+
+		Literal age = valueFactory.createLiteral("42", XSD.INT);
+		assertThat(valueFactory.createLiteral("42", valueFactory.createIRI(XSD.INT.stringValue())), sameInstance(age));
+		assertThat(valueFactory.createLiteral("Amsterdam", "nl"), sameInstance(valueFactory.createLiteral("Amsterdam", "nl")));
+		assertThat(valueFactory.createLiteral("Amsterdam", "nl"), not(sameInstance(valueFactory.createLiteral("Amsterdam"))));
+
+		assertThat(valueFactory.createBNode("b1"), not(sameInstance(valueFactory.createBNode("b1"))));
+		// the second instances of the city IRI, the datatype IRI, "42" and twice "Amsterdam"@nl
+		assertThat(valueFactory.getBytesSaved(), is(97L + 100L + 66L + 75L + 75L));
+	}
+
+	@Test
+	public void createStatement_withInternedTerms_countsOnlyDuplicateInstances() {
+		InterningValueFactory valueFactory = new InterningValueFactory(1 << 20, 1);
+
+		valueFactory.createStatement(valueFactory.createIRI(EX + "person/1"), valueFactory.createIRI(EX + "city"),
+				valueFactory.createLiteral("Amsterdam"));
+		valueFactory.createStatement(valueFactory.createIRI(EX + "person/2"), valueFactory.createIRI(EX + "city"),
+				valueFactory.createLiteral("Amsterdam"));
+
+		// six created terms and pinning the predicate, of which only the second predicate and literal are duplicates
+		assertThat(valueFactory.statistics().get("lookups"), is(7L));
+		assertThat(valueFactory.statistics().get("duplicates"), is(2L));
+		assertThat(valueFactory.getBytesSaved(), is((64L + (EX + "city").length()) + (64L + "Amsterdam".length())));
+	}
+
+	@Test
+	public void createStatement_withDictionaryTooSmall_pinsPredicates() {
+		// too small to keep any term in the dictionary
+		InterningValueFactory valueFactory = new InterningValueFactory(1, 1);
+
+		IRI name = valueFactory.createIRI(EX + "name");
+		Statement first = valueFactory.createStatement(valueFactory.createIRI(EX + "person/1"), name,
+				valueFactory.createLiteral("Person 1"));
+		Statement second = valueFactory.createStatement(valueFactory.createIRI(EX + "person/2"),
+				valueFactory.createIRI(EX + "name"), valueFactory.createLiteral("Person 2"));
+
+		assertThat(second.getPredicate(), sameInstance(first.getPredicate()));
+		assertThat(second.getSubject(), is(valueFactory.createIRI(EX + "person/2")));
+		assertThat(valueFactory.statistics().get("pinnedTerms"), is(1L));
+	}
+
+}
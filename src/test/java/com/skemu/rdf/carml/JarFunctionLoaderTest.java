@@ -0,0 +1,103 @@
+package com.skemu.rdf.carml;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsSame.sameInstance;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+import com.taxonic.carml.engine.function.FnoFunction;
+import com.taxonic.carml.engine.function.FnoParam;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JarFunctionLoaderTest {
+
+	private static final String EX = "http://example.org/fn#";
+
+	public static class Functions {
+
+		@FnoFunction(EX + "upper")
+		public String upper(@FnoParam(EX + "value") String value) {
+			return value.toUpperCase();
+		}
+	}
+
+	public static class NoFunctions {
+
+		public String upper(String value) {
+			return value.toUpperCase();
+		}
+	}
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File jar;
+
+	@Before
+	public void setup() throws IOException {
+		jar = folder.newFile("functions.jar");
+		try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar.toPath()))) {
+			addClass(out, Functions.class);
+			addClass(out, NoFunctions.class);
+		}
+	}
+
+	private static void addClass(JarOutputStream out, Class<?> type) throws IOException {
+		String entryName = type.getName().replace('.', '/') + ".class";
+		out.putNextEntry(new JarEntry(entryName));
+		try (InputStream in = type.getClassLoader().getResourceAsStream(entryName)) {
+			ByteStreams.copy(in, out);
+		}
+		out.closeEntry();
+	}
+
+	@Test
+	public void load_withFunctionClass_loadsClassFromJarFirst() {
+		Set<Object> functions = JarFunctionLoader.load(ImmutableSet.of(Functions.class.getName()), ImmutableSet.of(jar));
+
+		Object function = functions.iterator().next();
+		assertThat(function.getClass().getName(), is(Functions.class.getName()));
+		assertThat(function.getClass(), not(sameInstance(Functions.class)));
+		assertThat(function.getClass().getClassLoader() instanceof FunctionClassLoader, is(true));
+	}
+
+	@Test
+	public void load_withoutFunctionClasses_scansJarForFunctions() {
+		Set<Object> functions = JarFunctionLoader.load(ImmutableSet.of(), ImmutableSet.of(jar));
+
+		assertThat(functions.size(), is(1));
+		assertThat(functions.iterator().next().getClass().getName(), is(Functions.class.getName()));
+	}
+
+	@Test
+	public void functionClasses_withUnchangedJar_usesIndex() throws IOException {
+		long lastModified = 1_600_000_000_000L;
+		assertThat(jar.setLastModified(lastModified), is(true));
+
+		FunctionIndex index = new FunctionIndex(folder.newFolder("cache").toPath());
+		assertThat(index.functionClasses(ImmutableSet.of(jar)), is(ImmutableSet.of(Functions.class.getName())));
+
+		// same size and modification time, but no longer a readable jar
+		byte[] garbage = new byte[(int) jar.length()];
+		try (OutputStream out = Files.newOutputStream(jar.toPath())) {
+			out.write(garbage);
+		}
+		assertThat(jar.setLastModified(lastModified), is(true));
+
+		assertThat(index.functionClasses(ImmutableSet.of(jar)), is(ImmutableSet.of(Functions.class.getName())));
+	}
+
+}
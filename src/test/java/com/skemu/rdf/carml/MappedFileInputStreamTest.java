@@ -0,0 +1,72 @@
+package com.skemu.rdf.carml;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedFileInputStreamTest {
+
+	private static final int REGION_SIZE = 1000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private byte[] content;
+
+	private Path file;
+
+	@Before
+	public void setup() throws IOException {
+		content = new byte[10 * REGION_SIZE + 123];
+		new Random(42).nextBytes(content);
+		file = folder.getRoot().toPath().resolve("input.bin");
+		Files.write(file, content);
+	}
+
+	@Test
+	public void read_acrossRegions_returnsFileContent() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (InputStream in = new MappedFileInputStream(file, REGION_SIZE)) {
+			// single bytes and reads that are not aligned with the regions
+			out.write(in.read());
+			byte[] buffer = new byte[777];
+			int count;
+			while ((count = in.read(buffer, 0, buffer.length)) != -1) {
+				out.write(buffer, 0, count);
+			}
+			assertThat(in.read(), is(-1));
+		}
+
+		assertThat(out.toByteArray(), is(content));
+	}
+
+	@Test
+	public void skip_acrossRegions_continuesAtSkippedPosition() throws IOException {
+		try (InputStream in = new MappedFileInputStream(file, REGION_SIZE)) {
+			assertThat(in.skip(2500), is(2500L));
+			assertThat(in.available(), is(content.length - 2500));
+			assertThat(in.readAllBytes(), is(Arrays.copyOfRange(content, 2500, content.length)));
+		}
+	}
+
+	@Test
+	public void read_emptyFile_returnsEndOfStream() throws IOException {
+		Path emptyFile = folder.newFile("empty.bin").toPath();
+		try (InputStream in = new MappedFileInputStream(emptyFile, REGION_SIZE)) {
+			assertThat(in.read(), is(-1));
+			assertThat(in.available(), is(0));
+		}
+	}
+
+}
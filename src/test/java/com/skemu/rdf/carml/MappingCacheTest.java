@@ -0,0 +1,134 @@
+package com.skemu.rdf.carml;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappingCacheTest {
+
+	private static final ValueFactory VF = SimpleValueFactory.getInstance();
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path mappingFile;
+
+	private Path cacheDirectory;
+
+	private MappingCache cache;
+
+	private AtomicInteger parses;
+
+	@Before
+	public void setup() throws IOException {
+		mappingFile = folder.newFile("mapping.rml.ttl").toPath();
+		Files.write(mappingFile, "# mapping".getBytes(StandardCharsets.UTF_8));
+		cacheDirectory = folder.newFolder("cache").toPath();
+		cache = new MappingCache(cacheDirectory);
+		parses = new AtomicInteger();
+	}
+
+	@Test
+	public void load_withUnchangedFiles_returnsCachedModelWithoutParsing() {
+		List<Path> files = ImmutableList.of(mappingFile);
+
+		Model parsed = cache.load(files, null, parser());
+		Model cached = cache.load(files, null, parser());
+
+		assertThat(parses.get(), is(1));
+		assertThat(cached, is(parsed));
+	}
+
+	@Test
+	public void load_withChangedFile_parsesAgain() throws IOException {
+		List<Path> files = ImmutableList.of(mappingFile);
+
+		cache.load(files, null, parser());
+		Files.write(mappingFile, "# changed mapping".getBytes(StandardCharsets.UTF_8));
+		cache.load(files, null, parser());
+
+		assertThat(parses.get(), is(2));
+	}
+
+	@Test
+	public void load_withChangedFile_replacesSupersededSnapshot() throws IOException {
+		List<Path> files = ImmutableList.of(mappingFile);
+
+		cache.load(files, null, parser());
+		Files.write(mappingFile, "# changed mapping".getBytes(StandardCharsets.UTF_8));
+		cache.load(files, null, parser());
+		Files.write(mappingFile, "# changed mapping again".getBytes(StandardCharsets.UTF_8));
+		cache.load(files, null, parser());
+
+		assertThat(parses.get(), is(3));
+		try (Stream<Path> snapshots = Files.list(cacheDirectory)) {
+			assertThat(snapshots.filter(file -> file.toString().endsWith(".brf")).count(), is(1L));
+		}
+	}
+
+	@Test
+	public void load_withMoreMappingsThanMaxSnapshots_evictsLeastRecentlyUsedSnapshot() throws IOException {
+		cache.maxSnapshots(2);
+		List<Path> first = ImmutableList.of(mappingFile);
+		List<Path> second = ImmutableList.of(writeMapping("second.rml.ttl"));
+		List<Path> third = ImmutableList.of(writeMapping("third.rml.ttl"));
+
+		cache.load(first, null, parser());
+		cache.load(second, null, parser());
+		// both snapshots are older than the resolution of file modification times
+		FileTime earlier = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+		try (DirectoryStream<Path> snapshots = Files.newDirectoryStream(cacheDirectory, "*.brf")) {
+			for (Path snapshot : snapshots) {
+				Files.setLastModifiedTime(snapshot, earlier);
+			}
+		}
+		cache.load(first, null, parser());
+		cache.load(third, null, parser());
+
+		assertThat(parses.get(), is(3));
+		try (Stream<Path> snapshots = Files.list(cacheDirectory)) {
+			assertThat(snapshots.filter(file -> file.toString().endsWith(".brf")).count(), is(2L));
+		}
+		cache.load(first, null, parser());
+		cache.load(third, null, parser());
+		assertThat(parses.get(), is(3));
+		cache.load(second, null, parser());
+		assertThat(parses.get(), is(4));
+	}
+
+	private Path writeMapping(String fileName) throws IOException {
+		return Files.write(folder.getRoot().toPath().resolve(fileName),
+				("# " + fileName).getBytes(StandardCharsets.UTF_8));
+	}
+
+	private Supplier<Model> parser() {
+		return () -> {
+			parses.incrementAndGet();
+			Model model = new LinkedHashModel();
+			model.add(VF.createIRI("http://example.com/Mapping"), RDF.TYPE, RDFS.CLASS);
+			return model;
+		};
+	}
+
+}
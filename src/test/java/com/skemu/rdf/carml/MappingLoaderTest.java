@@ -0,0 +1,123 @@
+package com.skemu.rdf.carml;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.StringContains.containsString;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappingLoaderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void parse_withMoreFilesThanThreads_mergesModelsInFileOrder() throws IOException {
+		List<Path> files = ImmutableList.of(
+				writeMapping("c.ttl", "c", 3),
+				writeMapping("a.ttl", "a", 1),
+				writeMapping("b.ttl", "b", 2));
+
+		Model model = MappingLoader.parse(files, null, 2);
+
+		// the first file's subjects first, whichever file finished parsing first
+		List<String> subjects = model.stream()
+				.map(Statement::getSubject)
+				.map(Resource::stringValue)
+				.collect(Collectors.toList());
+		assertThat(subjects, is(ImmutableList.of(
+				"http://example.com/c0", "http://example.com/c1", "http://example.com/c2",
+				"http://example.com/a0",
+				"http://example.com/b0", "http://example.com/b1")));
+	}
+
+	@Test
+	public void parse_withSeveralBrokenFiles_reportsEveryBrokenFile() throws IOException {
+		Path first = write("first.ttl", "<http://example.com/s> <http://example.com/p> .");
+		Path valid = writeMapping("valid.ttl", "v", 1);
+		Path second = write("second.ttl", "not turtle at all");
+
+		try {
+			MappingLoader.parse(ImmutableList.of(first, valid, second), null, 3);
+			fail("Parsing broken mapping files should fail");
+		} catch (MappingFormatException exception) {
+			assertThat(exception.getMessage(), containsString("Could not parse 2 mapping file(s)"));
+			assertThat(exception.getMessage(), containsString(first.toString()));
+			assertThat(exception.getMessage(), containsString(second.toString()));
+		}
+	}
+
+	@Test
+	public void parse_withUnknownExtension_skipsFile() throws IOException {
+		Path mapping = writeMapping("mapping.ttl", "m", 2);
+		Path notes = write("notes.txt", "not a mapping");
+
+		Model model = MappingLoader.parse(ImmutableList.of(mapping, notes), null, 2);
+
+		assertThat(model.size(), is(2));
+	}
+
+	@Test
+	public void parse_withFormat_parsesEveryFileInThatFormat() throws IOException {
+		Path mapping = writeMapping("mapping.rml", "m", 2);
+
+		Model model = MappingLoader.parse(ImmutableList.of(mapping), RDFFormat.TURTLE, 2);
+
+		assertThat(model.size(), is(2));
+	}
+
+	@Test
+	public void resolvePaths_withoutFormat_findsFilesInDirectories() throws IOException {
+		Path file = writeMapping("mapping.ttl", "m", 1);
+		Path directory = folder.newFolder("mappings").toPath();
+		Path nested = Files.createDirectories(directory.resolve("nested"));
+		Path first = Files.write(directory.resolve("first.ttl"), new byte[0]);
+		Path second = Files.write(nested.resolve("second.ttl"), new byte[0]);
+
+		List<Path> files = MappingLoader.resolvePaths(null, file, directory);
+
+		assertThat(files.size(), is(3));
+		assertThat(files.get(0), is(file));
+		assertThat(new HashSet<>(files.subList(1, 3)), is(ImmutableSet.of(first, second)));
+	}
+
+	@Test
+	public void resolvePaths_withFormat_keepsPathsAsGiven() throws IOException {
+		Path file = writeMapping("mapping.ttl", "m", 1);
+		Path directory = folder.newFolder("mappings").toPath();
+		Files.write(directory.resolve("first.ttl"), new byte[0]);
+
+		List<Path> files = MappingLoader.resolvePaths(RDFFormat.TURTLE, file, directory);
+
+		assertThat(files, is(ImmutableList.of(file, directory)));
+	}
+
+	private Path writeMapping(String fileName, String name, int statements) throws IOException {
+		StringBuilder turtle = new StringBuilder();
+		for (int i = 0; i < statements; i++) {
+			turtle.append(String.format("<http://example.com/%s%d> a <http://example.com/Mapping> .%n", name, i));
+		}
+		return write(fileName, turtle.toString());
+	}
+
+	private Path write(String fileName, String content) throws IOException {
+		return Files.write(folder.getRoot().toPath().resolve(fileName), content.getBytes(StandardCharsets.UTF_8));
+	}
+
+}
@@ -0,0 +1,138 @@
+package com.skemu.rdf.carml;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.taxonic.carml.model.TriplesMap;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappingServerTest {
+
+	private static final String PEOPLE_MAPPING = String.join("\n",
+			"@prefix rr: <http://www.w3.org/ns/r2rml#> .",
+			"@prefix rml: <http://semweb.mmlab.be/ns/rml#> .",
+			"@prefix ql: <http://semweb.mmlab.be/ns/ql#> .",
+			"@prefix carml: <http://carml.taxonic.com/carml/> .",
+			"@prefix ex: <http://example.com/> .",
+			"",
+			"<#PersonMapping> a rr:TriplesMap ;",
+			"  rml:logicalSource [ rml:source [ a carml:Stream ] ; rml:iterator \"$.people[*]\" ;",
+			"      rml:referenceFormulation ql:JSONPath ] ;",
+			"  rr:subjectMap [ rr:template \"http://example.com/person/{id}\" ; rr:class ex:Person ] ;",
+			"  rr:predicateObjectMap [ rr:predicate ex:name ; rr:objectMap [ rml:reference \"name\" ] ] .",
+			"",
+			"<#CityMapping> a rr:TriplesMap ;",
+			"  rml:logicalSource [ rml:source [ a carml:Stream ] ; rml:iterator \"$.people[*]\" ;",
+			"      rml:referenceFormulation ql:JSONPath ] ;",
+			"  rr:subjectMap [ rr:template \"http://example.com/city/{id}\" ; rr:class ex:City ] ;",
+			"  rr:predicateObjectMap [ rr:predicate ex:name ; rr:objectMap [ rml:reference \"city\" ] ] .",
+			"");
+
+	private static final String PEOPLE = "{\"people\": [{\"id\": 1, \"name\": \"Alice\", \"city\": \"Utrecht\"}, "
+			+ "{\"id\": 2, \"name\": \"Bob\", \"city\": \"Amsterdam\"}]}";
+
+	private static final String MALFORMED_PEOPLE = "{\"people\": [{\"id\": 1, \"name\": ";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Set<TriplesMap> mapping;
+
+	private MappingServer server;
+
+	@Before
+	public void setup() throws IOException {
+		Path mappingFile = folder.getRoot().toPath().resolve("people.rml.ttl");
+		Files.write(mappingFile, PEOPLE_MAPPING.getBytes(StandardCharsets.UTF_8));
+		mapping = MappingLoader.load(null, null, 1, mappingFile);
+
+		server = createServer();
+		server.start(0);
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Test
+	public void post_streamedFormat_returnsOutputOfAllTriplesMaps() throws IOException {
+		HttpURLConnection connection = post(PEOPLE, "nq");
+
+		assertThat(connection.getResponseCode(), is(200));
+		try (InputStream in = connection.getInputStream()) {
+			Model model = Rio.parse(in, "", RDFFormat.NQUADS);
+			assertThat(model.size(), is(8));
+		}
+	}
+
+	@Test
+	public void post_bodyOverMemoryLimit_mapsSpooledBodyForAllTriplesMaps() throws IOException {
+		server.stop();
+		server = createServer().bodyMemoryLimit(16);
+		server.start(0);
+
+		HttpURLConnection connection = post(PEOPLE, "nq");
+
+		assertThat(connection.getResponseCode(), is(200));
+		try (InputStream in = connection.getInputStream()) {
+			Model model = Rio.parse(in, "", RDFFormat.NQUADS);
+			assertThat(model.size(), is(8));
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void post_malformedInputWithStreamedFormat_breaksOffResponse() throws IOException {
+		HttpURLConnection connection = post(MALFORMED_PEOPLE, "nq");
+
+		// the status is sent before mapping starts, the failure shows as an incomplete chunked body
+		assertThat(connection.getResponseCode(), is(200));
+		try (InputStream in = connection.getInputStream()) {
+			in.readAllBytes();
+		}
+	}
+
+	@Test
+	public void post_malformedInputWithBufferedFormat_returnsServerError() throws IOException {
+		HttpURLConnection connection = post(MALFORMED_PEOPLE, "ttl");
+
+		assertThat(connection.getResponseCode(), is(500));
+	}
+
+	private MappingServer createServer() {
+		return new MappingServer(new MapperFactory(ImmutableSet.of(), null), ImmutableMap.of("people", mapping),
+				ImmutableSet.of(), RDFFormat.NQUADS, 2, 1000);
+	}
+
+	private HttpURLConnection post(String body, String format) throws IOException {
+		URL url = new URL(String.format("http://%s:%d/mappings/people?format=%s",
+				InetAddress.getLoopbackAddress().getHostAddress(), server.getPort(), format));
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		try (OutputStream out = connection.getOutputStream()) {
+			out.write(body.getBytes(StandardCharsets.UTF_8));
+		}
+		return connection;
+	}
+
+}
@@ -0,0 +1,64 @@
+package com.skemu.rdf.carml;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandler;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.StatementCollector;
+import org.junit.Test;
+
+public class PipelinedRdfHandlerTest {
+
+	private static final ValueFactory VF = SimpleValueFactory.getInstance();
+
+	// small batches in a short queue, so mapping has to wait for the writer many times
+	private static final int BATCH_SIZE = 7;
+
+	private static final int QUEUE_CAPACITY = 2;
+
+	@Test
+	public void endRDF_serializingOnSeveralThreads_writesBatchesInOrder() {
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		write(Rio.createWriter(RDFFormat.NQUADS, expected));
+
+		ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		write(PipelinedRdfHandler.serializing(actual, RDFFormat.NQUADS, 4, BATCH_SIZE, QUEUE_CAPACITY));
+
+		assertThat(actual.toString(), is(expected.toString()));
+	}
+
+	@Test
+	public void endRDF_forwarding_keepsStatementOrderAndNamespaces() {
+		StatementCollector collector = new StatementCollector();
+		write(PipelinedRdfHandler.forwarding(collector, BATCH_SIZE, QUEUE_CAPACITY));
+
+		assertThat(new ArrayList<>(collector.getStatements()), is(numberedStatements()));
+		assertThat(collector.getNamespaces().get("ex"), is("http://example.org/"));
+	}
+
+	private static void write(RDFHandler handler) {
+		handler.startRDF();
+		handler.handleNamespace("ex", "http://example.org/");
+		numberedStatements().forEach(handler::handleStatement);
+		handler.endRDF();
+	}
+
+	// numbered in order, and not a multiple of the batch size, so the last batch is only flushed by endRDF
+	private static List<Statement> numberedStatements() {
+		List<Statement> statements = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			statements.add(VF.createStatement(VF.createIRI("http://example.org/s" + i), RDFS.LABEL, VF.createLiteral(i)));
+		}
+		return statements;
+	}
+
+}
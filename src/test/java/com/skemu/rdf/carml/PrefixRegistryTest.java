@@ -0,0 +1,28 @@
+package com.skemu.rdf.carml;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+
+import java.util.Optional;
+import org.eclipse.rdf4j.model.vocabulary.SKOS;
+import org.junit.Test;
+
+public class PrefixRegistryTest {
+
+	@Test
+	public void getDefault_calledTwice_returnsSharedRegistry() {
+		assertThat(PrefixRegistry.getDefault(), is(sameInstance(PrefixRegistry.getDefault())));
+	}
+
+	@Test
+	public void getNamespace_withKnownPrefix_returnsNamespace() {
+		assertThat(PrefixRegistry.getDefault().getNamespace(SKOS.PREFIX), is(Optional.of(SKOS.NS)));
+	}
+
+	@Test
+	public void getNamespace_withUnknownPrefix_returnsEmpty() {
+		assertThat(PrefixRegistry.getDefault().getNamespace("no-such-prefix"), is(Optional.empty()));
+	}
+
+}
@@ -0,0 +1,57 @@
+package com.skemu.rdf.carml;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class RecordChunkReaderTest {
+
+	@Test
+	public void next_withCsv_returnsChunksStartingWithHeader() throws IOException {
+		RecordChunkReader reader = reader("id,name\n1,a\n2,b\n3,c\n", RecordChunkReader.Format.CSV, 2);
+
+		assertThat(next(reader), is("id,name\n1,a\n2,b\n"));
+		assertThat(next(reader), is("id,name\n3,c\n"));
+		assertThat(reader.next(), is(nullValue()));
+	}
+
+	@Test
+	public void next_withCsvQuotedLineBreak_keepsRecordTogether() throws IOException {
+		RecordChunkReader reader = reader("id,name\n1,\"a\nb\"\n2,c\n", RecordChunkReader.Format.CSV, 1);
+
+		assertThat(next(reader), is("id,name\n1,\"a\nb\"\n"));
+		assertThat(next(reader), is("id,name\n2,c\n"));
+		assertThat(reader.next(), is(nullValue()));
+	}
+
+	@Test
+	public void next_withCsvHeaderOnly_returnsNoChunks() throws IOException {
+		RecordChunkReader reader = reader("id,name\n", RecordChunkReader.Format.CSV, 10);
+
+		assertThat(reader.next(), is(nullValue()));
+	}
+
+	@Test
+	public void next_withJsonLines_returnsJsonArrayChunks() throws IOException {
+		RecordChunkReader reader = reader("{\"id\":1}\n\n{\"id\":2}\n{\"id\":3}\n", RecordChunkReader.Format.JSON_LINES, 2);
+
+		assertThat(next(reader), is("[{\"id\":1},\n{\"id\":2}]"));
+		assertThat(next(reader), is("[{\"id\":3}]"));
+		assertThat(reader.next(), is(nullValue()));
+	}
+
+	private static RecordChunkReader reader(String input, RecordChunkReader.Format format, int recordsPerChunk) {
+		return new RecordChunkReader(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), format,
+				recordsPerChunk);
+	}
+
+	private static String next(RecordChunkReader reader) throws IOException {
+		return new String(reader.next(), StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,81 @@
+package com.skemu.rdf.carml;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.sail.nativerdf.NativeStore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RepositoryRdfHandlerTest {
+
+	private static final ValueFactory VF = SimpleValueFactory.getInstance();
+
+	private static final IRI CONTEXT = VF.createIRI("http://example.org/graph");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void endRDF_nativeStoreWithContextAndIndexes_loadsAllStatementsIntoContext() throws Exception {
+		Path dataDirectory = folder.getRoot().toPath().resolve("store");
+		RepositoryRdfHandler handler = new RepositoryRdfHandler(dataDirectory, RepositoryRdfHandler.StoreType.NATIVE, 10)
+				.indexAfterLoad("spoc,posc")
+				.loadInto(CONTEXT);
+
+		handler.startRDF();
+		handler.handleNamespace("ex", "http://example.org/");
+		for (int i = 0; i < 95; i++) {
+			handler.handleStatement(VF.createStatement(VF.createIRI("http://example.org/s" + i), RDFS.LABEL,
+					VF.createLiteral(i)));
+		}
+		handler.endRDF();
+
+		// reopened with the indexes built after the load, which are kept as index files in the data directory
+		assertThat(Files.exists(dataDirectory.resolve("triples-spoc.dat")), is(true));
+		assertThat(Files.exists(dataDirectory.resolve("triples-posc.dat")), is(true));
+		Repository repository = new SailRepository(new NativeStore(dataDirectory.toFile(), "spoc,posc"));
+		repository.init();
+		try (RepositoryConnection connection = repository.getConnection()) {
+			assertThat(connection.size(), is(95L));
+			assertThat(connection.size(CONTEXT), is(95L));
+			assertThat(connection.getNamespace("ex"), is("http://example.org/"));
+			assertThat(connection.hasStatement(null, RDFS.LABEL, VF.createLiteral(42), false, CONTEXT), is(true));
+		} finally {
+			repository.shutDown();
+		}
+	}
+
+	@Test
+	public void close_withoutEnd_releasesStore() throws Exception {
+		Path dataDirectory = folder.getRoot().toPath().resolve("store");
+		RepositoryRdfHandler handler = new RepositoryRdfHandler(dataDirectory, RepositoryRdfHandler.StoreType.NATIVE, 10);
+
+		handler.startRDF();
+		for (int i = 0; i < 25; i++) {
+			handler.handleStatement(VF.createStatement(VF.createIRI("http://example.org/s" + i), RDFS.LABEL,
+					VF.createLiteral(i)));
+		}
+		handler.close();
+
+		// opening the store again fails while the handler still holds its lock
+		Repository repository = new SailRepository(new NativeStore(dataDirectory.toFile()));
+		repository.init();
+		try (RepositoryConnection connection = repository.getConnection()) {
+			assertThat(connection.size() <= 25, is(true));
+		} finally {
+			repository.shutDown();
+		}
+	}
+
+}
@@ -0,0 +1,151 @@
+package com.skemu.rdf.carml;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ShardedRdfHandlerTest {
+
+	private static final ValueFactory VF = SimpleValueFactory.getInstance();
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void endRDF_subjectPartitioning_keepsEachSubjectInOnePartition() throws IOException {
+		Path directory = folder.getRoot().toPath().resolve("shards");
+		ShardedRdfHandler handler = new ShardedRdfHandler(directory, RDFFormat.NQUADS, 2)
+				.partitionBy(ShardedRdfHandler.Partitioning.SUBJECT, 3)
+				.rotateAfter(50, Long.MAX_VALUE)
+				.compress(Compression.GZIP);
+
+		handler.startRDF();
+		for (int i = 0; i < 1000; i++) {
+			handler.handleStatement(VF.createStatement(VF.createIRI("http://example.org/s" + (i % 100)), RDFS.LABEL,
+					VF.createLiteral(i)));
+		}
+		handler.endRDF();
+
+		JsonNode manifest = new ObjectMapper().readTree(directory.resolve(ShardedRdfHandler.MANIFEST_FILE_NAME).toFile());
+		assertThat(manifest.get("statements").asLong(), is(1000L));
+
+		Map<Resource, String> subjectPartitions = new HashMap<>();
+		long statements = 0;
+		for (JsonNode shard : manifest.get("shards")) {
+			Path file = directory.resolve(shard.get("file").asText());
+			assertThat(Hashing.sha256().hashBytes(Files.readAllBytes(file)).toString(), is(shard.get("sha256").asText()));
+			assertThat(Files.size(file), is(shard.get("bytes").asLong()));
+
+			Model model;
+			try (InputStream in = InputStreams.file(file)) {
+				model = Rio.parse(in, "", RDFFormat.NQUADS);
+			}
+			assertThat(model.size() <= 50, is(true));
+			assertThat((long) model.size(), is(shard.get("statements").asLong()));
+			statements += model.size();
+
+			String partition = shard.get("partition").asText();
+			for (Statement statement : model) {
+				String previous = subjectPartitions.putIfAbsent(statement.getSubject(), partition);
+				assertThat(previous == null || previous.equals(partition), is(true));
+			}
+		}
+		assertThat(statements, is(1000L));
+	}
+
+	@Test
+	public void handleStatement_overByteLimit_rotatesShard() throws IOException {
+		Path directory = folder.getRoot().toPath().resolve("shards");
+		ShardedRdfHandler handler = new ShardedRdfHandler(directory, RDFFormat.NQUADS, 2)
+				.rotateAfter(Long.MAX_VALUE, 2000);
+
+		handler.startRDF();
+		for (int i = 0; i < 1000; i++) {
+			handler.handleStatement(VF.createStatement(VF.createIRI("http://example.org/s" + i), RDFS.LABEL,
+					VF.createLiteral(i)));
+		}
+		handler.endRDF();
+
+		JsonNode manifest = new ObjectMapper().readTree(directory.resolve(ShardedRdfHandler.MANIFEST_FILE_NAME).toFile());
+		JsonNode shards = manifest.get("shards");
+		assertThat(shards.size() > 1, is(true));
+		for (int i = 0; i < shards.size() - 1; i++) {
+			// a shard ends with the statement that reaches the limit
+			long bytes = shards.get(i).get("bytes").asLong();
+			assertThat(bytes + " bytes", bytes >= 2000 && bytes < 2200, is(true));
+		}
+	}
+
+	@Test
+	public void handleStatement_withMoreGraphsThanOpenShards_continuesLeastRecentGraphsInNewShards() throws IOException {
+		Path directory = folder.getRoot().toPath().resolve("shards");
+		ShardedRdfHandler handler = new ShardedRdfHandler(directory, RDFFormat.NQUADS, 2)
+				.partitionBy(ShardedRdfHandler.Partitioning.GRAPH, 1);
+		int graphs = ShardedRdfHandler.MAX_OPEN_SHARDS + 2;
+
+		handler.startRDF();
+		// every graph is written twice, in batches that are written right away
+		for (int round = 0; round < 2; round++) {
+			for (int graph = 0; graph < graphs; graph++) {
+				for (int i = 0; i < 1000; i++) {
+					handler.handleStatement(VF.createStatement(VF.createIRI("http://example.org/s" + i), RDFS.LABEL,
+							VF.createLiteral(round), VF.createIRI("http://example.org/g" + graph)));
+				}
+			}
+		}
+		handler.endRDF();
+
+		JsonNode manifest = new ObjectMapper().readTree(directory.resolve(ShardedRdfHandler.MANIFEST_FILE_NAME).toFile());
+		assertThat(manifest.get("statements").asLong(), is(graphs * 2000L));
+		Map<String, Integer> shardsPerGraph = new HashMap<>();
+		for (JsonNode shard : manifest.get("shards")) {
+			shardsPerGraph.merge(shard.get("partition").asText(), 1, Integer::sum);
+			assertThat(shard.get("statements").asLong(), is(1000L));
+		}
+		assertThat(shardsPerGraph.size(), is(graphs));
+		assertThat(shardsPerGraph.values().stream().allMatch(shards -> shards == 2), is(true));
+	}
+
+	@Test
+	public void close_withoutEnd_stopsWriterThreadsWithoutManifest() throws IOException, InterruptedException {
+		Path directory = folder.getRoot().toPath().resolve("shards");
+		ShardedRdfHandler handler = new ShardedRdfHandler(directory, RDFFormat.NQUADS, 2);
+
+		handler.startRDF();
+		for (int i = 0; i < 5000; i++) {
+			handler.handleStatement(VF.createStatement(VF.createIRI("http://example.org/s" + i), RDFS.LABEL,
+					VF.createLiteral(i)));
+		}
+		handler.close();
+
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().equals("shard-writer")) {
+				// the pool has terminated, its threads are only still exiting
+				thread.join(1000);
+				assertThat(thread.isAlive(), is(false));
+			}
+		}
+		assertThat(Files.exists(directory.resolve(ShardedRdfHandler.MANIFEST_FILE_NAME)), is(false));
+	}
+
+}